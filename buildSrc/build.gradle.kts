@@ -0,0 +1,12 @@
+plugins {
+  `kotlin-dsl`
+}
+
+repositories {
+  gradlePluginPortal()
+}
+
+dependencies {
+  implementation("gradle.plugin.org.cadixdev.gradle:licenser:0.5.1")
+  implementation("ru.vyarus:gradle-quality-plugin:4.6.0")
+}
@@ -0,0 +1,11 @@
+import org.gradle.api.provider.Property
+
+/**
+ * Settings for the parts of the build that differ between modules.
+ */
+abstract class MapMatcherExtension {
+  /**
+   * The oldest java the module's main classes run on. Defaults to 8.
+   */
+  abstract val javaVersion: Property<Int>
+}
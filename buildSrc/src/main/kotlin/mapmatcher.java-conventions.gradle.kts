@@ -0,0 +1,128 @@
+import java.net.URI
+
+/*
+ * Build configuration shared by every mapmatcher module. Modules set their
+ * description, javadoc title, and dependencies. Modules that need a newer
+ * java than 8 say so with `mapmatcher { javaVersion.set(...) }`.
+ */
+plugins {
+  `java-library`
+  id("org.cadixdev.licenser")
+  id("ru.vyarus.quality")
+  `maven-publish`
+  signing
+}
+
+group = "io.github.nik9000"
+version = "0.0.4-SNAPSHOT"
+val isReleaseVersion = false == version.toString().endsWith("SNAPSHOT")
+
+val mapmatcher = extensions.create<MapMatcherExtension>("mapmatcher")
+mapmatcher.javaVersion.convention(8)
+
+java {
+  toolchain {
+    languageVersion.set(mapmatcher.javaVersion.map {
+      /*
+       * Use the module's java for real work but tell Eclipse we're using 16
+       * so we can use it to work with tests in java 16.
+       */
+      JavaLanguageVersion.of(if (System.getProperty("eclipse.launcher") == null) it else 16)
+    })
+  }
+  withJavadocJar()
+  withSourcesJar()
+}
+
+repositories {
+  jcenter()
+}
+
+tasks.compileTestJava {
+  javaCompiler.set(javaToolchains.compilerFor {
+    languageVersion.set(JavaLanguageVersion.of(16))
+  })
+}
+
+tasks.withType<Test>().configureEach {
+  useJUnitPlatform()
+  javaLauncher.set(javaToolchains.launcherFor {
+    languageVersion.set(JavaLanguageVersion.of(16))
+  })
+}
+
+quality {
+  lintOptions = listOf("all")
+}
+
+license {
+  header = rootProject.file("LICENSE_HEADER")
+}
+
+tasks.javadoc {
+  javadocTool.set(javaToolchains.javadocToolFor {
+    languageVersion.set(JavaLanguageVersion.of(16))
+  })
+  val o = options
+  if (o !is StandardJavadocDocletOptions) {
+    throw IllegalArgumentException()
+  }
+  o.links!!.add("https://docs.oracle.com/en/java/javase/16/docs/api/")
+  o.addBooleanOption("Xdoclint:all,-missing", true)
+  o.showFromPublic()
+}
+
+/*
+ * Configure publication
+ * Thanks https://dev.to/kengotoda/deploying-to-ossrh-with-gradle-in-2020-1lhi
+ */
+publishing {
+  repositories {
+    maven {
+      url = if (isReleaseVersion)
+          URI("https://s01.oss.sonatype.org/service/local/staging/deploy/maven2/")
+        else
+          URI("https://s01.oss.sonatype.org/content/repositories/snapshots/")
+      credentials {
+        username = project.findProperty("ossrh.username")?.toString()
+        password = project.findProperty("ossrh.password")?.toString()
+      }
+    }
+  }
+  publications {
+    create<MavenPublication>("maven") {
+      from(components["java"])
+      pom {
+        name.set(project.name)
+        description.set(provider { project.description })
+        url.set("https://github.com/nik9000/mapmatcher")
+        licenses {
+          license {
+            name.set("The Apache License, Version 2.0")
+            url.set("http://www.apache.org/licenses/LICENSE-2.0.txt")
+          }
+        }
+        scm {
+          connection.set("scm:git:git@github.com:nik9000/mapmatcher.git")
+          url.set("https://github.com/nik9000/mapmatcher")
+        }
+        developers {
+          developer {
+            id.set("nik")
+            name.set("Nik Everett")
+            email.set("nik9000@gmail.com")
+          }
+        }
+      }
+    }
+  }
+}
+
+signing {
+  useGpgCmd()
+  sign(publishing.publications.get("maven"))
+}
+
+tasks.withType<Sign> {
+  onlyIf { isReleaseVersion }
+}
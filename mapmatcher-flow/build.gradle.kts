@@ -0,0 +1,26 @@
+plugins {
+  id("mapmatcher.java-conventions")
+}
+
+description = """
+  Matches java.util.concurrent.Flow streams with mapmatcher's
+  matchers without buffering them. Needs java 11.
+""".trimIndent().replace("\n", " ")
+
+mapmatcher {
+  // Flow is new in java 9 and 11 is the oldest LTS that has it
+  javaVersion.set(11)
+}
+
+dependencies {
+  api(project(":mapmatcher"))
+  testImplementation("org.hamcrest:hamcrest:2.2")
+  testImplementation("org.junit.jupiter:junit-jupiter-api:5.8.0-M1")
+  testRuntimeOnly("org.junit.jupiter:junit-jupiter-engine:5.8.0-M1")
+}
+
+tasks.javadoc {
+  val o = options as StandardJavadocDocletOptions
+  o.docTitle("MapMatcher Flow")
+  o.windowTitle("MapMatcher Flow")
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2021 Nikolas Everett
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.github.nik9000.mapmatcher.flow;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+
+import io.github.nik9000.mapmatcher.StreamingMatch;
+
+/**
+ * A {@link Flow.Subscriber} that matches each item it receives with a
+ * {@link StreamingMatch} and doesn't keep any of them. It never has more
+ * than {@code batch} items outstanding, asking for more when half of
+ * them have arrived. As soon as the match is decided it cancels the
+ * subscription and completes {@link #result}.
+ * <pre>{@code
+ * MatchingSubscriber<Map<String, Object>> subscriber = new MatchingSubscriber<>(
+ *     StreamingMatch.eachItem(matchesMap().entry("type", "event").extraOk()));
+ * publisher.subscribe(subscriber);
+ * assertThat(subscriber.result().get(), nullValue());
+ * }</pre>
+ * Subscribers are good for one subscription.
+ */
+public final class MatchingSubscriber<T> implements Flow.Subscriber<T> {
+  /**
+   * The default number of items we ask for at once.
+   */
+  public static final int DEFAULT_BATCH = 64;
+
+  private final StreamingMatch match;
+  private final int batch;
+  private final CompletableFuture<String> result = new CompletableFuture<>();
+  private Flow.Subscription subscription;
+  private long outstanding;
+
+  /**
+   * Build a subscriber that asks for {@link #DEFAULT_BATCH} items at once.
+   */
+  public MatchingSubscriber(StreamingMatch match) {
+    this(match, DEFAULT_BATCH);
+  }
+
+  /**
+   * Build a subscriber that asks for {@code batch} items at once.
+   */
+  public MatchingSubscriber(StreamingMatch match, int batch) {
+    if (batch < 1) {
+      throw new IllegalArgumentException("batch must be at least 1 but was [" + batch + "]");
+    }
+    this.match = Objects.requireNonNull(match, "match");
+    this.batch = batch;
+  }
+
+  /**
+   * Completes with {@code null} if the items matched or a description of
+   * the item that didn't, in the same format as {@link StreamingMatch#report}.
+   * Completes exceptionally if the publisher fails or matching throws.
+   */
+  public CompletableFuture<String> result() {
+    return result;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @hidden
+   */
+  @Override
+  public void onSubscribe(Flow.Subscription subscription) {
+    Objects.requireNonNull(subscription, "subscription");
+    if (this.subscription != null) {
+      // Only one subscription at a time, says the spec
+      subscription.cancel();
+      return;
+    }
+    this.subscription = subscription;
+    if (match.isDecided()) {
+      decided();
+      return;
+    }
+    outstanding = batch;
+    subscription.request(batch);
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @hidden
+   */
+  @Override
+  public void onNext(T item) {
+    if (result.isDone()) {
+      // Items can arrive after we cancel
+      return;
+    }
+    outstanding--;
+    boolean decided;
+    try {
+      decided = match.offer(item);
+    } catch (RuntimeException e) {
+      subscription.cancel();
+      result.completeExceptionally(e);
+      return;
+    }
+    if (decided) {
+      decided();
+      return;
+    }
+    if (outstanding <= batch / 2) {
+      subscription.request(batch - outstanding);
+      outstanding = batch;
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @hidden
+   */
+  @Override
+  public void onError(Throwable throwable) {
+    result.completeExceptionally(throwable);
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @hidden
+   */
+  @Override
+  public void onComplete() {
+    if (result.isDone()) {
+      return;
+    }
+    match.finish();
+    result.complete(match.report());
+  }
+
+  private void decided() {
+    subscription.cancel();
+    result.complete(match.report());
+  }
+}
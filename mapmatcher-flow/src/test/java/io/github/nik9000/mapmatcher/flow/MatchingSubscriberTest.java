@@ -0,0 +1,200 @@
+/*
+ * Copyright 2021 Nikolas Everett
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.github.nik9000.mapmatcher.flow;
+
+import static io.github.nik9000.mapmatcher.ListMatcher.matchesList;
+import static io.github.nik9000.mapmatcher.MapMatcher.matchesMap;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import io.github.nik9000.mapmatcher.StreamingMatch;
+
+class MatchingSubscriberTest {
+  @Test
+  void matches() throws Exception {
+    MatchingSubscriber<Object> subscriber = new MatchingSubscriber<>(
+        StreamingMatch.matching(matchesList(List.of(1, 2, 3))));
+    try (SubmissionPublisher<Object> publisher = new SubmissionPublisher<>()) {
+      publisher.subscribe(subscriber);
+      publisher.submit(1);
+      publisher.submit(2);
+      publisher.submit(3);
+    }
+    assertThat(subscriber.result().get(10, TimeUnit.SECONDS), nullValue());
+  }
+
+  @Test
+  void mismatch() throws Exception {
+    MatchingSubscriber<Object> subscriber = new MatchingSubscriber<>(
+        StreamingMatch.eachItem(matchesMap().entry("type", "event").extraOk()));
+    try (SubmissionPublisher<Object> publisher = new SubmissionPublisher<>()) {
+      publisher.subscribe(subscriber);
+      for (int i = 0; i < 1000; i++) {
+        publisher.submit(Map.of("type", i == 500 ? "oops" : "event", "i", i));
+      }
+    }
+    assertThat(subscriber.result().get(10, TimeUnit.SECONDS), equalTo("""
+        every item is
+        500: a map containing
+         type: expected "event" but was "oops"
+            i: <500> unexpected but ok"""));
+  }
+
+  @Test
+  void cancelsOnceDecided() throws Exception {
+    RecordingPublisher publisher = new RecordingPublisher(1_000_000);
+    MatchingSubscriber<Object> subscriber = new MatchingSubscriber<>(
+        StreamingMatch.eachItem(lessThanOrEqualTo(100L)), 8);
+    publisher.subscribe(subscriber);
+    assertThat(subscriber.result().get(), equalTo("""
+        every item is
+        101: expected a value less than or equal to <100L> but <101L> was greater than <100L>"""));
+    assertThat(publisher.cancelled, equalTo(true));
+    assertThat(publisher.sent, equalTo(102L));
+  }
+
+  @Test
+  void prefixCancelsEarly() throws Exception {
+    RecordingPublisher publisher = new RecordingPublisher(1_000_000);
+    MatchingSubscriber<Object> subscriber = new MatchingSubscriber<>(
+        StreamingMatch.matching(matchesList(List.of(0L, 1L, 2L)).asPrefix()));
+    publisher.subscribe(subscriber);
+    assertThat(subscriber.result().get(), nullValue());
+    assertThat(publisher.cancelled, equalTo(true));
+    assertThat(publisher.sent, equalTo(3L));
+  }
+
+  @Test
+  void boundedDemand() throws Exception {
+    RecordingPublisher publisher = new RecordingPublisher(1000);
+    MatchingSubscriber<Object> subscriber = new MatchingSubscriber<>(
+        StreamingMatch.eachItem(greaterThan(-1L)), 10);
+    publisher.subscribe(subscriber);
+    assertThat(subscriber.result().get(), nullValue());
+    assertThat(publisher.cancelled, equalTo(false));
+    assertThat(publisher.maxOutstanding, equalTo(10L));
+    for (long r : publisher.requests) {
+      assertThat(r, lessThanOrEqualTo(10L));
+    }
+  }
+
+  @Test
+  void tooShort() throws Exception {
+    RecordingPublisher publisher = new RecordingPublisher(2);
+    MatchingSubscriber<Object> subscriber = new MatchingSubscriber<>(
+        StreamingMatch.matching(matchesList(List.of(0L, 1L, 2L))));
+    publisher.subscribe(subscriber);
+    assertThat(subscriber.result().get(), equalTo("""
+        a list containing
+        2: expected <2L> but was <missing>"""));
+  }
+
+  @Test
+  void error() {
+    MatchingSubscriber<Object> subscriber = new MatchingSubscriber<>(
+        StreamingMatch.eachItem(1));
+    SubmissionPublisher<Object> publisher = new SubmissionPublisher<>();
+    publisher.subscribe(subscriber);
+    publisher.closeExceptionally(new IllegalStateException("boom"));
+    Exception e = assertThrows(ExecutionException.class,
+        () -> subscriber.result().get(10, TimeUnit.SECONDS));
+    assertThat(e.getCause().getMessage(), equalTo("boom"));
+  }
+
+  @Test
+  void secondSubscriptionCancelled() {
+    MatchingSubscriber<Object> subscriber = new MatchingSubscriber<>(
+        StreamingMatch.eachItem(1));
+    RecordingPublisher first = new RecordingPublisher(0);
+    RecordingPublisher second = new RecordingPublisher(0);
+    subscriber.onSubscribe(first.new Subscription(subscriber));
+    subscriber.onSubscribe(second.new Subscription(subscriber));
+    assertThat(first.cancelled, equalTo(false));
+    assertThat(second.cancelled, equalTo(true));
+  }
+
+  @Test
+  void badBatch() {
+    Exception e = assertThrows(IllegalArgumentException.class,
+        () -> new MatchingSubscriber<>(StreamingMatch.eachItem(1), 0));
+    assertThat(e.getMessage(), equalTo("batch must be at least 1 but was [0]"));
+  }
+
+  /**
+   * Publishes {@code 0L} through {@code count - 1L} on the calling
+   * thread, recording what the subscriber asks for.
+   */
+  private static class RecordingPublisher implements Flow.Publisher<Object> {
+    private final long count;
+    private final List<Long> requests = new ArrayList<>();
+    private long sent;
+    private long outstanding;
+    private long maxOutstanding;
+    private boolean cancelled;
+
+    RecordingPublisher(long count) {
+      this.count = count;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super Object> subscriber) {
+      subscriber.onSubscribe(new Subscription(subscriber));
+    }
+
+    private class Subscription implements Flow.Subscription {
+      private final Flow.Subscriber<? super Object> subscriber;
+      private boolean sending;
+      private boolean completed;
+
+      Subscription(Flow.Subscriber<? super Object> subscriber) {
+        this.subscriber = subscriber;
+      }
+
+      @Override
+      public void request(long n) {
+        requests.add(n);
+        outstanding += n;
+        maxOutstanding = Math.max(maxOutstanding, outstanding);
+        if (sending) {
+          // Called from onNext, the loop below will send them
+          return;
+        }
+        sending = true;
+        try {
+          while (outstanding > 0 && sent < count && false == cancelled) {
+            outstanding--;
+            subscriber.onNext(sent++);
+          }
+          if (sent == count && false == cancelled && false == completed) {
+            completed = true;
+            subscriber.onComplete();
+          }
+        } finally {
+          sending = false;
+        }
+      }
+
+      @Override
+      public void cancel() {
+        cancelled = true;
+      }
+    }
+  }
+}
@@ -0,0 +1,23 @@
+plugins {
+  id("mapmatcher.java-conventions")
+}
+
+description = """
+  Lets mapmatcher's matchers read Gson JsonElement trees without
+  converting them.
+""".trimIndent().replace("\n", " ")
+
+dependencies {
+  api(project(":mapmatcher"))
+  implementation("com.google.code.gson:gson:2.8.6")
+  testImplementation("org.hamcrest:hamcrest:2.2")
+  testImplementation("org.junit.jupiter:junit-jupiter-api:5.8.0-M1")
+  testRuntimeOnly("org.junit.jupiter:junit-jupiter-engine:5.8.0-M1")
+}
+
+tasks.javadoc {
+  val o = options as StandardJavadocDocletOptions
+  o.docTitle("MapMatcher Gson")
+  o.windowTitle("MapMatcher Gson")
+  o.links!!.add("https://www.javadoc.io/doc/com.google.code.gson/gson/2.8.6/")
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2021 Nikolas Everett
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.github.nik9000.mapmatcher.gson;
+
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import io.github.nik9000.mapmatcher.ActualAdapter;
+
+/**
+ * Reads Gson {@link JsonElement} trees in place. Values match and are
+ * described exactly as though the tree had been converted with
+ * {@code new Gson().fromJson(tree, Object.class)}: objects are maps,
+ * arrays are lists, numbers are {@link Double}s, and {@code null} is
+ * {@code null}. The only difference is that objects that don't match at all
+ * are described as {@link LinkedHashMap}s rather than Gson's internal map.
+ * Primitives are compared against plain expected values
+ * without converting them.
+ * <p>
+ * This is found automatically with {@link java.util.ServiceLoader}. Just
+ * add this jar to the classpath.
+ */
+public final class GsonAdapter implements ActualAdapter {
+  /**
+   * {@inheritDoc}
+   *
+   * @hidden
+   */
+  @Override
+  public boolean handles(Object actual) {
+    return actual instanceof JsonElement;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @hidden
+   */
+  @Override
+  public Map<?, ?> asMap(Object actual) {
+    return actual instanceof JsonObject ? new ObjectView((JsonObject) actual) : null;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @hidden
+   */
+  @Override
+  public List<?> asList(Object actual) {
+    return actual instanceof JsonArray ? new ArrayView((JsonArray) actual) : null;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @hidden
+   */
+  @Override
+  public Object toJava(Object actual) {
+    JsonElement e = (JsonElement) actual;
+    if (e.isJsonObject()) {
+      Map<String, Object> map = new LinkedHashMap<>();
+      for (Map.Entry<String, JsonElement> entry : e.getAsJsonObject().entrySet()) {
+        map.put(entry.getKey(), toJava(entry.getValue()));
+      }
+      return map;
+    }
+    if (e.isJsonArray()) {
+      JsonArray array = e.getAsJsonArray();
+      List<Object> list = new ArrayList<>(array.size());
+      for (JsonElement item : array) {
+        list.add(toJava(item));
+      }
+      return list;
+    }
+    if (e.isJsonNull()) {
+      return null;
+    }
+    JsonPrimitive p = e.getAsJsonPrimitive();
+    if (p.isBoolean()) {
+      return p.getAsBoolean();
+    }
+    if (p.isNumber()) {
+      return p.getAsDouble();
+    }
+    return p.getAsString();
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @hidden
+   */
+  @Override
+  public boolean leafEquals(Object expected, Object actual) {
+    JsonElement e = (JsonElement) actual;
+    if (e.isJsonNull()) {
+      return expected == null;
+    }
+    if (false == e.isJsonPrimitive()) {
+      // Expected maps and lists are always matchers so they never get here
+      return false;
+    }
+    JsonPrimitive p = e.getAsJsonPrimitive();
+    if (p.isString()) {
+      return p.getAsString().equals(expected);
+    }
+    if (p.isBoolean()) {
+      return expected instanceof Boolean && p.getAsBoolean() == (Boolean) expected;
+    }
+    // Same as Double.equals
+    return expected instanceof Double
+        && Double.doubleToLongBits(p.getAsDouble())
+            == Double.doubleToLongBits((Double) expected);
+  }
+
+  /**
+   * {@link Map} view of a {@link JsonObject}.
+   */
+  private static final class ObjectView extends AbstractMap<String, JsonElement> {
+    private final JsonObject object;
+
+    ObjectView(JsonObject object) {
+      this.object = object;
+    }
+
+    @Override
+    public int size() {
+      return object.size();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+      return key instanceof String && object.has((String) key);
+    }
+
+    @Override
+    public JsonElement get(Object key) {
+      return key instanceof String ? object.get((String) key) : null;
+    }
+
+    @Override
+    public Set<Map.Entry<String, JsonElement>> entrySet() {
+      return object.entrySet();
+    }
+  }
+
+  /**
+   * {@link List} view of a {@link JsonArray}.
+   */
+  private static final class ArrayView extends AbstractList<JsonElement>
+      implements RandomAccess {
+    private final JsonArray array;
+
+    ArrayView(JsonArray array) {
+      this.array = array;
+    }
+
+    @Override
+    public int size() {
+      return array.size();
+    }
+
+    @Override
+    public JsonElement get(int index) {
+      return array.get(index);
+    }
+  }
+}
@@ -0,0 +1,532 @@
+/*
+ * Copyright 2021 Nikolas Everett
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.github.nik9000.mapmatcher.gson;
+
+import java.io.CharArrayReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import org.hamcrest.Matcher;
+import org.hamcrest.StringDescription;
+
+/**
+ * Checks that every line of a newline delimited JSON file matches a
+ * {@link Matcher}. Files can be much larger than the heap: we memory map
+ * them a chunk at a time, split at line boundaries, and check a few
+ * chunks at once on a pool of threads. Failures are reported in file
+ * order as the chunks finish. Each line is parsed straight from the
+ * mapped file into a Gson {@link JsonElement} and matched in place by
+ * {@link GsonAdapter} so numbers are {@link Double}s.
+ * <pre>{@code
+ * NdjsonValidator.Result result = new NdjsonValidator(matchesMap()
+ *     .entry("id", instanceOf(String.class))
+ *     .extraOk()).threads(8).validate(Paths.get("export.ndjson"));
+ * }</pre>
+ * <p>
+ * Blank lines are skipped. Lines that aren't valid JSON fail. Line
+ * numbers start at {@code 1} and count blank lines so they line up with
+ * an editor.
+ */
+public final class NdjsonValidator {
+  /**
+   * The number of bytes we try to put in each chunk unless
+   * {@link #chunkSize} says otherwise.
+   */
+  public static final int DEFAULT_CHUNK_SIZE = 64 * 1024 * 1024;
+  /**
+   * The number of failures we describe unless {@link #maxReports} says
+   * otherwise.
+   */
+  public static final int DEFAULT_MAX_REPORTS = 10;
+  /**
+   * The most chunks we map and check at once per thread. Chunks finish
+   * out of order and we keep what we've found in each one until every
+   * chunk before it is done.
+   */
+  private static final int CHUNKS_PER_THREAD = 2;
+  /**
+   * Reads {@link JsonElement}s without making the {@link JsonReader}
+   * lenient like {@link com.google.gson.JsonParser} does.
+   */
+  private static final TypeAdapter<JsonElement> ELEMENTS = new Gson().getAdapter(JsonElement.class);
+
+  private final Matcher<?> matcher;
+  private final int threads;
+  private final int chunkSize;
+  private final int maxReports;
+
+  /**
+   * Build a validator that checks every line against {@code matcher}.
+   */
+  public NdjsonValidator(Matcher<?> matcher) {
+    this(Objects.requireNonNull(matcher, "matcher"), Runtime.getRuntime().availableProcessors(),
+        DEFAULT_CHUNK_SIZE, DEFAULT_MAX_REPORTS);
+  }
+
+  private NdjsonValidator(Matcher<?> matcher, int threads, int chunkSize, int maxReports) {
+    this.matcher = matcher;
+    this.threads = threads;
+    this.chunkSize = chunkSize;
+    this.maxReports = maxReports;
+  }
+
+  /**
+   * Check chunks on this many threads. Defaults to the number of
+   * processors.
+   */
+  public NdjsonValidator threads(int threads) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("threads must be >= 1 but was [" + threads + "]");
+    }
+    return new NdjsonValidator(matcher, threads, chunkSize, maxReports);
+  }
+
+  /**
+   * Try to put this many bytes in each chunk. Chunks are extended to the
+   * end of the line they stop in so they may be a little larger.
+   */
+  public NdjsonValidator chunkSize(int chunkSize) {
+    if (chunkSize < 1) {
+      throw new IllegalArgumentException("chunkSize must be >= 1 but was [" + chunkSize + "]");
+    }
+    return new NdjsonValidator(matcher, threads, chunkSize, maxReports);
+  }
+
+  /**
+   * Describe the first {@code maxReports} failures in the file and keep
+   * their line numbers. Every failure is counted but describing them can
+   * be expensive.
+   */
+  public NdjsonValidator maxReports(int maxReports) {
+    if (maxReports < 0) {
+      throw new IllegalArgumentException("maxReports must be >= 0 but was [" + maxReports + "]");
+    }
+    return new NdjsonValidator(matcher, threads, chunkSize, maxReports);
+  }
+
+  /**
+   * Check every line in a file.
+   */
+  public Result validate(Path path) throws IOException {
+    return validate(path, f -> {});
+  }
+
+  /**
+   * Check every line in a file, passing each of the first
+   * {@link #maxReports} failures to {@code reports} in file order as soon
+   * as every chunk up to it has been checked.
+   */
+  public Result validate(Path path, Consumer<? super Failure> reports) throws IOException {
+    Objects.requireNonNull(reports, "reports");
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      long[] boundaries = boundaries(channel);
+      int chunks = boundaries.length - 1;
+      Merger merger = new Merger(reports);
+      if (chunks == 0) {
+        return merger.result();
+      }
+      int maxInFlight = Math.min(threads * CHUNKS_PER_THREAD, chunks);
+      ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, chunks));
+      try {
+        Deque<Future<Chunk>> inFlight = new ArrayDeque<>(maxInFlight);
+        int next = 0;
+        while (next < chunks || false == inFlight.isEmpty()) {
+          while (next < chunks && inFlight.size() < maxInFlight) {
+            long start = boundaries[next];
+            long end = boundaries[next + 1];
+            inFlight.add(executor.submit(() -> check(channel, start, end, merger)));
+            next++;
+          }
+          merger.add(get(inFlight.poll()));
+        }
+        return merger.result();
+      } finally {
+        executor.shutdownNow();
+      }
+    }
+  }
+
+  private static Chunk get(Future<Chunk> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("interrupted while validating", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IOException(cause);
+    }
+  }
+
+  /**
+   * Split the file into chunks that start at the beginning of a line.
+   *
+   * @return the offset of the start of each chunk followed by the size
+   *         of the file
+   */
+  private long[] boundaries(FileChannel channel) throws IOException {
+    long size = channel.size();
+    long[] boundaries = new long[(int) Math.min(Integer.MAX_VALUE - 1, size / chunkSize + 2)];
+    int count = 1;
+    ByteBuffer scan = ByteBuffer.allocate(8 * 1024);
+    long position = 0;
+    while (position < size) {
+      long next = nextLine(channel, position + chunkSize - 1, size, scan);
+      if (next - position > Integer.MAX_VALUE) {
+        throw new IOException("line starting after byte [" + position + "] is too long");
+      }
+      boundaries[count++] = next;
+      position = next;
+    }
+    return Arrays.copyOf(boundaries, count);
+  }
+
+  /**
+   * Find the start of the first line after {@code from}.
+   */
+  private static long nextLine(FileChannel channel, long from, long size, ByteBuffer scan)
+      throws IOException {
+    long position = from;
+    while (position < size) {
+      scan.clear();
+      int read = channel.read(scan, position);
+      if (read < 0) {
+        break;
+      }
+      for (int i = 0; i < read; i++) {
+        if (scan.get(i) == '\n') {
+          return position + i + 1;
+        }
+      }
+      position += read;
+    }
+    return size;
+  }
+
+  private Chunk check(FileChannel channel, long start, long end, Merger merger)
+      throws IOException {
+    MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+    Chunk chunk = new Chunk(buffer, merger);
+    int limit = buffer.limit();
+    int lineStart = 0;
+    for (int i = 0; i < limit; i++) {
+      if (buffer.get(i) == '\n') {
+        checkLine(buffer, lineStart, i, chunk);
+        lineStart = i + 1;
+      }
+    }
+    if (lineStart < limit) {
+      checkLine(buffer, lineStart, limit, chunk);
+    }
+    return chunk;
+  }
+
+  private void checkLine(MappedByteBuffer buffer, int start, int end, Chunk chunk) {
+    long line = chunk.lines++;
+    if (blank(buffer, start, end)) {
+      return;
+    }
+    chunk.records++;
+    JsonElement record;
+    try {
+      record = parse(chunk.read(start, end));
+    } catch (IOException | JsonParseException e) {
+      chunk.fail(line, null, "invalid JSON: " + e.getMessage());
+      return;
+    }
+    if (false == matcher.matches(record)) {
+      chunk.fail(line, record, null);
+    }
+  }
+
+  /**
+   * Parse exactly one strict JSON value, rejecting unquoted strings and
+   * keys, single quotes, and anything after the value.
+   */
+  private static JsonElement parse(Reader line) throws IOException {
+    JsonReader reader = new JsonReader(line);
+    reader.setLenient(false);
+    JsonElement record = ELEMENTS.read(reader);
+    if (reader.peek() != JsonToken.END_DOCUMENT) {
+      throw new JsonParseException("expected end of line but was " + reader.peek());
+    }
+    return record;
+  }
+
+  private static boolean blank(MappedByteBuffer buffer, int start, int end) {
+    for (int i = start; i < end; i++) {
+      byte b = buffer.get(i);
+      if (b != ' ' && b != '\t' && b != '\r') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * What we found in one chunk. Line numbers are relative to the start of
+   * the chunk because we don't know how many lines come before it until
+   * the chunks before it are done.
+   */
+  private static final class Chunk {
+    private final Merger merger;
+    /**
+     * The chunk's buffer with the position and limit of the line we're
+     * parsing.
+     */
+    private final ByteBuffer line;
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private CharBuffer chars = CharBuffer.allocate(1024);
+    private long lines;
+    private long records;
+    private long failures;
+    /**
+     * The failures that might be among the first {@link #maxReports} in
+     * the file. We describe them when we {@linkplain Merger#add merge}
+     * the chunk so we only describe the ones we report.
+     */
+    private final List<Candidate> candidates = new ArrayList<>();
+
+    Chunk(ByteBuffer buffer, Merger merger) {
+      this.merger = merger;
+      this.line = buffer.duplicate();
+    }
+
+    /**
+     * Decode the line from {@code start} to {@code end} straight out of
+     * the buffer.
+     */
+    Reader read(int start, int end) {
+      if (chars.capacity() < end - start) {
+        // UTF-8 never decodes to more chars than bytes
+        chars = CharBuffer.allocate(Math.max(end - start, chars.capacity() * 2));
+      }
+      line.limit(end);
+      line.position(start);
+      chars.clear();
+      decoder.reset();
+      decoder.decode(line, chars, true);
+      decoder.flush(chars);
+      return new CharArrayReader(chars.array(), 0, chars.position());
+    }
+
+    void fail(long line, JsonElement record, String message) {
+      failures++;
+      if (merger.keep(candidates.size())) {
+        candidates.add(new Candidate(line, record, message));
+      }
+    }
+  }
+
+  /**
+   * A failure we might report. Either the record that didn't match or
+   * the reason the line isn't valid JSON.
+   */
+  private static final class Candidate {
+    private final long line;
+    private final JsonElement record;
+    private final String message;
+
+    Candidate(long line, JsonElement record, String message) {
+      this.line = line;
+      this.record = record;
+      this.message = message;
+    }
+  }
+
+  /**
+   * Joins {@link Chunk}s in file order, turning their line numbers into
+   * line numbers in the file and describing the first
+   * {@link #maxReports} failures.
+   */
+  private final class Merger {
+    private final Consumer<? super Failure> consumer;
+    /**
+     * The number of failures we've reported. Chunks stop keeping
+     * candidates once this reaches {@link #maxReports}.
+     */
+    private volatile int reported;
+    private long lines;
+    private long records;
+    private long failures;
+    private final List<Failure> reports = new ArrayList<>();
+
+    Merger(Consumer<? super Failure> consumer) {
+      this.consumer = consumer;
+    }
+
+    /**
+     * Should a chunk that already has {@code candidates} candidates keep
+     * another one?
+     */
+    boolean keep(int candidates) {
+      return candidates < maxReports && reported < maxReports;
+    }
+
+    void add(Chunk chunk) {
+      for (Candidate c : chunk.candidates) {
+        if (reported == maxReports) {
+          break;
+        }
+        String message = c.message;
+        if (message == null) {
+          StringDescription description = new StringDescription();
+          matcher.describeMismatch(c.record, description);
+          message = description.toString();
+        }
+        Failure failure = new Failure(lines + c.line + 1, message);
+        reports.add(failure);
+        reported = reports.size();
+        consumer.accept(failure);
+      }
+      lines += chunk.lines;
+      records += chunk.records;
+      failures += chunk.failures;
+    }
+
+    Result result() {
+      long[] failedLines = new long[reports.size()];
+      for (int i = 0; i < failedLines.length; i++) {
+        failedLines[i] = reports.get(i).line;
+      }
+      return new Result(lines, records, failures, failedLines,
+          Collections.unmodifiableList(reports));
+    }
+  }
+
+  /**
+   * The result of checking a file.
+   */
+  public static final class Result {
+    private final long lines;
+    private final long records;
+    private final long failures;
+    private final long[] failedLines;
+    private final List<Failure> reports;
+
+    private Result(long lines, long records, long failures, long[] failedLines,
+        List<Failure> reports) {
+      this.lines = lines;
+      this.records = records;
+      this.failures = failures;
+      this.failedLines = failedLines;
+      this.reports = reports;
+    }
+
+    /**
+     * The number of lines in the file, including blank lines.
+     */
+    public long lines() {
+      return lines;
+    }
+
+    /**
+     * The number of lines that weren't blank.
+     */
+    public long records() {
+      return records;
+    }
+
+    /**
+     * The number of lines that didn't match or weren't valid JSON.
+     */
+    public long failures() {
+      return failures;
+    }
+
+    /**
+     * The line numbers of the first {@link NdjsonValidator#maxReports}
+     * failures, in order. {@link #failures} counts all of them.
+     */
+    public long[] failedLines() {
+      return failedLines.clone();
+    }
+
+    /**
+     * Descriptions of the first {@link NdjsonValidator#maxReports}
+     * failures, in order.
+     */
+    public List<Failure> reports() {
+      return reports;
+    }
+
+    @Override
+    public String toString() {
+      return failures + " of " + records + " records failed";
+    }
+  }
+
+  /**
+   * A description of a line that failed.
+   */
+  public static final class Failure {
+    private final long line;
+    private final String message;
+
+    private Failure(long line, String message) {
+      this.line = line;
+      this.message = message;
+    }
+
+    /**
+     * The line number that failed.
+     */
+    public long line() {
+      return line;
+    }
+
+    /**
+     * Why it failed.
+     */
+    public String message() {
+      return message;
+    }
+
+    @Override
+    public String toString() {
+      return line + ": " + message;
+    }
+  }
+}
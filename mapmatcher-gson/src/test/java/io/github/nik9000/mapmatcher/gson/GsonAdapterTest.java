@@ -0,0 +1,146 @@
+/*
+ * Copyright 2021 Nikolas Everett
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.github.nik9000.mapmatcher.gson;
+
+import static io.github.nik9000.mapmatcher.ListMatcher.matchesList;
+import static io.github.nik9000.mapmatcher.MapMatcher.assertMap;
+import static io.github.nik9000.mapmatcher.MapMatcher.matchesMap;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+
+import org.hamcrest.Matcher;
+import org.hamcrest.StringDescription;
+import org.junit.jupiter.api.Test;
+
+class GsonAdapterTest {
+  private static final String DOC = """
+      {
+        "took": 57,
+        "timed_out": false,
+        "hits": {
+          "total": {"value": 2, "relation": "eq"},
+          "max_score": null,
+          "hits": [
+            {"_id": "1", "_score": 1.5},
+            {"_id": "2", "_score": 0.5}
+          ]
+        }
+      }""";
+
+  @Test
+  void matches() {
+    assertMap(JsonParser.parseString(DOC), matchesMap()
+        .entry("took", 57.0)
+        .entry("timed_out", false)
+        .entry("hits", matchesMap()
+            .entry("total", matchesMap().entry("value", 2.0).entry("relation", "eq"))
+            .entry("max_score", null)
+            .entry("hits", matchesList()
+                .item(matchesMap().entry("_id", "1").entry("_score", greaterThan(1.0)))
+                .item(matchesMap().entry("_id", "2").entry("_score", 0.5))))
+        .forObjects());
+  }
+
+  @Test
+  void numbersAreDoubles() {
+    assertThat(matchesMap().entry("took", 57).forObjects().matches(JsonParser.parseString(DOC)),
+        equalTo(false));
+  }
+
+  @Test
+  void mismatchIsSameAsConverted() {
+    assertSameAsConverted(matchesMap()
+        .entry("took", 58.0)
+        .entry("timed_out", nullValue())
+        .entry("hits", matchesMap()
+            .entry("total", matchesMap().entry("value", 2.0))
+            .entry("hits", List.of(
+                matchesMap().entry("_id", "1").entry("_score", greaterThan(2.0)),
+                "missing")))
+        .forObjects());
+  }
+
+  @Test
+  void mismatchUnexpectedIsSameAsConverted() {
+    assertSameAsConverted(matchesMap().entry("took", 57.0).forObjects());
+  }
+
+  @Test
+  void mismatchExtraOkIsSameAsConverted() {
+    assertSameAsConverted(matchesMap().entry("took", 0.0).extraOk().forObjects());
+  }
+
+  @Test
+  void mismatchWrongTypeIsSameAsConverted() {
+    JsonElement tree = JsonParser.parseString("\"a\"");
+    Matcher<Object> matcher = matchesList().item(1.0).forObjects();
+    assertThat(matcher.matches(tree), equalTo(false));
+    assertThat(mismatch(matcher, tree), equalTo(mismatch(matcher, toJava(tree))));
+  }
+
+  @Test
+  void list() {
+    assertMap(JsonParser.parseString("[1, \"a\", true, null, [2]]"), matchesList()
+        .item(1.0)
+        .item("a")
+        .item(true)
+        .item(null)
+        .item(List.of(2.0))
+        .forObjects());
+  }
+
+  @Test
+  void listMismatchIsSameAsConverted() {
+    JsonElement tree = JsonParser.parseString("[1, \"a\", true, null, [2]]");
+    Matcher<Object> matcher = matchesList().item(1.0).item("b").item(false).item(0.0)
+        .forObjects();
+    assertThat(mismatch(matcher, tree), equalTo(mismatch(matcher, toJava(tree))));
+  }
+
+  @Test
+  void primitiveIsNotABean() {
+    JsonElement tree = JsonParser.parseString("1");
+    Matcher<Object> matcher = matchesMap().entry("asString", "1").forObjects();
+    assertThat(matcher.matches(tree), equalTo(false));
+    assertThat(mismatch(matcher, tree), equalTo("was a java.lang.Double (<1.0>)"));
+  }
+
+  @Test
+  void assertionMessage() {
+    AssertionError e = assertThrows(AssertionError.class,
+        () -> assertMap(JsonParser.parseString("{\"a\": 1, \"b\": {\"c\": 2}}"),
+            matchesMap().entry("a", 1.0).forObjects()));
+    assertThat(e.getMessage(), equalTo("""
+        Expected a map containing
+        a: <1.0>
+        b: <unexpected> but was <{c=2.0}>"""));
+  }
+
+  private void assertSameAsConverted(Matcher<Object> matcher) {
+    JsonElement tree = JsonParser.parseString(DOC);
+    assertThat(matcher.matches(tree), equalTo(false));
+    assertThat(mismatch(matcher, tree), equalTo(mismatch(matcher, toJava(tree))));
+  }
+
+  private static Object toJava(JsonElement tree) {
+    return new Gson().fromJson(tree, Object.class);
+  }
+
+  private static String mismatch(Matcher<Object> matcher, Object actual) {
+    StringDescription description = new StringDescription();
+    matcher.describeMismatch(actual, description);
+    return description.toString();
+  }
+}
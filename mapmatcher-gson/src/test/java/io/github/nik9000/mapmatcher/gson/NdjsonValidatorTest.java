@@ -0,0 +1,182 @@
+/*
+ * Copyright 2021 Nikolas Everett
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.github.nik9000.mapmatcher.gson;
+
+import static io.github.nik9000.mapmatcher.MapMatcher.matchesMap;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.startsWith;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hamcrest.Matcher;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class NdjsonValidatorTest {
+  private static final Matcher<Object> MATCHER = matchesMap().entry("a", 1.0).forObjects();
+
+  @TempDir
+  Path tmp;
+
+  @Test
+  void allMatch() throws IOException {
+    NdjsonValidator.Result result = new NdjsonValidator(MATCHER).validate(write("""
+        {"a": 1}
+        {"a": 1}
+        """));
+    assertThat(result.lines(), equalTo(2L));
+    assertThat(result.records(), equalTo(2L));
+    assertThat(result.failures(), equalTo(0L));
+    assertThat(result.failedLines(), equalTo(new long[0]));
+    assertThat(result.reports(), hasSize(0));
+  }
+
+  @Test
+  void failures() throws IOException {
+    NdjsonValidator.Result result = new NdjsonValidator(MATCHER).validate(write("""
+        {"a": 1}
+        {"a": 2}
+
+        {"a": 1, "b": 2}
+        not json
+        """));
+    assertThat(result.lines(), equalTo(5L));
+    assertThat(result.records(), equalTo(4L));
+    assertThat(result.failures(), equalTo(3L));
+    assertThat(result.failedLines(), equalTo(new long[] {2, 4, 5}));
+    assertThat(result.reports(), hasSize(3));
+    assertThat(result.reports().get(0).line(), equalTo(2L));
+    assertThat(result.reports().get(0).message(), equalTo("""
+        a map containing
+        a: expected <1.0> but was <2.0>"""));
+    assertThat(result.reports().get(1).line(), equalTo(4L));
+    assertThat(result.reports().get(1).message(), equalTo("""
+        a map containing
+        a: <1.0>
+        b: <unexpected> but was <2.0>"""));
+    assertThat(result.reports().get(2).line(), equalTo(5L));
+    assertThat(result.reports().get(2).message(), startsWith("invalid JSON: "));
+    assertThat(result.toString(), equalTo("3 of 4 records failed"));
+  }
+
+  @Test
+  void strict() throws IOException {
+    NdjsonValidator.Result result = new NdjsonValidator(MATCHER).validate(write("""
+        {"a": 1}
+        {a: 1}
+        {'a': 1}
+        {"a": 1} {"a": 1}
+        {"a": NaN}
+        foo
+        """));
+    assertThat(result.records(), equalTo(6L));
+    assertThat(result.failedLines(), equalTo(new long[] {2, 3, 4, 5, 6}));
+    for (NdjsonValidator.Failure failure : result.reports()) {
+      assertThat(failure.message(), startsWith("invalid JSON: "));
+    }
+  }
+
+  @Test
+  void noTrailingNewline() throws IOException {
+    NdjsonValidator.Result result = new NdjsonValidator(MATCHER).validate(write(
+        "{\"a\": 1}\r\n{\"a\": 2}"));
+    assertThat(result.lines(), equalTo(2L));
+    assertThat(result.failedLines(), equalTo(new long[] {2}));
+  }
+
+  @Test
+  void empty() throws IOException {
+    NdjsonValidator.Result result = new NdjsonValidator(MATCHER).validate(write(""));
+    assertThat(result.lines(), equalTo(0L));
+    assertThat(result.records(), equalTo(0L));
+  }
+
+  @Test
+  void maxReports() throws IOException {
+    NdjsonValidator.Result result = new NdjsonValidator(MATCHER).maxReports(1).validate(write("""
+        {"a": 2}
+        {"a": 3}
+        """));
+    assertThat(result.failures(), equalTo(2L));
+    assertThat(result.failedLines(), equalTo(new long[] {1}));
+    assertThat(result.reports(), hasSize(1));
+    assertThat(result.reports().get(0).toString(), equalTo("""
+        1: a map containing
+        a: expected <1.0> but was <2.0>"""));
+  }
+
+  /**
+   * Splitting the file into many small chunks checked on many threads
+   * should find the same failures, on the same lines, as checking it in
+   * one chunk.
+   */
+  @Test
+  void chunks() throws IOException {
+    StringBuilder doc = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      doc.append("{\"a\": ").append(i % 7 == 0 ? 2 : 1).append("}\n");
+      if (i % 13 == 0) {
+        doc.append('\n');
+      }
+    }
+    Path file = write(doc.toString());
+    NdjsonValidator.Result whole = new NdjsonValidator(MATCHER).threads(1).maxReports(1000)
+        .validate(file);
+    assertThat(whole.failures(), equalTo(143L));
+    for (int chunkSize : new int[] {1, 5, 9, 10, 100, 4096}) {
+      NdjsonValidator.Result chunked = new NdjsonValidator(MATCHER).threads(4)
+          .chunkSize(chunkSize).maxReports(1000).validate(file);
+      assertThat(chunked.lines(), equalTo(whole.lines()));
+      assertThat(chunked.records(), equalTo(1000L));
+      assertThat(chunked.failedLines(), equalTo(whole.failedLines()));
+      assertThat(chunked.reports().toString(), equalTo(whole.reports().toString()));
+    }
+  }
+
+  /**
+   * Failures reach the consumer in file order even though the chunks are
+   * checked out of order.
+   */
+  @Test
+  void streams() throws IOException {
+    StringBuilder doc = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      doc.append("{\"a\": ").append(i % 7 == 0 ? 2 : 1).append("}\n");
+    }
+    List<NdjsonValidator.Failure> streamed = new ArrayList<>();
+    NdjsonValidator.Result result = new NdjsonValidator(MATCHER).threads(4).chunkSize(10)
+        .maxReports(50).validate(write(doc.toString()), streamed::add);
+    assertThat(result.failures(), equalTo(143L));
+    assertThat(result.reports(), hasSize(50));
+    assertThat(streamed.toString(), equalTo(result.reports().toString()));
+    for (int i = 0; i < streamed.size(); i++) {
+      assertThat(streamed.get(i).line(), equalTo(i * 7 + 1L));
+    }
+  }
+
+  @Test
+  void multiByte() throws IOException {
+    NdjsonValidator.Result result = new NdjsonValidator(
+        matchesMap().entry("a", "h\u00e9llo \ud83d\ude00").forObjects()).validate(write("""
+            {"a": "h\u00e9llo \ud83d\ude00"}
+            {"a": "h\u00e9llo"}
+            """));
+    assertThat(result.failedLines(), equalTo(new long[] {2}));
+  }
+
+  private Path write(String doc) throws IOException {
+    Path file = tmp.resolve("test.ndjson");
+    Files.write(file, doc.getBytes(StandardCharsets.UTF_8));
+    return file;
+  }
+}
@@ -0,0 +1,23 @@
+plugins {
+  id("mapmatcher.java-conventions")
+}
+
+description = """
+  A JUnit Jupiter extension that reports what mapmatcher's matchers
+  cost each test.
+""".trimIndent().replace("\n", " ")
+
+dependencies {
+  api(project(":mapmatcher"))
+  api("org.junit.jupiter:junit-jupiter-api:5.8.0-M1")
+  testImplementation("org.hamcrest:hamcrest:2.2")
+  testImplementation("org.junit.platform:junit-platform-launcher:1.8.0-M1")
+  testRuntimeOnly("org.junit.jupiter:junit-jupiter-engine:5.8.0-M1")
+}
+
+tasks.javadoc {
+  val o = options as StandardJavadocDocletOptions
+  o.docTitle("MapMatcher JUnit 5")
+  o.windowTitle("MapMatcher JUnit 5")
+  o.links!!.add("https://junit.org/junit5/docs/5.8.0-M1/api/")
+}
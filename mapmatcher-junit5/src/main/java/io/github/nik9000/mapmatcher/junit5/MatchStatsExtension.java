@@ -0,0 +1,174 @@
+/*
+ * Copyright 2021 Nikolas Everett
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.github.nik9000.mapmatcher.junit5;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.extension.AfterEachCallback;
+import org.junit.jupiter.api.extension.BeforeEachCallback;
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.junit.jupiter.api.extension.ExtensionContext.Namespace;
+import org.junit.jupiter.api.extension.ExtensionContext.Store.CloseableResource;
+import org.junit.jupiter.api.extension.TestExecutionExceptionHandler;
+
+import io.github.nik9000.mapmatcher.MatchStats;
+import io.github.nik9000.mapmatcher.MismatchError;
+
+/**
+ * Records what {@link io.github.nik9000.mapmatcher.MapMatcher}s and
+ * {@link io.github.nik9000.mapmatcher.ListMatcher}s cost each test and
+ * writes a report when the run finishes. Register it with
+ * {@code @ExtendWith(MatchStatsExtension.class)} or, to record every
+ * test, by setting {@code junit.jupiter.extensions.autodetection.enabled}
+ * to {@code true}.
+ * <p>
+ * The report is a tab separated file with a header line and a line per
+ * test, slowest first. Its columns are the test, the number of values it
+ * matched, microseconds spent matching, microseconds spent describing
+ * matchers and mismatches, expected values visited, failed assertions,
+ * and the total length of their messages. It goes to
+ * {@value #DEFAULT_REPORT} unless the {@value #REPORT_PARAMETER}
+ * configuration parameter says otherwise.
+ * <p>
+ * Stats are recorded on the thread that runs the test so matching on
+ * other threads, like with {@code @Timeout}'s
+ * {@code SEPARATE_THREAD} mode, isn't counted. {@link MismatchError}s
+ * thrown by the test are rendered while recording so their cost is
+ * counted too.
+ */
+public final class MatchStatsExtension
+    implements BeforeEachCallback, AfterEachCallback, TestExecutionExceptionHandler {
+  /**
+   * The configuration parameter that sets the path of the report.
+   */
+  public static final String REPORT_PARAMETER = "mapmatcher.stats.report";
+
+  /**
+   * The path of the report if {@value #REPORT_PARAMETER} isn't set.
+   */
+  public static final String DEFAULT_REPORT = "build/mapmatcher-stats.tsv";
+
+  private static final Namespace NAMESPACE = Namespace.create(MatchStatsExtension.class);
+
+  /**
+   * {@inheritDoc}
+   *
+   * @hidden
+   */
+  @Override
+  public void beforeEach(ExtensionContext context) {
+    MatchStats.start();
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @hidden
+   */
+  @Override
+  public void afterEach(ExtensionContext context) {
+    MatchStats stats = MatchStats.stop();
+    if (stats == null) {
+      return;
+    }
+    String test = context.getRequiredTestClass().getName() + "#" + context.getDisplayName();
+    report(context).rows.add(new Row(test, stats));
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @hidden
+   */
+  @Override
+  public void handleTestExecutionException(ExtensionContext context, Throwable throwable)
+      throws Throwable {
+    if (throwable instanceof MismatchError) {
+      // Render the message now, while we're recording
+      throwable.getMessage();
+    }
+    throw throwable;
+  }
+
+  /**
+   * The report for the whole run. JUnit closes it, writing it out, when
+   * the run finishes.
+   */
+  private static Report report(ExtensionContext context) {
+    ExtensionContext root = context.getRoot();
+    return root.getStore(NAMESPACE).getOrComputeIfAbsent(Report.class, k -> {
+      String path = root.getConfigurationParameter(REPORT_PARAMETER).orElse(DEFAULT_REPORT);
+      return new Report(Paths.get(path));
+    }, Report.class);
+  }
+
+  private static final class Report implements CloseableResource {
+    private final Path path;
+    private final Queue<Row> rows = new ConcurrentLinkedQueue<>();
+
+    Report(Path path) {
+      this.path = path;
+    }
+
+    @Override
+    public void close() throws IOException {
+      List<Row> sorted = new ArrayList<>(rows);
+      sorted.sort(Comparator.comparingLong(Row::nanos).reversed());
+      Path parent = path.toAbsolutePath().getParent();
+      if (parent != null) {
+        Files.createDirectories(parent);
+      }
+      try (Writer out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+        out.write("test\tmatches\tmatch_us\trender_us\tnodes\tfailures\tmessage_chars\n");
+        for (Row row : sorted) {
+          row.write(out);
+        }
+      }
+    }
+  }
+
+  private static final class Row {
+    private final String test;
+    private final MatchStats stats;
+
+    Row(String test, MatchStats stats) {
+      this.test = test;
+      this.stats = stats;
+    }
+
+    long nanos() {
+      return stats.matchNanos() + stats.renderNanos();
+    }
+
+    void write(Writer out) throws IOException {
+      out.write(test.replace('\t', ' ').replace('\n', ' '));
+      out.write('\t');
+      out.write(Long.toString(stats.matches()));
+      out.write('\t');
+      out.write(Long.toString(TimeUnit.NANOSECONDS.toMicros(stats.matchNanos())));
+      out.write('\t');
+      out.write(Long.toString(TimeUnit.NANOSECONDS.toMicros(stats.renderNanos())));
+      out.write('\t');
+      out.write(Long.toString(stats.nodes()));
+      out.write('\t');
+      out.write(Long.toString(stats.failures()));
+      out.write('\t');
+      out.write(Long.toString(stats.messageChars()));
+      out.write('\n');
+    }
+  }
+}
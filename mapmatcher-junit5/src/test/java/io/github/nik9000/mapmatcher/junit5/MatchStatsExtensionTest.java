@@ -0,0 +1,151 @@
+/*
+ * Copyright 2021 Nikolas Everett
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.github.nik9000.mapmatcher.junit5;
+
+import static io.github.nik9000.mapmatcher.MapMatcher.assertMap;
+import static io.github.nik9000.mapmatcher.MapMatcher.matchesMap;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.platform.engine.discovery.DiscoverySelectors.selectClass;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIf;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.platform.launcher.LauncherDiscoveryRequest;
+import org.junit.platform.launcher.core.LauncherDiscoveryRequestBuilder;
+import org.junit.platform.launcher.core.LauncherFactory;
+
+import io.github.nik9000.mapmatcher.MapMatcher;
+import io.github.nik9000.mapmatcher.MatchStats;
+import io.github.nik9000.mapmatcher.MismatchError;
+import io.github.nik9000.mapmatcher.ParallelRendering;
+
+class MatchStatsExtensionTest {
+  /**
+   * Set while we run {@link Example} so it doesn't run on its own.
+   */
+  private static volatile boolean running;
+
+  static boolean running() {
+    return running;
+  }
+
+  @Test
+  void report(@TempDir Path dir) throws IOException {
+    Path report = dir.resolve("nested/report.tsv");
+    LauncherDiscoveryRequest request = LauncherDiscoveryRequestBuilder.request()
+        .selectors(selectClass(Example.class))
+        .configurationParameter(MatchStatsExtension.REPORT_PARAMETER, report.toString())
+        .build();
+    running = true;
+    try {
+      LauncherFactory.create().execute(request);
+    } finally {
+      running = false;
+    }
+
+    List<String> lines = Files.readAllLines(report);
+    assertThat(lines, hasSize(6));
+    assertThat(lines.get(0),
+        equalTo("test\tmatches\tmatch_us\trender_us\tnodes\tfailures\tmessage_chars"));
+    Map<String, String[]> rows = new HashMap<>();
+    for (String line : lines.subList(1, lines.size())) {
+      String[] row = line.split("\t");
+      rows.put(row[0].substring(row[0].indexOf('#') + 1), row);
+    }
+    String[] slow = rows.get("slow()");
+    assertThat(slow[0], equalTo(Example.class.getName() + "#slow()"));
+    assertThat(Long.parseLong(slow[1]), equalTo(1L));
+    assertThat(Long.parseLong(slow[4]), equalTo(10_002L));
+    String[] failure = rows.get("failure()");
+    assertThat(Long.parseLong(failure[5]), equalTo(1L));
+    assertThat(Long.parseLong(failure[6]), greaterThan(0L));
+    String[] none = rows.get("none()");
+    assertThat(Long.parseLong(none[1]), equalTo(0L));
+    String[] serial = rows.get("renderSerially()");
+    String[] parallel = rows.get("renderInParallel()");
+    assertThat(Long.parseLong(serial[4]), greaterThan((long) Example.LARGE));
+    assertThat(parallel[4], equalTo(serial[4]));
+    assertThat(parallel[6], equalTo(serial[6]));
+  }
+
+  @Test
+  void stopsRecording() {
+    MatchStatsExtension extension = new MatchStatsExtension();
+    extension.beforeEach(null);
+    assertThat(MatchStats.stop().matches(), equalTo(0L));
+  }
+
+  @ExtendWith(MatchStatsExtension.class)
+  @EnabledIf("io.github.nik9000.mapmatcher.junit5.MatchStatsExtensionTest#running")
+  static class Example {
+    static final int LARGE = ParallelRendering.MIN_CHILDREN * 4;
+    private static final ForkJoinPool POOL = new ForkJoinPool(4);
+
+    @Test
+    void slow() {
+      Map<String, Integer> actual = new HashMap<>();
+      MapMatcher matcher = matchesMap();
+      for (int i = 0; i < 10_000; i++) {
+        actual.put(Integer.toString(i), i);
+        matcher = matcher.entry(Integer.toString(i), equalTo(i));
+      }
+      assertMap(Map.of("m", actual), matchesMap().entry("m", matcher));
+    }
+
+    @Test
+    void failure() {
+      assertMap(Map.of("a", 1), matchesMap().entry("a", 2));
+    }
+
+    @Test
+    void none() {}
+
+    @Test
+    void renderSerially() {
+      renderLargeMismatch();
+    }
+
+    @Test
+    void renderInParallel() {
+      ParallelRendering.enable(POOL);
+      try {
+        renderLargeMismatch();
+      } finally {
+        ParallelRendering.disable();
+      }
+    }
+
+    /**
+     * Render a mismatch large enough to render in parallel with leaves
+     * that match {@link MapMatcher}s of their own.
+     */
+    private static void renderLargeMismatch() {
+      MapMatcher expected = matchesMap();
+      Map<String, Object> actual = new HashMap<>();
+      for (int i = 0; i < LARGE; i++) {
+        expected = expected.entry("k" + i, containsInAnyOrder(matchesMap().entry("v", i)));
+        actual.put("k" + i, List.of(Map.of("v", i % 101 == 0 ? -i : i)));
+      }
+      MapMatcher matcher = expected;
+      MismatchError e = assertThrows(MismatchError.class, () -> assertMap(actual, matcher));
+      assertThat(e.getMessage().length(), greaterThan(LARGE));
+    }
+  }
+}
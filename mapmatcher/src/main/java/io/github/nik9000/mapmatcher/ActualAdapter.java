@@ -0,0 +1,53 @@
+/*
+ * Copyright 2021 Nikolas Everett
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.github.nik9000.mapmatcher;
+
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+
+/**
+ * Teaches {@link MapMatcher} and {@link ListMatcher} to read actual values
+ * from trees that aren't made of {@link Map}s and {@link List}s, like a
+ * JSON library's tree model, without converting them first.
+ * <p>
+ * Implementations are found with {@link ServiceLoader} when the matchers
+ * are first used so adding a jar that contains one to the classpath is
+ * enough to use it.
+ */
+public interface ActualAdapter {
+  /**
+   * Does this adapter read {@code actual}? If it does then the other
+   * methods are used to read it.
+   */
+  boolean handles(Object actual);
+
+  /**
+   * A {@link Map} view of {@code actual} or {@code null} if it isn't a map.
+   * Values in the view may be the adapter's own types.
+   */
+  Map<?, ?> asMap(Object actual);
+
+  /**
+   * A {@link List} view of {@code actual} or {@code null} if it isn't a
+   * list. Values in the view may be the adapter's own types.
+   */
+  List<?> asList(Object actual);
+
+  /**
+   * Convert {@code actual} into the plain java value that leaf
+   * {@link org.hamcrest.Matcher}s see and that failure messages show.
+   * Maps and lists should be converted deeply.
+   */
+  Object toJava(Object actual);
+
+  /**
+   * Does {@code actual} equal a plain expected value? This should give the
+   * same result as {@code toJava(actual).equals(expected)} but shouldn't
+   * need to convert {@code actual}.
+   */
+  boolean leafEquals(Object expected, Object actual);
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2021 Nikolas Everett
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.github.nik9000.mapmatcher;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+
+/**
+ * The {@link ActualAdapter}s on the classpath.
+ */
+final class Adapters {
+  private static final ActualAdapter[] ADAPTERS = load();
+
+  private Adapters() {}
+
+  private static ActualAdapter[] load() {
+    List<ActualAdapter> adapters = new ArrayList<>();
+    for (ActualAdapter adapter : ServiceLoader.load(ActualAdapter.class,
+        ActualAdapter.class.getClassLoader())) {
+      adapters.add(adapter);
+    }
+    return adapters.toArray(new ActualAdapter[0]);
+  }
+
+  /**
+   * Is {@code actual} read by an {@link ActualAdapter}?
+   */
+  static boolean handles(Object actual) {
+    for (ActualAdapter adapter : ADAPTERS) {
+      if (adapter.handles(actual)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * An {@link ActualAdapter}'s {@link Map} view of {@code actual} or
+   * {@code null} if there isn't one.
+   */
+  static Map<?, ?> asMap(Object actual) {
+    for (ActualAdapter adapter : ADAPTERS) {
+      if (adapter.handles(actual)) {
+        return adapter.asMap(actual);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * An {@link ActualAdapter}'s {@link List} view of {@code actual} or
+   * {@code null} if there isn't one.
+   */
+  static List<?> asList(Object actual) {
+    for (ActualAdapter adapter : ADAPTERS) {
+      if (adapter.handles(actual)) {
+        return adapter.asList(actual);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * {@code actual} as a plain java value.
+   */
+  static Object toJava(Object actual) {
+    for (ActualAdapter adapter : ADAPTERS) {
+      if (adapter.handles(actual)) {
+        return adapter.toJava(actual);
+      }
+    }
+    return actual;
+  }
+
+  /**
+   * Does an {@link ActualAdapter} think {@code actual} equals a plain
+   * expected value?
+   */
+  static boolean leafEquals(Object expected, Object actual) {
+    for (ActualAdapter adapter : ADAPTERS) {
+      if (adapter.handles(actual)) {
+        return adapter.leafEquals(expected, actual);
+      }
+    }
+    return false;
+  }
+}
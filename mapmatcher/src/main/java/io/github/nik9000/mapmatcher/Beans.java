@@ -0,0 +1,250 @@
+/*
+ * Copyright 2021 Nikolas Everett
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.github.nik9000.mapmatcher;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Reads properties from beans and records so {@link MapMatcher}s built
+ * with {@link MapMatcher#forBeans} can match them without converting
+ * them into {@link Map}s first. Property {@code foo} is read from the
+ * first public, non-static, no-argument method named {@code foo},
+ * {@code getFoo}, or {@code isFoo}. We find each accessor once per class
+ * and property and cache it as a {@link MethodHandle}.
+ * <p>
+ * We only call accessors that {@link MethodHandles#publicLookup} can
+ * see: public methods declared on public classes or interfaces. We never
+ * force access to anything. Properties whose only accessor isn't public
+ * that way, like the components of a record that isn't public, read as
+ * {@link #INACCESSIBLE} and never match.
+ */
+final class Beans {
+  private static final MethodType ACCESSOR_TYPE = MethodType.methodType(Object.class,
+      Object.class);
+
+  /**
+   * Read from properties that have an accessor we aren't allowed to call.
+   */
+  static final Object INACCESSIBLE = new Object() {
+    @Override
+    public String toString() {
+      return "inaccessible";
+    }
+  };
+
+  /**
+   * Reads {@link #INACCESSIBLE} from any bean.
+   */
+  private static final MethodHandle READ_INACCESSIBLE = MethodHandles.dropArguments(
+      MethodHandles.constant(Object.class, INACCESSIBLE), 0, Object.class);
+
+  /**
+   * Marks properties that don't have an accessor in {@link #ACCESSORS}.
+   */
+  private static final Object NONE = new Object();
+
+  private static final ClassValue<ConcurrentMap<String, Object>> ACCESSORS =
+      new ClassValue<ConcurrentMap<String, Object>>() {
+        @Override
+        protected ConcurrentMap<String, Object> computeValue(Class<?> type) {
+          return new ConcurrentHashMap<>();
+        }
+      };
+
+  private static final ClassValue<String[]> PROPERTIES = new ClassValue<String[]>() {
+    @Override
+    protected String[] computeValue(Class<?> type) {
+      return findProperties(type);
+    }
+  };
+
+  private Beans() {}
+
+  /**
+   * Should a {@link MapMatcher} that {@linkplain MapMatcher#forBeans reads
+   * beans} read {@code value}'s properties? Everything
+   * but {@code null}, {@link Map}s, collections, arrays, strings, numbers,
+   * enums, classes from the JDK, and values read by an
+   * {@link ActualAdapter}.
+   */
+  static boolean isBean(Object value) {
+    if (value == null || value instanceof Map || value instanceof Iterable
+        || value instanceof CharSequence || value instanceof Number || value instanceof Enum
+        || Adapters.handles(value)) {
+      return false;
+    }
+    Class<?> type = value.getClass();
+    if (type.isArray()) {
+      return false;
+    }
+    String name = type.getName();
+    return false == (name.startsWith("java.") || name.startsWith("javax."));
+  }
+
+  /**
+   * Find the accessor for a property.
+   *
+   * @return the accessor, typed {@code (Object)Object}, or {@code null}
+   *         if {@code type} doesn't have the property
+   */
+  static MethodHandle accessor(Class<?> type, Object property) {
+    if (false == property instanceof String) {
+      return null;
+    }
+    Object accessor = ACCESSORS.get(type).computeIfAbsent((String) property,
+        name -> find(type, name));
+    return accessor == NONE ? null : (MethodHandle) accessor;
+  }
+
+  /**
+   * The names of all of the properties of {@code type}. For records
+   * that's their components. For other classes that's each public,
+   * non-static, no-argument method named {@code getFoo} or
+   * {@code isFoo}.
+   */
+  static String[] properties(Class<?> type) {
+    return PROPERTIES.get(type);
+  }
+
+  /**
+   * Read a property with an accessor from {@link #accessor}.
+   */
+  static Object read(MethodHandle accessor, Object bean) {
+    try {
+      return (Object) accessor.invokeExact(bean);
+    } catch (RuntimeException | Error e) {
+      throw e;
+    } catch (Throwable t) {
+      throw new IllegalStateException("failed to read property of [" + bean + "]", t);
+    }
+  }
+
+  private static Object find(Class<?> type, String name) {
+    String capitalized = name.isEmpty()
+        ? name
+        : name.substring(0, 1).toUpperCase(Locale.ROOT) + name.substring(1);
+    Method method = method(type, name);
+    if (method == null) {
+      method = method(type, "get" + capitalized);
+    }
+    if (method == null) {
+      method = method(type, "is" + capitalized);
+    }
+    if (method == null) {
+      return NONE;
+    }
+    Method visible = visible(type, method);
+    if (visible == null) {
+      return READ_INACCESSIBLE;
+    }
+    try {
+      return MethodHandles.publicLookup().unreflect(visible).asType(ACCESSOR_TYPE);
+    } catch (IllegalAccessException e) {
+      // Public class in a package its module doesn't export
+      return READ_INACCESSIBLE;
+    }
+  }
+
+  /**
+   * {@code method} or the same method declared on a public supertype of
+   * {@code type}, like a public interface that a private class implements.
+   *
+   * @return the method or {@code null} if no public type declares it
+   */
+  private static Method visible(Class<?> type, Method method) {
+    if (Modifier.isPublic(method.getDeclaringClass().getModifiers())) {
+      return method;
+    }
+    Deque<Class<?>> types = new ArrayDeque<>();
+    types.add(type);
+    while (false == types.isEmpty()) {
+      Class<?> t = types.poll();
+      Method declared = Modifier.isPublic(t.getModifiers()) ? method(t, method.getName()) : null;
+      if (declared != null && Modifier.isPublic(declared.getDeclaringClass().getModifiers())) {
+        return declared;
+      }
+      if (t.getSuperclass() != null) {
+        types.add(t.getSuperclass());
+      }
+      types.addAll(Arrays.asList(t.getInterfaces()));
+    }
+    return null;
+  }
+
+  private static String[] findProperties(Class<?> type) {
+    Set<String> properties = new LinkedHashSet<>();
+    Class<?> superclass = type.getSuperclass();
+    if (superclass != null && superclass.getName().equals("java.lang.Record")) {
+      // Read the components reflectively because we build for java 8
+      try {
+        Object[] components = (Object[]) Class.class.getMethod("getRecordComponents")
+            .invoke(type);
+        for (Object component : components) {
+          properties.add((String) component.getClass().getMethod("getName").invoke(component));
+        }
+        return properties.toArray(new String[0]);
+      } catch (ReflectiveOperationException e) {
+        throw new IllegalStateException("failed to read components of [" + type + "]", e);
+      }
+    }
+    for (Method method : type.getMethods()) {
+      if (method.getParameterCount() != 0 || method(type, method.getName()) == null) {
+        continue;
+      }
+      String name = method.getName();
+      String property;
+      if (name.startsWith("get") && name.length() > 3) {
+        property = decapitalize(name.substring(3));
+      } else if (name.startsWith("is") && name.length() > 2) {
+        property = decapitalize(name.substring(2));
+      } else {
+        continue;
+      }
+      if (accessor(type, property) != null) {
+        properties.add(property);
+      }
+    }
+    return properties.toArray(new String[0]);
+  }
+
+  /**
+   * The property named by the rest of an accessor's name, like
+   * {@code java.beans.Introspector.decapitalize}.
+   */
+  private static String decapitalize(String name) {
+    if (name.length() > 1 && Character.isUpperCase(name.charAt(1))) {
+      return name;
+    }
+    return name.substring(0, 1).toLowerCase(Locale.ROOT) + name.substring(1);
+  }
+
+  private static Method method(Class<?> type, String name) {
+    Method method;
+    try {
+      method = type.getMethod(name);
+    } catch (NoSuchMethodException e) {
+      return null;
+    }
+    if (Modifier.isStatic(method.getModifiers()) || method.getReturnType() == void.class
+        || method.getDeclaringClass() == Object.class) {
+      return null;
+    }
+    return method;
+  }
+}
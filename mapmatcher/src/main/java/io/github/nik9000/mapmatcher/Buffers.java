@@ -0,0 +1,95 @@
+/*
+ * Copyright 2021 Nikolas Everett
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.github.nik9000.mapmatcher;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.ShortBuffer;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.function.IntFunction;
+
+/**
+ * {@link List} views of NIO buffers so {@link ListMatcher} can read them
+ * in place, including direct and memory mapped buffers. The views cover
+ * the buffer's remaining elements and read them by absolute index so they
+ * never move the buffer's position.
+ */
+final class Buffers {
+  private Buffers() {}
+
+  /**
+   * A view of {@code item} or {@code null} if it isn't a buffer we read.
+   */
+  static List<?> asList(Object item) {
+    if (false == item instanceof Buffer) {
+      return null;
+    }
+    if (item instanceof IntBuffer) {
+      IntBuffer b = (IntBuffer) item;
+      return new View(b, b::get);
+    }
+    if (item instanceof LongBuffer) {
+      LongBuffer b = (LongBuffer) item;
+      return new View(b, b::get);
+    }
+    if (item instanceof DoubleBuffer) {
+      DoubleBuffer b = (DoubleBuffer) item;
+      return new View(b, b::get);
+    }
+    if (item instanceof FloatBuffer) {
+      FloatBuffer b = (FloatBuffer) item;
+      return new View(b, b::get);
+    }
+    if (item instanceof ShortBuffer) {
+      ShortBuffer b = (ShortBuffer) item;
+      return new View(b, b::get);
+    }
+    if (item instanceof ByteBuffer) {
+      ByteBuffer b = (ByteBuffer) item;
+      return new View(b, b::get);
+    }
+    // CharBuffers are CharSequences so we match them like strings
+    return null;
+  }
+
+  /**
+   * Is {@code list} a view of a buffer?
+   */
+  static boolean isView(List<?> list) {
+    return list instanceof View;
+  }
+
+  private static final class View extends AbstractList<Object> implements RandomAccess {
+    private final int offset;
+    private final int size;
+    private final IntFunction<Object> read;
+
+    View(Buffer buffer, IntFunction<Object> read) {
+      this.offset = buffer.position();
+      this.size = buffer.remaining();
+      this.read = read;
+    }
+
+    @Override
+    public Object get(int index) {
+      if (index < 0 || index >= size) {
+        throw new IndexOutOfBoundsException("[" + index + "] not in [0, " + size + ")");
+      }
+      return read.apply(offset + index);
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+  }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2021 Nikolas Everett
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.github.nik9000.mapmatcher;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Opt-in cache of the matchers that {@link MapMatcher#matchesMap(Map)},
+ * {@link ListMatcher#matchesList(List)}, and friends build from expected
+ * {@link Map}s and {@link List}s. Tests that share constant fixtures
+ * convert each one once rather than on every call.
+ * <p>
+ * Only immutable collections, like those from {@code Map.of} and
+ * {@code List.of}, that contain only immutable collections are cached.
+ * They are cached by identity and held weakly so fixtures that are no
+ * longer used can still be collected. It is safe to use from tests that
+ * run concurrently.
+ */
+public final class ConversionCache {
+  private static volatile boolean enabled;
+
+  private static final ConcurrentMap<Key, Object> CACHE = new ConcurrentHashMap<>();
+  private static final ReferenceQueue<Object> QUEUE = new ReferenceQueue<>();
+  private static final LongAdder HITS = new LongAdder();
+  private static final LongAdder MISSES = new LongAdder();
+
+  private ConversionCache() {}
+
+  /**
+   * Start caching conversions.
+   */
+  public static void enable() {
+    enabled = true;
+  }
+
+  /**
+   * Stop caching conversions, dropping everything cached and resetting
+   * the counters.
+   */
+  public static void disable() {
+    enabled = false;
+    CACHE.clear();
+    HITS.reset();
+    MISSES.reset();
+  }
+
+  /**
+   * Is the cache enabled?
+   */
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * The number of conversions served from the cache.
+   */
+  public static long hits() {
+    return HITS.sum();
+  }
+
+  /**
+   * The number of cacheable conversions that weren't in the cache.
+   */
+  public static long misses() {
+    return MISSES.sum();
+  }
+
+  /**
+   * The cached conversion of a {@link Map} or {@link List} or {@code null}
+   * if it isn't cached.
+   */
+  static Object get(Object value) {
+    if (false == enabled || false == isImmutable(value)) {
+      return null;
+    }
+    Object converted = CACHE.get(new Key(value, null));
+    if (converted == null) {
+      MISSES.increment();
+    } else {
+      HITS.increment();
+    }
+    return converted;
+  }
+
+  /**
+   * Cache the conversion of a {@link Map} or {@link List} if we can.
+   * Children convert before their parents so if they are cacheable they
+   * are already cached. If they aren't then neither is {@code value}.
+   */
+  static void put(Object value, Object converted) {
+    if (false == enabled || false == isImmutable(value) || false == childrenCached(value)) {
+      return;
+    }
+    expunge();
+    CACHE.put(new Key(value, QUEUE), converted);
+  }
+
+  /**
+   * Is this collection's class one we know can't change?
+   */
+  private static boolean isImmutable(Object value) {
+    String name = value.getClass().getName();
+    return name.startsWith("java.util.ImmutableCollections$")
+        || name.startsWith("com.google.common.collect.Immutable")
+        || name.startsWith("com.google.common.collect.Regular")
+        || name.startsWith("com.google.common.collect.Singleton")
+        || name.equals("java.util.Collections$EmptyMap")
+        || name.equals("java.util.Collections$EmptyList")
+        || name.equals("java.util.Collections$SingletonMap")
+        || name.equals("java.util.Collections$SingletonList");
+  }
+
+  private static boolean childrenCached(Object value) {
+    Iterable<?> children = value instanceof Map ? ((Map<?, ?>) value).values() : (List<?>) value;
+    for (Object child : children) {
+      if ((child instanceof Map || child instanceof List)
+          && false == CACHE.containsKey(new Key(child, null))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static void expunge() {
+    Reference<?> ref;
+    while ((ref = QUEUE.poll()) != null) {
+      CACHE.remove(ref);
+    }
+  }
+
+  /**
+   * Weak reference compared by the identity of its referent.
+   */
+  private static final class Key extends WeakReference<Object> {
+    private final int hash;
+
+    Key(Object referent, ReferenceQueue<Object> queue) {
+      super(referent, queue);
+      this.hash = System.identityHashCode(referent);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (false == obj instanceof Key) {
+        return false;
+      }
+      Object referent = get();
+      return referent != null && referent == ((Key) obj).get();
+    }
+  }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2021 Nikolas Everett
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.github.nik9000.mapmatcher;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hamcrest.Matcher;
+import org.hamcrest.StringDescription;
+
+/**
+ * Matches many matchers against one actual document, like the hundreds
+ * of matchers a contract test suite applies to one large response.
+ * <p>
+ * It remembers whether each {@link MapMatcher} and {@link ListMatcher}
+ * it sees matched each value in the document so a sub-matcher that many
+ * matchers share, like a constant describing a common header, is only
+ * matched against each value once. Matchers are the same if they are the
+ * same instance. Building matchers from the same fixture with the
+ * {@link ConversionCache} enabled makes them the same instance. It also
+ * keeps the {@link Map} and {@link List} views that
+ * {@link ActualAdapter}s make of the values in the document so they are
+ * built once rather than once per matcher.
+ * <p>
+ * The document must not change while you match against it.
+ * {@linkplain DocumentIndex}es are not thread safe.
+ */
+public final class DocumentIndex {
+  /**
+   * Marks values that we've checked and aren't {@link Map}s or
+   * {@link List}s.
+   */
+  private static final Object NONE = new Object();
+
+  /**
+   * Index {@code actual}.
+   */
+  public static DocumentIndex of(Object actual) {
+    return new DocumentIndex(actual);
+  }
+
+  private final Object actual;
+  private final Map<Object, Object> maps = new IdentityHashMap<>();
+  private final Map<Object, Object> lists = new IdentityHashMap<>();
+  private final Map<Object, Map<Object, Boolean>> results = new IdentityHashMap<>();
+
+  private DocumentIndex(Object actual) {
+    this.actual = actual;
+  }
+
+  /**
+   * The document.
+   */
+  public Object actual() {
+    return actual;
+  }
+
+  /**
+   * Does the document match {@code matcher}?
+   */
+  public boolean matches(Matcher<?> matcher) {
+    if (matcher instanceof MapMatcher || matcher instanceof ListMatcher) {
+      return Walker.matches(matcher, actual, this);
+    }
+    return matcher.matches(actual);
+  }
+
+  /**
+   * Match the document against each of {@code matchers}.
+   *
+   * @return for each matcher, {@code null} if the document matches it or
+   *         a description of how it doesn't in the same format as
+   *         {@link MapMatcher#diff}
+   */
+  public List<String> diffAll(List<? extends Matcher<?>> matchers) {
+    List<String> diffs = new ArrayList<>(matchers.size());
+    for (Matcher<?> matcher : matchers) {
+      if (matches(matcher)) {
+        diffs.add(null);
+        continue;
+      }
+      StringDescription description = new StringDescription();
+      matcher.describeMismatch(actual, description);
+      diffs.add(description.toString());
+    }
+    return diffs;
+  }
+
+  /**
+   * Did {@code value} match {@code node}?
+   *
+   * @return {@code null} if we haven't matched them yet
+   */
+  Boolean known(Object node, Object value) {
+    Map<Object, Boolean> forNode = results.get(node);
+    return forNode == null ? null : forNode.get(value);
+  }
+
+  /**
+   * Remember if {@code value} matched {@code node}.
+   */
+  void remember(Object node, Object value, boolean matched) {
+    results.computeIfAbsent(node, k -> new IdentityHashMap<>()).put(value, matched);
+  }
+
+  /**
+   * {@code value} as a {@link Map}, like {@link Walker#mapView}.
+   */
+  Map<?, ?> asMap(Object value) {
+    if (value instanceof Map) {
+      return (Map<?, ?>) value;
+    }
+    Object view = maps.get(value);
+    if (view == null) {
+      view = Adapters.asMap(value);
+      maps.put(value, view == null ? NONE : view);
+    }
+    return view == NONE ? null : (Map<?, ?>) view;
+  }
+
+  /**
+   * {@code value} as a {@link List}, like {@link ListMatcher#asList}.
+   */
+  List<?> asList(Object value) {
+    if (value instanceof List) {
+      return (List<?>) value;
+    }
+    Object view = lists.get(value);
+    if (view == null) {
+      view = ListMatcher.asList(value);
+      lists.put(value, view == null ? NONE : view);
+    }
+    return view == NONE ? null : (List<?>) view;
+  }
+}
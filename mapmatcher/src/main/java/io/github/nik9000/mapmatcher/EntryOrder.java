@@ -0,0 +1,95 @@
+/*
+ * Copyright 2021 Nikolas Everett
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.github.nik9000.mapmatcher;
+
+import java.util.Arrays;
+
+/**
+ * The order an {@linkplain MapMatcher#adaptive adaptive}
+ * {@link MapMatcher} checks its entries in. It counts how often each
+ * entry fails and how many values checking it visits and, every
+ * {@link #REORDER_EVERY} matches, sorts the entries so the ones most
+ * likely to fail per value visited come first. That's the order that
+ * finds a mismatch soonest if entries fail independently.
+ * <p>
+ * The counts are updated without synchronization so matching on many
+ * threads at once can lose some of them. They are only used to guess a
+ * good order so that's fine. The order itself is always a permutation of
+ * the entries.
+ */
+final class EntryOrder {
+  /**
+   * How many matches we count before sorting the entries again.
+   */
+  static final int REORDER_EVERY = 64;
+
+  private final int[] checks;
+  private final int[] failures;
+  private final long[] visited;
+  private volatile int[] order;
+  private int sinceReorder;
+
+  EntryOrder(int size) {
+    checks = new int[size];
+    failures = new int[size];
+    visited = new long[size];
+    int[] identity = new int[size];
+    for (int i = 0; i < size; i++) {
+      identity[i] = i;
+    }
+    order = identity;
+  }
+
+  /**
+   * The positions of the entries in the order to check them. Callers
+   * must not modify it.
+   */
+  int[] order() {
+    return order;
+  }
+
+  /**
+   * Record checking the entry at {@code position}.
+   *
+   * @param visited the number of values checking it visited
+   * @param matched did it match?
+   */
+  void checked(int position, int visited, boolean matched) {
+    checks[position]++;
+    this.visited[position] += visited;
+    if (false == matched) {
+      failures[position]++;
+    }
+  }
+
+  /**
+   * Record that we finished matching a value, sorting the entries if it
+   * has been {@link #REORDER_EVERY} matches since we last did.
+   */
+  void finished() {
+    if (++sinceReorder < REORDER_EVERY) {
+      return;
+    }
+    sinceReorder = 0;
+    int size = checks.length;
+    double[] score = new double[size];
+    Integer[] sorted = new Integer[size];
+    for (int i = 0; i < size; i++) {
+      // Assume entries we know little about fail half the time and visit one value
+      double failureRate = (failures[i] + 1.0) / (checks[i] + 2.0);
+      double cost = (visited[i] + 1.0) / (checks[i] + 1.0);
+      score[i] = failureRate / cost;
+      sorted[i] = i;
+    }
+    // Stable so entries that score the same stay in the order they were declared
+    Arrays.sort(sorted, (lhs, rhs) -> Double.compare(score[rhs], score[lhs]));
+    int[] newOrder = new int[size];
+    for (int i = 0; i < size; i++) {
+      newOrder[i] = sorted[i];
+    }
+    order = newOrder;
+  }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2021 Nikolas Everett
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.github.nik9000.mapmatcher;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.hamcrest.BaseMatcher;
+import org.hamcrest.Description;
+import org.hamcrest.Matcher;
+
+/**
+ * Matcher for an expected JSON document that reports all errors at once.
+ * <p>
+ * The document is parsed up front into a compact form and matched
+ * directly against that. It is only converted into {@link MapMatcher}s
+ * and {@link ListMatcher}s when it needs to be described, usually because
+ * it didn't match. JSON numbers match any {@link Number} with the same
+ * value so documents parsed into {@link Double}s, {@link Long}s, or
+ * {@link Integer}s all work.
+ */
+public final class JsonMatcher extends BaseMatcher<Object> {
+  /**
+   * Create a {@linkplain JsonMatcher} that matches a JSON document.
+   *
+   * @throws IllegalArgumentException if {@code json} isn't valid
+   */
+  public static JsonMatcher matchesJson(String json) {
+    return new JsonMatcher(JsonTape.parse(json));
+  }
+
+  /**
+   * Create a {@linkplain JsonMatcher} that matches a JSON document
+   * read from a UTF-8 encoded file.
+   *
+   * @throws IllegalArgumentException if the file isn't valid JSON
+   */
+  public static JsonMatcher matchesJson(Path path) throws IOException {
+    return matchesJson(new String(Files.readAllBytes(path), StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Create a {@linkplain JsonMatcher} that matches a JSON document read
+   * from a UTF-8 encoded stream. The stream is read to the end but not
+   * closed.
+   *
+   * @throws IllegalArgumentException if the stream isn't valid JSON
+   */
+  public static JsonMatcher matchesJson(InputStream in) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    byte[] buffer = new byte[8192];
+    int read;
+    while ((read = in.read(buffer)) >= 0) {
+      bytes.write(buffer, 0, read);
+    }
+    return matchesJson(new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+  }
+
+  private final JsonTape tape;
+
+  private volatile Matcher<?> root;
+
+  private JsonMatcher(JsonTape tape) {
+    this.tape = tape;
+  }
+
+  /**
+   * The document as a {@link MapMatcher}, {@link ListMatcher}, or leaf
+   * {@link Matcher}, built the first time we need it.
+   */
+  Matcher<?> root() {
+    Matcher<?> result = root;
+    if (result == null) {
+      result = MapMatcher.matcherFor(tape.toJava());
+      root = result;
+    }
+    return result;
+  }
+
+  @Override
+  public boolean matches(Object actual) {
+    return tape.matches(actual);
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @hidden
+   */
+  @Override
+  public void describeTo(Description description) {
+    root().describeTo(description);
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @hidden
+   */
+  @Override
+  public void describeMismatch(Object item, Description description) {
+    root().describeMismatch(item, description);
+  }
+
+  /**
+   * The width of the widest key in the document when matched against
+   * {@code item}.
+   */
+  int keyWidthFor(Object item) {
+    return Nodes.keyWidthFor(root(), item);
+  }
+
+  /**
+   * Describe the document, indenting all keys to {@code keyWidth}.
+   */
+  void describeTo(int keyWidth, Description description) {
+    Nodes.describeTo(root(), keyWidth, description);
+  }
+
+  /**
+   * Describe how {@code item} matches the document.
+   *
+   * @return {@code false} without describing anything if {@code item}
+   *         isn't the kind of value the document matches
+   */
+  boolean describePotentialMismatchOf(int keyWidth, Object item, Description description) {
+    return Nodes.describePotentialMismatchOf(root(), keyWidth, item, description);
+  }
+
+  /**
+   * Single line description used when the value is missing.
+   */
+  String shortDescription() {
+    return Nodes.shortDescription(root());
+  }
+}
@@ -0,0 +1,484 @@
+/*
+ * Copyright 2021 Nikolas Everett
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.github.nik9000.mapmatcher;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.Array;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+import org.hamcrest.Matcher;
+import org.hamcrest.StringDescription;
+
+/**
+ * Writes the result of matching as <a href="https://jsonlines.org/">JSON
+ * lines</a> so tools can read it without parsing the text of the
+ * {@link AssertionError} thrown by {@link MapMatcher#assertMap}.
+ * <p>
+ * Each leaf that doesn't match gets a line like:
+ * <pre>
+ * {"path":["hits",0,"_id"],"status":"mismatch","expected":"\"a\"","actual":"b",
+ *   "mismatch":"was \"b\""}
+ * </pre>
+ * but all on one line.
+ * <ul>
+ * <li>{@code path} is the list of map keys, as strings, and list indices, as
+ *     numbers, leading to the leaf.
+ * <li>{@code status} is one of {@code mismatch}, {@code missing},
+ *     {@code unexpected}, or {@code unexpected_but_ok}. Or {@code match} if
+ *     you ask for them with {@link #writeAll}.
+ * <li>{@code expected} is the description of the leaf {@link Matcher}. It isn't
+ *     there for {@code unexpected} and {@code unexpected_but_ok} leaves.
+ * <li>{@code actual} is the actual value as JSON. It isn't there for
+ *     {@code missing} leaves or bean properties we aren't allowed to read.
+ * <li>{@code mismatch} is the mismatch description from the leaf
+ *     {@linkplain Matcher}. It is only there for {@code mismatch} leaves.
+ * </ul>
+ * Lines are written to the {@link Writer} as the matcher tree is walked.
+ * Nothing builds the text description of the whole tree. Like
+ * {@link Walker}, we walk with an explicit stack so deeply nested
+ * documents don't overflow the call stack.
+ */
+public final class JsonReport {
+  /**
+   * Write a line for each leaf of {@code actual} that doesn't match
+   * {@code matcher}.
+   */
+  public static <T> void write(T actual, Matcher<? super T> matcher, Writer out)
+      throws IOException {
+    new JsonReport(out, false).report(matcher, actual);
+  }
+
+  /**
+   * Write a line for each leaf of {@code actual}, including a
+   * {@code match} line for each one that matches {@code matcher}. This
+   * report is about as large as {@code actual}.
+   */
+  public static <T> void writeAll(T actual, Matcher<? super T> matcher, Writer out)
+      throws IOException {
+    new JsonReport(out, true).report(matcher, actual);
+  }
+
+  private final Writer out;
+  private final boolean matches;
+  private final List<Object> path = new ArrayList<>();
+  private final Deque<Frame> stack = new ArrayDeque<>();
+  /**
+   * Are we inside a matcher that {@linkplain MapMatcher#forBeans reads
+   * beans}?
+   */
+  private boolean beans;
+
+  private JsonReport(Writer out, boolean matches) {
+    this.out = out;
+    this.matches = matches;
+  }
+
+  private void report(Matcher<?> matcher, Object actual) throws IOException {
+    value(matcher, actual);
+    while (false == stack.isEmpty()) {
+      Frame top = stack.peek();
+      while (path.size() > top.depth) {
+        path.remove(path.size() - 1);
+      }
+      beans = top.beans;
+      if (false == top.next()) {
+        stack.pop();
+      }
+    }
+  }
+
+  /**
+   * Report a leaf or push a frame to report a map or list.
+   */
+  private void value(Matcher<?> matcher, Object actual) throws IOException {
+    if (matcher instanceof JsonMatcher) {
+      matcher = ((JsonMatcher) matcher).root();
+    }
+    if (matcher instanceof MapMatcher) {
+      boolean inner = beans || ((MapMatcher) matcher).readsBeans();
+      Map<?, ?> map = ((MapMatcher) matcher).asMap(actual, inner);
+      if (map != null) {
+        stack.push(new MapFrame((MapMatcher) matcher, map, inner));
+        return;
+      }
+    }
+    if (matcher instanceof ListMatcher) {
+      ListMatcher list = (ListMatcher) matcher;
+      List<?> actualList = ListMatcher.asList(actual);
+      if (actualList != null) {
+        boolean inner = beans || list.readsBeans();
+        if (list.isKeyed()) {
+          stack.push(new KeyedFrame(list, actualList, inner));
+        } else if (list.window() != ListMatcher.WHOLE) {
+          stack.push(new WindowFrame(list, actualList, inner));
+        } else {
+          stack.push(new ListFrame(list, actualList, inner));
+        }
+        return;
+      }
+    }
+    if (actual == Beans.INACCESSIBLE) {
+      line("mismatch", matcher, false, null, "was <inaccessible>");
+      return;
+    }
+    actual = Adapters.toJava(actual);
+    if (matcher.matches(actual)) {
+      if (matches) {
+        line("match", matcher, true, actual, null);
+      }
+      return;
+    }
+    StringDescription mismatch = new StringDescription();
+    matcher.describeMismatch(actual, mismatch);
+    line("mismatch", matcher, true, actual, mismatch.toString());
+  }
+
+  /**
+   * A map or list we're part way through reporting.
+   */
+  private abstract class Frame {
+    /**
+     * The length of the path to this frame.
+     */
+    final int depth = path.size();
+    final boolean beans;
+
+    Frame(boolean beans) {
+      this.beans = beans;
+    }
+
+    /**
+     * Report the next entry.
+     *
+     * @return {@code false} if there weren't any entries left
+     */
+    abstract boolean next() throws IOException;
+  }
+
+  private final class MapFrame extends Frame {
+    private final MapMatcher matcher;
+    private final Map<?, ?> actual;
+    private int i;
+    private Iterator<? extends Map.Entry<?, ?>> unexpected;
+
+    MapFrame(MapMatcher matcher, Map<?, ?> actual, boolean beans) {
+      super(beans);
+      this.matcher = matcher;
+      this.actual = actual;
+    }
+
+    @Override
+    boolean next() throws IOException {
+      if (i < matcher.size()) {
+        Object key = matcher.key(i);
+        path.add(String.valueOf(key));
+        if (actual.containsKey(key)) {
+          value(matcher.matcher(i), actual.get(key));
+        } else {
+          line("missing", matcher.matcher(i), false, null, null);
+        }
+        i++;
+        return true;
+      }
+      if (unexpected == null) {
+        unexpected = actual.entrySet().iterator();
+      }
+      while (unexpected.hasNext()) {
+        Map.Entry<?, ?> e = unexpected.next();
+        if (matcher.indexOf(e.getKey()) < 0) {
+          path.add(String.valueOf(e.getKey()));
+          line(matcher.isExtraOk() ? "unexpected_but_ok" : "unexpected", null, true,
+              e.getValue(), null);
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  private final class ListFrame extends Frame {
+    private final ListMatcher matcher;
+    private final List<?> actual;
+    private final Iterator<?> value;
+    private int read;
+    private int i;
+    private Iterator<?> unexpected;
+    private int unexpectedIndex;
+
+    ListFrame(ListMatcher matcher, List<?> actual, boolean beans) {
+      super(beans);
+      this.matcher = matcher;
+      this.actual = actual;
+      this.value = actual instanceof RandomAccess ? null : actual.iterator();
+    }
+
+    @Override
+    boolean next() throws IOException {
+      if (i < matcher.checkedCount()) {
+        int index = matcher.checkedIndex(i++);
+        path.add(index);
+        if (index < actual.size()) {
+          Object item = null;
+          if (value == null) {
+            item = actual.get(index);
+          } else {
+            while (read++ <= index) {
+              item = value.next();
+            }
+          }
+          value(matcher.matcher(index), item);
+        } else {
+          line("missing", matcher.matcher(index), false, null, null);
+        }
+        return true;
+      }
+      if (unexpected == null) {
+        unexpectedIndex = matcher.size();
+        unexpected = actual.listIterator(Math.min(unexpectedIndex, actual.size()));
+      }
+      if (false == unexpected.hasNext()) {
+        return false;
+      }
+      path.add(unexpectedIndex++);
+      line("unexpected", null, true, unexpected.next(), null);
+      return true;
+    }
+  }
+
+  /**
+   * Report a list that matches part of the actual list with the indices
+   * of the actual items in the path.
+   */
+  private final class WindowFrame extends Frame {
+    private final ListMatcher matcher;
+    private final SubList sub;
+    private int i;
+
+    WindowFrame(ListMatcher matcher, List<?> actual, boolean beans) {
+      super(beans);
+      this.matcher = matcher;
+      this.sub = SubList.align(matcher, actual);
+    }
+
+    @Override
+    boolean next() throws IOException {
+      if (i == matcher.size()) {
+        return false;
+      }
+      int a = sub.offset() + i;
+      path.add(a);
+      if (a < sub.actual().size()) {
+        value(matcher.matcher(i), sub.actual().get(a));
+      } else {
+        line("missing", matcher.matcher(i), false, null, null);
+      }
+      i++;
+      return true;
+    }
+  }
+
+  /**
+   * Report a {@linkplain ListMatcher#keyedBy keyed} list with items'
+   * keys, as strings, in the path.
+   */
+  private final class KeyedFrame extends Frame {
+    private final ListMatcher matcher;
+    private final KeyedJoin join;
+    private int i;
+
+    KeyedFrame(ListMatcher matcher, List<?> actual, boolean beans) {
+      super(beans);
+      this.matcher = matcher;
+      this.join = KeyedJoin.join(matcher, actual, beans);
+    }
+
+    @Override
+    boolean next() throws IOException {
+      if (i < matcher.size()) {
+        path.add(String.valueOf(join.expectedKey(i)));
+        if (join.found(i)) {
+          value(matcher.matcher(i), join.actual(i));
+        } else {
+          line("missing", matcher.matcher(i), false, null, null);
+        }
+        i++;
+        return true;
+      }
+      int u = i++ - matcher.size();
+      if (u >= join.unexpectedCount()) {
+        return false;
+      }
+      path.add(join.unexpectedKey(u));
+      line("unexpected", null, true, join.unexpected(u), null);
+      return true;
+    }
+  }
+
+  private void line(String status, Matcher<?> expected, boolean hasActual, Object actual,
+      String mismatch) throws IOException {
+    out.write("{\"path\":[");
+    for (int i = 0; i < path.size(); i++) {
+      if (i > 0) {
+        out.write(',');
+      }
+      Object key = path.get(i);
+      if (key instanceof Integer) {
+        out.write(key.toString());
+      } else {
+        string((String) key);
+      }
+    }
+    out.write("],\"status\":");
+    string(status);
+    if (expected != null) {
+      out.write(",\"expected\":");
+      string(Nodes.shortDescription(expected));
+    }
+    if (hasActual) {
+      out.write(",\"actual\":");
+      json(actual);
+    }
+    if (mismatch != null) {
+      out.write(",\"mismatch\":");
+      string(mismatch);
+    }
+    out.write("}\n");
+  }
+
+  private void json(Object value) throws IOException {
+    Deque<Container> containers = new ArrayDeque<>();
+    while (true) {
+      value = Adapters.toJava(value);
+      if (value == null) {
+        out.write("null");
+      } else if (value instanceof Boolean) {
+        out.write(value.toString());
+      } else if (value instanceof Number) {
+        double d = ((Number) value).doubleValue();
+        if (Double.isNaN(d) || Double.isInfinite(d)) {
+          string(value.toString());
+        } else {
+          out.write(value.toString());
+        }
+      } else if (value instanceof Map) {
+        out.write('{');
+        containers.push(new Container(((Map<?, ?>) value).entrySet().iterator(), '}'));
+      } else if (value instanceof List) {
+        out.write('[');
+        containers.push(new Container(((List<?>) value).iterator(), ']'));
+      } else if (value.getClass().isArray()) {
+        out.write('[');
+        containers.push(new Container(new ArrayIterator(value), ']'));
+      } else {
+        string(value.toString());
+      }
+      while (true) {
+        Container top = containers.peek();
+        if (top == null) {
+          return;
+        }
+        if (top.items.hasNext()) {
+          if (top.first) {
+            top.first = false;
+          } else {
+            out.write(',');
+          }
+          value = top.items.next();
+          if (top.close == '}') {
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) value;
+            string(String.valueOf(e.getKey()));
+            out.write(':');
+            value = e.getValue();
+          }
+          break;
+        }
+        out.write(top.close);
+        containers.pop();
+      }
+    }
+  }
+
+  /**
+   * A JSON object or array that {@link #json} is part way through writing.
+   */
+  private static final class Container {
+    private final Iterator<?> items;
+    private final char close;
+    private boolean first = true;
+
+    Container(Iterator<?> items, char close) {
+      this.items = items;
+      this.close = close;
+    }
+  }
+
+  /**
+   * Iterates the items of an array, boxing primitives.
+   */
+  private static final class ArrayIterator implements Iterator<Object> {
+    private final Object array;
+    private final int length;
+    private int i;
+
+    ArrayIterator(Object array) {
+      this.array = array;
+      this.length = Array.getLength(array);
+    }
+
+    @Override
+    public boolean hasNext() {
+      return i < length;
+    }
+
+    @Override
+    public Object next() {
+      if (i >= length) {
+        throw new NoSuchElementException();
+      }
+      return Array.get(array, i++);
+    }
+  }
+
+  private void string(String s) throws IOException {
+    out.write('"');
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      switch (c) {
+        case '"':
+          out.write("\\\"");
+          break;
+        case '\\':
+          out.write("\\\\");
+          break;
+        case '\n':
+          out.write("\\n");
+          break;
+        case '\r':
+          out.write("\\r");
+          break;
+        case '\t':
+          out.write("\\t");
+          break;
+        default:
+          if (c < 0x20) {
+            out.write(String.format(Locale.ROOT, "\\u%04x", (int) c));
+          } else {
+            out.write(c);
+          }
+      }
+    }
+    out.write('"');
+  }
+}
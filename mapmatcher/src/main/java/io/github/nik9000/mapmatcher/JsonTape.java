@@ -0,0 +1,595 @@
+/*
+ * Copyright 2021 Nikolas Everett
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.github.nik9000.mapmatcher;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hamcrest.Description;
+import org.hamcrest.TypeSafeMatcher;
+
+/**
+ * A parsed JSON document stored as a flat "tape" of {@code int}s and an
+ * array of the strings and numbers it contains. Objects are
+ * {@code OBJECT, size} followed by {@code size} pairs of key and value.
+ * Arrays are {@code ARRAY, size} followed by {@code size} values. Strings
+ * and numbers are {@code STRING} or {@code NUMBER} followed by their
+ * position in {@link #atoms}. {@code true}, {@code false}, and
+ * {@code null} are a single {@code int}.
+ * <p>
+ * Matching walks the tape against the actual value without building any
+ * {@link org.hamcrest.Matcher}s. {@link #toJava} converts the tape into
+ * {@link Map}s and {@link List}s for {@link MapMatcher#matcherFor} when
+ * we need a description.
+ */
+final class JsonTape {
+  private static final int OBJECT = 0;
+  private static final int ARRAY = 1;
+  private static final int STRING = 2;
+  private static final int NUMBER = 3;
+  private static final int TRUE = 4;
+  private static final int FALSE = 5;
+  private static final int NULL = 6;
+
+  static JsonTape parse(String json) {
+    return new Parser(json).parse();
+  }
+
+  private final int[] tape;
+  private final Object[] atoms;
+
+  private JsonTape(int[] tape, Object[] atoms) {
+    this.tape = tape;
+    this.atoms = atoms;
+  }
+
+  /**
+   * Does {@code actual} match the document? JSON numbers match any
+   * {@link Number} with the same value.
+   */
+  boolean matches(Object actual) {
+    Deque<Matching> stack = new ArrayDeque<>();
+    int pos = 0;
+    Object value = actual;
+    while (true) {
+      switch (tape[pos]) {
+        case OBJECT: {
+          Map<?, ?> map = value instanceof Map ? (Map<?, ?>) value : Adapters.asMap(value);
+          int size = tape[pos + 1];
+          if (map == null || map.size() != size) {
+            return false;
+          }
+          pos += 2;
+          if (size > 0) {
+            stack.push(new Matching(map, null, size));
+          }
+          break;
+        }
+        case ARRAY: {
+          List<?> list = ListMatcher.asList(value);
+          int size = tape[pos + 1];
+          if (list == null || list.size() != size) {
+            return false;
+          }
+          pos += 2;
+          if (size > 0) {
+            stack.push(new Matching(null, list.iterator(), size));
+          }
+          break;
+        }
+        default:
+          pos = matchLeaf(pos, Adapters.toJava(value));
+          if (pos < 0) {
+            return false;
+          }
+      }
+      Matching top;
+      while ((top = stack.peek()) != null && top.remaining == 0) {
+        stack.pop();
+      }
+      if (top == null) {
+        return true;
+      }
+      top.remaining--;
+      if (top.map == null) {
+        value = top.items.next();
+        continue;
+      }
+      Object key = atoms[tape[pos++]];
+      value = top.map.get(key);
+      if (value == null && false == top.map.containsKey(key)) {
+        return false;
+      }
+    }
+  }
+
+  private int matchLeaf(int pos, Object actual) {
+    switch (tape[pos]) {
+      case STRING:
+        return atoms[tape[pos + 1]].equals(actual) ? pos + 2 : -1;
+      case NUMBER:
+        return actual instanceof Number
+            && numbersEqual((Number) atoms[tape[pos + 1]], (Number) actual) ? pos + 2 : -1;
+      case TRUE:
+        return Boolean.TRUE.equals(actual) ? pos + 1 : -1;
+      case FALSE:
+        return Boolean.FALSE.equals(actual) ? pos + 1 : -1;
+      case NULL:
+        return actual == null ? pos + 1 : -1;
+      default:
+        throw new IllegalStateException("unknown tape entry [" + tape[pos] + "]");
+    }
+  }
+
+  /**
+   * Convert the document into {@link Map}s, {@link List}s, and plain
+   * values with numbers wrapped in a {@link org.hamcrest.Matcher} that
+   * compares them by value.
+   */
+  Object toJava() {
+    Deque<Building> stack = new ArrayDeque<>();
+    int pos = 0;
+    while (true) {
+      Building top = stack.peek();
+      if (top != null && top.map != null) {
+        top.key = atoms[tape[pos++]];
+      }
+      Object value;
+      switch (tape[pos]) {
+        case OBJECT: {
+          int size = tape[pos + 1];
+          pos += 2;
+          Map<Object, Object> map = new LinkedHashMap<>();
+          if (size > 0) {
+            stack.push(new Building(map, null, size));
+            continue;
+          }
+          value = map;
+          break;
+        }
+        case ARRAY: {
+          int size = tape[pos + 1];
+          pos += 2;
+          List<Object> list = new ArrayList<>(size);
+          if (size > 0) {
+            stack.push(new Building(null, list, size));
+            continue;
+          }
+          value = list;
+          break;
+        }
+        case STRING:
+          value = atoms[tape[pos + 1]];
+          pos += 2;
+          break;
+        case NUMBER:
+          value = new NumberMatcher((Number) atoms[tape[pos + 1]]);
+          pos += 2;
+          break;
+        case TRUE:
+          value = true;
+          pos++;
+          break;
+        case FALSE:
+          value = false;
+          pos++;
+          break;
+        case NULL:
+          value = null;
+          pos++;
+          break;
+        default:
+          throw new IllegalStateException("unknown tape entry [" + tape[pos] + "]");
+      }
+      while (true) {
+        top = stack.peek();
+        if (top == null) {
+          return value;
+        }
+        if (top.add(value)) {
+          break;
+        }
+        stack.pop();
+        value = top.map == null ? top.list : top.map;
+      }
+    }
+  }
+
+  /**
+   * Compare numbers by value so {@code 1} matches {@code 1}, {@code 1L},
+   * and {@code 1.0}.
+   */
+  static boolean numbersEqual(Number expected, Number actual) {
+    if (isIntegral(expected) && isIntegral(actual)) {
+      return expected.longValue() == actual.longValue();
+    }
+    if (expected instanceof BigDecimal || actual instanceof BigDecimal
+        || actual instanceof BigInteger) {
+      try {
+        return new BigDecimal(expected.toString()).compareTo(new BigDecimal(actual.toString()))
+            == 0;
+      } catch (NumberFormatException e) {
+        // NaN and infinity
+        return false;
+      }
+    }
+    return expected.doubleValue() == actual.doubleValue();
+  }
+
+  private static boolean isIntegral(Number n) {
+    return n instanceof Integer || n instanceof Long || n instanceof Short || n instanceof Byte;
+  }
+
+  /**
+   * Matches a JSON number by value.
+   */
+  private static final class NumberMatcher extends TypeSafeMatcher<Number> {
+    private final Number expected;
+
+    NumberMatcher(Number expected) {
+      super(Number.class);
+      this.expected = expected;
+    }
+
+    @Override
+    public void describeTo(Description description) {
+      description.appendValue(expected);
+    }
+
+    @Override
+    protected boolean matchesSafely(Number item) {
+      return numbersEqual(expected, item);
+    }
+  }
+
+  /**
+   * An object or array that {@link #matches} is part way through.
+   */
+  private static final class Matching {
+    private final Map<?, ?> map;
+    private final Iterator<?> items;
+    private int remaining;
+
+    Matching(Map<?, ?> map, Iterator<?> items, int remaining) {
+      this.map = map;
+      this.items = items;
+      this.remaining = remaining;
+    }
+  }
+
+  /**
+   * An object or array that {@link #toJava} is part way through.
+   */
+  private static final class Building {
+    private final Map<Object, Object> map;
+    private final List<Object> list;
+    private int remaining;
+    private Object key;
+
+    Building(Map<Object, Object> map, List<Object> list, int remaining) {
+      this.map = map;
+      this.list = list;
+      this.remaining = remaining;
+    }
+
+    /**
+     * Add the next value.
+     *
+     * @return {@code false} if that was the last one
+     */
+    boolean add(Object value) {
+      if (map == null) {
+        list.add(value);
+      } else {
+        map.put(key, value);
+      }
+      return --remaining > 0;
+    }
+  }
+
+  /**
+   * An object or array that {@link Parser} is part way through.
+   */
+  private static final class Open {
+    private final boolean object;
+    private final int sizePos;
+    private int size;
+
+    Open(boolean object, int sizePos) {
+      this.object = object;
+      this.sizePos = sizePos;
+    }
+  }
+
+  private static final class Parser {
+    private final String json;
+    private int pos;
+    private int[] tape = new int[16];
+    private int tapeSize;
+    private final List<Object> atoms = new ArrayList<>();
+    /**
+     * Keys seen so far. Arrays of objects tend to repeat the same keys
+     * over and over so we share them.
+     */
+    private final Map<String, Integer> keys = new HashMap<>();
+
+    Parser(String json) {
+      this.json = json;
+    }
+
+    JsonTape parse() {
+      Deque<Open> stack = new ArrayDeque<>();
+      while (true) {
+        Open top = stack.peek();
+        if (top != null && top.object) {
+          key();
+        }
+        if (value(stack)) {
+          continue;
+        }
+        while (true) {
+          top = stack.peek();
+          if (top == null) {
+            skipWhitespace();
+            if (pos != json.length()) {
+              throw error("expected end of document");
+            }
+            return new JsonTape(Arrays.copyOf(tape, tapeSize), atoms.toArray());
+          }
+          top.size++;
+          skipWhitespace();
+          if (peek() == ',') {
+            pos++;
+            break;
+          }
+          expect(top.object ? '}' : ']');
+          tape[top.sizePos] = top.size;
+          stack.pop();
+        }
+      }
+    }
+
+    /**
+     * Parse a value, pushing non-empty objects and arrays onto
+     * {@code stack} rather than parsing their contents.
+     *
+     * @return {@code true} if we pushed onto {@code stack}
+     */
+    private boolean value(Deque<Open> stack) {
+      skipWhitespace();
+      if (pos >= json.length()) {
+        throw error("expected a value");
+      }
+      char c = json.charAt(pos);
+      switch (c) {
+        case '{':
+          return open(OBJECT, '}', stack);
+        case '[':
+          return open(ARRAY, ']', stack);
+        case '"':
+          add(STRING);
+          add(atom(string()));
+          return false;
+        case 't':
+          literal("true");
+          add(TRUE);
+          return false;
+        case 'f':
+          literal("false");
+          add(FALSE);
+          return false;
+        case 'n':
+          literal("null");
+          add(NULL);
+          return false;
+        default:
+          if (c == '-' || (c >= '0' && c <= '9')) {
+            add(NUMBER);
+            add(atom(number()));
+            return false;
+          }
+          throw error("unexpected character [" + c + "]");
+      }
+    }
+
+    private boolean open(int type, char close, Deque<Open> stack) {
+      pos++;
+      add(type);
+      int sizePos = tapeSize;
+      add(0);
+      skipWhitespace();
+      if (peek() == close) {
+        pos++;
+        return false;
+      }
+      stack.push(new Open(type == OBJECT, sizePos));
+      return true;
+    }
+
+    private void key() {
+      skipWhitespace();
+      if (peek() != '"') {
+        throw error("expected a key");
+      }
+      String key = string();
+      Integer keyAtom = keys.get(key);
+      if (keyAtom == null) {
+        keyAtom = atom(key);
+        keys.put(key, keyAtom);
+      }
+      add(keyAtom);
+      skipWhitespace();
+      expect(':');
+    }
+
+    private String string() {
+      pos++;
+      int start = pos;
+      while (pos < json.length()) {
+        char c = json.charAt(pos);
+        if (c == '"') {
+          return json.substring(start, pos++);
+        }
+        if (c == '\\') {
+          return escapedString(start);
+        }
+        pos++;
+      }
+      throw error("unterminated string");
+    }
+
+    private String escapedString(int start) {
+      StringBuilder b = new StringBuilder(json.substring(start, pos));
+      while (pos < json.length()) {
+        char c = json.charAt(pos++);
+        if (c == '"') {
+          return b.toString();
+        }
+        if (c != '\\') {
+          b.append(c);
+          continue;
+        }
+        if (pos >= json.length()) {
+          break;
+        }
+        char e = json.charAt(pos++);
+        switch (e) {
+          case '"':
+          case '\\':
+          case '/':
+            b.append(e);
+            break;
+          case 'b':
+            b.append('\b');
+            break;
+          case 'f':
+            b.append('\f');
+            break;
+          case 'n':
+            b.append('\n');
+            break;
+          case 'r':
+            b.append('\r');
+            break;
+          case 't':
+            b.append('\t');
+            break;
+          case 'u':
+            if (pos + 4 > json.length()) {
+              throw error("bad unicode escape");
+            }
+            try {
+              b.append((char) Integer.parseInt(json.substring(pos, pos + 4), 16));
+            } catch (NumberFormatException ex) {
+              throw error("bad unicode escape");
+            }
+            pos += 4;
+            break;
+          default:
+            throw error("bad escape [" + e + "]");
+        }
+      }
+      throw error("unterminated string");
+    }
+
+    /**
+     * Parse a number. Integers become the smallest of {@link Integer},
+     * {@link Long}, or {@link BigDecimal} that holds them and everything
+     * else becomes a {@link Double}.
+     */
+    private Number number() {
+      int start = pos;
+      boolean integral = true;
+      while (pos < json.length()) {
+        char c = json.charAt(pos);
+        if (c == '.' || c == 'e' || c == 'E') {
+          integral = false;
+        } else if (false == (c == '-' || c == '+' || (c >= '0' && c <= '9'))) {
+          break;
+        }
+        pos++;
+      }
+      String text = json.substring(start, pos);
+      try {
+        if (integral) {
+          if (text.length() < 18) {
+            long l = Long.parseLong(text);
+            if (l == (int) l) {
+              return (int) l;
+            }
+            return l;
+          }
+          BigDecimal big = new BigDecimal(text);
+          try {
+            return big.longValueExact();
+          } catch (ArithmeticException e) {
+            return big;
+          }
+        }
+        return Double.parseDouble(text);
+      } catch (NumberFormatException e) {
+        pos = start;
+        throw error("bad number [" + text + "]");
+      }
+    }
+
+    private void literal(String expected) {
+      if (false == json.startsWith(expected, pos)) {
+        throw error("expected [" + expected + "]");
+      }
+      pos += expected.length();
+    }
+
+    private void expect(char c) {
+      if (peek() != c) {
+        throw error("expected [" + c + "]");
+      }
+      pos++;
+    }
+
+    private char peek() {
+      if (pos >= json.length()) {
+        throw error("unexpected end of document");
+      }
+      return json.charAt(pos);
+    }
+
+    private void skipWhitespace() {
+      while (pos < json.length()) {
+        char c = json.charAt(pos);
+        if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+          return;
+        }
+        pos++;
+      }
+    }
+
+    private int atom(Object atom) {
+      atoms.add(atom);
+      return atoms.size() - 1;
+    }
+
+    private void add(int value) {
+      if (tapeSize == tape.length) {
+        tape = Arrays.copyOf(tape, tapeSize * 2);
+      }
+      tape[tapeSize++] = value;
+    }
+
+    private IllegalArgumentException error(String message) {
+      return new IllegalArgumentException("Invalid JSON at [" + pos + "]: " + message);
+    }
+  }
+}
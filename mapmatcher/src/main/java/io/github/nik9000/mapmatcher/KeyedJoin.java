@@ -0,0 +1,308 @@
+/*
+ * Copyright 2021 Nikolas Everett
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.github.nik9000.mapmatcher;
+
+import java.lang.invoke.MethodHandle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.hamcrest.Matcher;
+
+/**
+ * Pairs the actual items of a {@linkplain ListMatcher#keyedBy keyed}
+ * {@link ListMatcher} with the expected items that have the same key
+ * with a hash join. The expected keys are indexed as the matcher is
+ * built and each actual item is looked up once so joining is O(n).
+ */
+final class KeyedJoin {
+  /**
+   * Marks expected items that no actual item has the key of and actual
+   * items that don't have a value at the key path.
+   */
+  private static final Object NONE = new Object();
+
+  /**
+   * Join {@code actual} with {@code list} for matching.
+   *
+   * @param beans read keys from the properties of beans?
+   * @return the actual items in the order of the expected items with the
+   *         same keys or {@code null} if any expected item is missing or
+   *         any actual item is unexpected
+   */
+  static Object[] match(ListMatcher list, List<?> actual, boolean beans) {
+    if (actual.size() != list.size()) {
+      return null;
+    }
+    Index index = list.keyIndex();
+    Object[] joined = new Object[list.size()];
+    boolean[] found = new boolean[list.size()];
+    for (Object item : actual) {
+      Integer position = index.position(key(list.keyPath(), item, beans), list.size());
+      if (position == null || found[position]) {
+        return null;
+      }
+      found[position] = true;
+      joined[position] = item;
+    }
+    return joined;
+  }
+
+  /**
+   * Join {@code actual} with {@code list} for describing.
+   *
+   * @param beans read keys from the properties of beans?
+   */
+  static KeyedJoin join(ListMatcher list, List<?> actual, boolean beans) {
+    Index index = list.keyIndex();
+    KeyedJoin join = new KeyedJoin(index, list.size());
+    for (Object item : actual) {
+      Object key = key(list.keyPath(), item, beans);
+      Integer position = index.position(key, list.size());
+      if (position == null || join.joined[position] != NONE) {
+        join.unexpectedKeys.add(key);
+        join.unexpected.add(item);
+      } else {
+        join.joined[position] = item;
+      }
+    }
+    return join;
+  }
+
+  /**
+   * Read the key of an actual item.
+   *
+   * @return the key or {@link #NONE} if it doesn't have one
+   */
+  private static Object key(Object[] path, Object item, boolean beans) {
+    Object value = item;
+    for (Object k : path) {
+      Map<?, ?> map = value instanceof Map ? (Map<?, ?>) value : Adapters.asMap(value);
+      if (map != null) {
+        if (false == map.containsKey(k)) {
+          return NONE;
+        }
+        value = map.get(k);
+        continue;
+      }
+      if (false == (beans && Beans.isBean(value))) {
+        return NONE;
+      }
+      MethodHandle accessor = Beans.accessor(value.getClass(), k);
+      if (accessor == null) {
+        return NONE;
+      }
+      value = Beans.read(accessor, value);
+      if (value == Beans.INACCESSIBLE) {
+        return NONE;
+      }
+    }
+    return Adapters.toJava(value);
+  }
+
+  private final Index index;
+  private final Object[] joined;
+  private final List<Object> unexpectedKeys = new ArrayList<>();
+  private final List<Object> unexpected = new ArrayList<>();
+
+  private KeyedJoin(Index index, int size) {
+    this.index = index;
+    this.joined = new Object[size];
+    Arrays.fill(joined, NONE);
+  }
+
+  /**
+   * The key of the {@code i}th expected item.
+   */
+  Object expectedKey(int i) {
+    return index.key(i);
+  }
+
+  /**
+   * Is there an actual item with the key of the {@code i}th expected item?
+   */
+  boolean found(int i) {
+    return joined[i] != NONE;
+  }
+
+  /**
+   * The actual item with the key of the {@code i}th expected item.
+   */
+  Object actual(int i) {
+    return joined[i];
+  }
+
+  /**
+   * The number of actual items we didn't expect.
+   */
+  int unexpectedCount() {
+    return unexpected.size();
+  }
+
+  /**
+   * The key of the {@code i}th unexpected item.
+   */
+  String unexpectedKey(int i) {
+    Object key = unexpectedKeys.get(i);
+    return key == NONE ? "<no key>" : String.valueOf(key);
+  }
+
+  /**
+   * The {@code i}th unexpected item.
+   */
+  Object unexpected(int i) {
+    return unexpected.get(i);
+  }
+
+  /**
+   * The width of the widest key.
+   */
+  int keyWidth() {
+    int max = 0;
+    for (int i = 0; i < joined.length; i++) {
+      max = Math.max(max, String.valueOf(index.key(i)).length());
+    }
+    for (int i = 0; i < unexpected.size(); i++) {
+      max = Math.max(max, unexpectedKey(i).length());
+    }
+    return max;
+  }
+
+  /**
+   * The key path of a keyed {@linkplain ListMatcher} and the keys of its
+   * expected items. Like the items themselves, the keys and their
+   * positions are shared by the chain of matchers built by appending
+   * items one at a time. See {@link Tail}. Each matcher only sees the
+   * positions before its size.
+   */
+  static final class Index {
+    /**
+     * Stands in for {@code null} keys because
+     * {@linkplain ConcurrentHashMap} doesn't allow them.
+     */
+    private static final Object NULL = new Object();
+
+    private final Object[] path;
+    private final Object[] keys;
+    private final Map<Object, Integer> positions;
+
+    private Index(Object[] path, Object[] keys, Map<Object, Integer> positions) {
+      this.path = path;
+      this.keys = keys;
+      this.positions = positions;
+    }
+
+    /**
+     * Index the keys of the first {@code size} {@code items}.
+     *
+     * @throws IllegalArgumentException if an item doesn't have a plain
+     *         value at {@code path} or two items have the same key
+     */
+    static Index build(Object[] path, Object[] items, int size) {
+      Index index = new Index(path, new Object[Math.max(size, 1)],
+          new ConcurrentHashMap<>(size * 4 / 3 + 1));
+      for (int i = 0; i < size; i++) {
+        index.add(i, items[i]);
+      }
+      return index;
+    }
+
+    /**
+     * The index for a matcher that appends {@code item} to the
+     * {@code size} items we index.
+     *
+     * @param claimed did the new matcher claim the slot after ours in
+     *        their shared {@link Tail}? If it did we add the key to our
+     *        shared positions. If it didn't we copy them.
+     * @throws IllegalArgumentException if {@code item} doesn't have a
+     *         plain value at the key path or has the same key as one of
+     *         our items
+     */
+    Index append(int size, Object item, boolean claimed) {
+      Index index;
+      if (claimed) {
+        index = size < keys.length ? this : new Index(path, Arrays.copyOf(keys,
+            Tail.grow(size)), positions);
+      } else {
+        index = new Index(path, Arrays.copyOf(keys, Tail.grow(size)),
+            new ConcurrentHashMap<>(size * 4 / 3 + 1));
+        for (int i = 0; i < size; i++) {
+          index.positions.put(mask(keys[i]), i);
+        }
+      }
+      index.add(size, item);
+      return index;
+    }
+
+    private void add(int i, Object item) {
+      Object key = expectedKey(path, item);
+      if (key == NONE) {
+        throw new IllegalArgumentException("item [" + i + "] must have a plain value at "
+            + Arrays.toString(path) + " but was " + MapMatcher.matcherForConverted(item));
+      }
+      Integer old = position(key, i);
+      if (old != null) {
+        throw new IllegalArgumentException("items [" + old + "] and [" + i
+            + "] have the same key [" + key + "]");
+      }
+      positions.put(mask(key), i);
+      keys[i] = key;
+    }
+
+    /**
+     * The path to the key items are matched by.
+     */
+    Object[] path() {
+      return path;
+    }
+
+    /**
+     * The key of the {@code i}th expected item.
+     */
+    Object key(int i) {
+      return keys[i];
+    }
+
+    /**
+     * The position of the expected item with {@code key} in a matcher
+     * with {@code size} items.
+     *
+     * @return the position or {@code null} if none of the first
+     *         {@code size} items have that key
+     */
+    Integer position(Object key, int size) {
+      Integer position = positions.get(mask(key));
+      return position == null || position >= size ? null : position;
+    }
+
+    private static Object mask(Object key) {
+      return key == null ? NULL : key;
+    }
+
+    /**
+     * Read the key of an expected item.
+     *
+     * @return the key or {@link #NONE} if it doesn't have a plain one
+     */
+    private static Object expectedKey(Object[] path, Object item) {
+      Object value = item;
+      for (Object k : path) {
+        if (false == value instanceof MapMatcher) {
+          return NONE;
+        }
+        MapMatcher map = (MapMatcher) value;
+        int i = map.indexOf(k);
+        if (i < 0) {
+          return NONE;
+        }
+        value = map.expected(i);
+      }
+      return value instanceof Matcher ? NONE : value;
+    }
+  }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2021 Nikolas Everett
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.github.nik9000.mapmatcher;
+
+import java.util.Objects;
+import java.util.function.Predicate;
+
+/**
+ * A test for a single value that doesn't need Hamcrest. Use it anywhere
+ * you'd use an expected value or a leaf {@link org.hamcrest.Matcher}:
+ * <pre>{@code
+ * matchesMap().entry("took", Leaf.of("a positive number", v -> ((Number) v).longValue() > 0))
+ * }</pre>
+ * <p>
+ * Like leaf {@linkplain org.hamcrest.Matcher}s, leaves test the plain
+ * Java version of values read by {@link ActualAdapter}s. They describe
+ * mismatches the same way {@link org.hamcrest.BaseMatcher} does: if
+ * {@code foo} doesn't match then its entry reads
+ * {@code expected <description> but was <foo>}.
+ */
+public interface Leaf {
+  /**
+   * Build a {@linkplain Leaf} from a {@link Predicate}.
+   */
+  static Leaf of(String description, Predicate<Object> test) {
+    Objects.requireNonNull(description, "description");
+    Objects.requireNonNull(test, "test");
+    return new Leaf() {
+      @Override
+      public boolean test(Object actual) {
+        return test.test(actual);
+      }
+
+      @Override
+      public String description() {
+        return description;
+      }
+
+      @Override
+      public String toString() {
+        return description;
+      }
+    };
+  }
+
+  /**
+   * Does {@code actual} match?
+   */
+  boolean test(Object actual);
+
+  /**
+   * Describe the values that match, like
+   * {@link org.hamcrest.Matcher#describeTo}.
+   */
+  String description();
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2021 Nikolas Everett
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.github.nik9000.mapmatcher;
+
+import org.hamcrest.BaseMatcher;
+import org.hamcrest.Description;
+
+/**
+ * Describes a {@link Leaf} to Hamcrest. {@link MapMatcher#convert}
+ * wraps {@linkplain Leaf}s in these so everything that describes leaf
+ * {@link org.hamcrest.Matcher}s describes them too. Matching skips
+ * Hamcrest and calls {@link Leaf#test} directly.
+ */
+final class LeafMatcher extends BaseMatcher<Object> {
+  private final Leaf leaf;
+
+  LeafMatcher(Leaf leaf) {
+    this.leaf = leaf;
+  }
+
+  /**
+   * The wrapped {@linkplain Leaf}.
+   */
+  Leaf leaf() {
+    return leaf;
+  }
+
+  @Override
+  public boolean matches(Object actual) {
+    return leaf.test(actual);
+  }
+
+  @Override
+  public void describeTo(Description description) {
+    description.appendText(leaf.description());
+  }
+}
@@ -0,0 +1,336 @@
+/*
+ * Copyright 2021 Nikolas Everett
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.github.nik9000.mapmatcher;
+
+import static io.github.nik9000.mapmatcher.MapMatcher.matchesValue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+import org.hamcrest.Matcher;
+
+/**
+ * Aligns the items an {@linkplain ListMatcher#aligned aligned}
+ * {@link ListMatcher} expects with the actual items using Myers' O(ND)
+ * difference algorithm. The alignment is a list of runs of items that
+ * match, expected items missing from the actual list, actual items that
+ * weren't expected, and items that changed.
+ * <p>
+ * We trim matching items off of the front and back of the lists before
+ * aligning them. And before we check if a plain expected value matches
+ * an actual item we compare their hash codes. Together they keep
+ * aligning large lists with few changes fast.
+ */
+final class ListDiff {
+  /**
+   * The most edits we'll look for. Myers' algorithm keeps
+   * O(edits<sup>2</sup>) state so lists that differ by more than this
+   * are described index by index.
+   */
+  static final int MAX_EDITS = 1000;
+
+  /**
+   * A run of items that match.
+   */
+  static final int SAME = 0;
+  /**
+   * An expected item replaced by an actual item.
+   */
+  static final int CHANGED = 1;
+  /**
+   * An expected item missing from the actual list.
+   */
+  static final int MISSING = 2;
+  /**
+   * An actual item that we didn't expect.
+   */
+  static final int UNEXPECTED = 3;
+
+  private static final byte UNHASHED = 0;
+  private static final byte HASHED = 1;
+  private static final byte UNHASHABLE = 2;
+
+  /**
+   * Align {@code actual} with {@code list}.
+   *
+   * @return the alignment or {@code null} if they differ by more than
+   *         {@link #MAX_EDITS}
+   */
+  static ListDiff align(ListMatcher list, List<?> actual) {
+    Aligner aligner = new Aligner(list, SubList.randomAccess(actual));
+    try {
+      return aligner.align();
+    } finally {
+      if (aligner.path != null) {
+        TimeBudget.at(aligner.path);
+      }
+    }
+  }
+
+  private final List<?> actual;
+  private int size;
+  private int[] kinds = new int[8];
+  private int[] expectedIndices = new int[8];
+  private int[] actualIndices = new int[8];
+  private int[] lengths = new int[8];
+
+  private ListDiff(List<?> actual) {
+    this.actual = actual;
+  }
+
+  /**
+   * The actual items.
+   */
+  List<?> actual() {
+    return actual;
+  }
+
+  /**
+   * The number of runs.
+   */
+  int size() {
+    return size;
+  }
+
+  /**
+   * What the {@code i}th run is. One of {@link #SAME}, {@link #CHANGED},
+   * {@link #MISSING}, or {@link #UNEXPECTED}.
+   */
+  int kind(int i) {
+    return kinds[i];
+  }
+
+  /**
+   * The index of the first expected item in the {@code i}th run.
+   */
+  int expectedIndex(int i) {
+    return expectedIndices[i];
+  }
+
+  /**
+   * The index of the first actual item in the {@code i}th run or, for
+   * {@link #MISSING} items, where it should have been.
+   */
+  int actualIndex(int i) {
+    return actualIndices[i];
+  }
+
+  /**
+   * The number of items in the {@code i}th run. Only {@link #SAME} runs
+   * are longer than one item.
+   */
+  int length(int i) {
+    return lengths[i];
+  }
+
+  /**
+   * The key that describes the {@code i}th run.
+   */
+  String key(int i) {
+    int first = actualIndices[i];
+    return lengths[i] == 1 ? Integer.toString(first) : first + ".." + (first + lengths[i] - 1);
+  }
+
+  private void add(int kind, int expectedIndex, int actualIndex) {
+    if (kind == SAME && size > 0 && kinds[size - 1] == SAME) {
+      lengths[size - 1]++;
+      return;
+    }
+    if (size == kinds.length) {
+      kinds = Arrays.copyOf(kinds, size * 2);
+      expectedIndices = Arrays.copyOf(expectedIndices, size * 2);
+      actualIndices = Arrays.copyOf(actualIndices, size * 2);
+      lengths = Arrays.copyOf(lengths, size * 2);
+    }
+    kinds[size] = kind;
+    expectedIndices[size] = expectedIndex;
+    actualIndices[size] = actualIndex;
+    lengths[size] = 1;
+    size++;
+  }
+
+  /**
+   * Add the runs for a stretch of {@code missing} expected items starting
+   * at {@code e} replaced by {@code unexpected} actual items starting at
+   * {@code a}. We pair them up as changed items as far as we can.
+   */
+  private void addEdits(int e, int missing, int a, int unexpected) {
+    int changed = Math.min(missing, unexpected);
+    for (int i = 0; i < changed; i++) {
+      add(CHANGED, e + i, a + i);
+    }
+    for (int i = changed; i < missing; i++) {
+      add(MISSING, e + i, a + changed);
+    }
+    for (int i = changed; i < unexpected; i++) {
+      add(UNEXPECTED, e + changed, a + i);
+    }
+  }
+
+  private static final class Aligner {
+    private final ListMatcher list;
+    private final List<?> actual;
+    private final int[] actualHashes;
+    private final byte[] actualHashState;
+    /**
+     * The {@linkplain TimeBudget#position path} to the list, so leaves
+     * can remember running out of time at each item.
+     */
+    private final Object path = TimeBudget.position();
+
+    Aligner(ListMatcher list, List<?> actual) {
+      this.list = list;
+      this.actual = actual;
+      this.actualHashes = new int[actual.size()];
+      this.actualHashState = new byte[actual.size()];
+    }
+
+    /**
+     * Does the {@code a}th actual item match the {@code e}th expected
+     * item?
+     */
+    private boolean same(int e, int a) {
+      Object expected = list.expected(e);
+      Object item = actual.get(a);
+      if (false == expected instanceof Matcher) {
+        /*
+         * Plain values match with equals unless an ActualAdapter reads
+         * the actual item. So different hash codes mean they don't match.
+         */
+        if (actualHashState[a] == UNHASHED) {
+          if (Adapters.handles(item)) {
+            actualHashState[a] = UNHASHABLE;
+          } else {
+            actualHashes[a] = Objects.hashCode(item);
+            actualHashState[a] = HASHED;
+          }
+        }
+        if (actualHashState[a] == HASHED && actualHashes[a] != Objects.hashCode(expected)) {
+          return false;
+        }
+      }
+      if (path != null) {
+        TimeBudget.at(path, a);
+      }
+      return matchesValue(expected, item);
+    }
+
+    ListDiff align() {
+      int n = list.size();
+      int m = actual.size();
+      int prefix = 0;
+      while (prefix < n && prefix < m && same(prefix, prefix)) {
+        prefix++;
+      }
+      int suffix = 0;
+      while (suffix < n - prefix && suffix < m - prefix
+          && same(n - 1 - suffix, m - 1 - suffix)) {
+        suffix++;
+      }
+      int[] path = path(prefix, n - suffix, m - suffix);
+      if (path == null) {
+        return null;
+      }
+      ListDiff diff = new ListDiff(actual);
+      for (int i = 0; i < prefix; i++) {
+        diff.add(SAME, i, i);
+      }
+      /*
+       * The path is the ends of each diagonal, last first. Walk it
+       * forwards collecting the edits between diagonals and pairing them
+       * up when we reach a run of matching items.
+       */
+      int e = prefix;
+      int a = prefix;
+      int atE = prefix;
+      int atA = prefix;
+      for (int p = path.length - 2; p >= 0; p -= 2) {
+        int toE = path[p];
+        int toA = path[p + 1];
+        int diagonal = Math.min(toE - atE, toA - atA);
+        if (diagonal > 0) {
+          diff.addEdits(e, toE - diagonal - e, a, toA - diagonal - a);
+          for (int i = diagonal; i > 0; i--) {
+            diff.add(SAME, toE - i, toA - i);
+          }
+          e = toE;
+          a = toA;
+        }
+        atE = toE;
+        atA = toA;
+      }
+      diff.addEdits(e, n - suffix - e, a, m - suffix - a);
+      for (int i = 0; i < suffix; i++) {
+        diff.add(SAME, n - suffix + i, m - suffix + i);
+      }
+      return diff;
+    }
+
+    /**
+     * Find the shortest edit script between expected items
+     * {@code [from, n)} and actual items {@code [from, m)}.
+     *
+     * @return the ends of each diagonal on the path, last first, as
+     *         {@code expected, actual} pairs or {@code null} if there
+     *         are more than {@link #MAX_EDITS} edits
+     */
+    private int[] path(int from, int n, int m) {
+      int limit = Math.min(MAX_EDITS, (n - from) + (m - from));
+      int offset = limit + 1;
+      // v[offset + k] is the furthest expected index on diagonal k
+      int[] v = new int[2 * limit + 3];
+      v[offset + 1] = from;
+      List<int[]> trace = new ArrayList<>();
+      for (int d = 0; d <= limit; d++) {
+        trace.add(Arrays.copyOfRange(v, offset - d - 1, offset + d + 2));
+        for (int k = -d; k <= d; k += 2) {
+          int x;
+          if (k == -d || (k != d && v[offset + k - 1] < v[offset + k + 1])) {
+            x = v[offset + k + 1];
+          } else {
+            x = v[offset + k - 1] + 1;
+          }
+          int y = x - k;
+          while (x < n && y < m && same(x, y)) {
+            x++;
+            y++;
+          }
+          v[offset + k] = x;
+          if (x == n && y == m) {
+            return backtrack(trace, n, m);
+          }
+        }
+      }
+      return null;
+    }
+
+    private static int[] backtrack(List<int[]> trace, int n, int m) {
+      int[] path = new int[trace.size() * 2];
+      int x = n;
+      int y = m;
+      for (int d = trace.size() - 1; d >= 0; d--) {
+        int[] v = trace.get(d);
+        int k = x - y;
+        int prevK;
+        if (k == -d || (k != d && v[k - 1 + d + 1] < v[k + 1 + d + 1])) {
+          prevK = k + 1;
+        } else {
+          prevK = k - 1;
+        }
+        path[2 * (trace.size() - 1 - d)] = x;
+        path[2 * (trace.size() - 1 - d) + 1] = y;
+        if (d == 0) {
+          break;
+        }
+        x = v[prevK + d + 1];
+        y = x - prevK;
+      }
+      return path;
+    }
+  }
+}
@@ -6,50 +6,184 @@
 package io.github.nik9000.mapmatcher;
 
 import static java.util.Collections.emptyList;
-import static org.hamcrest.Matchers.nullValue;
-import static io.github.nik9000.mapmatcher.MapMatcher.describeEntry;
-import static io.github.nik9000.mapmatcher.MapMatcher.describeEntryMissing;
-import static io.github.nik9000.mapmatcher.MapMatcher.describeEntryUnexepected;
-import static io.github.nik9000.mapmatcher.MapMatcher.describeEntryValue;
-import static io.github.nik9000.mapmatcher.MapMatcher.describeMatcher;
-import static io.github.nik9000.mapmatcher.MapMatcher.matcherFor;
-import static io.github.nik9000.mapmatcher.MapMatcher.maxKeyWidthForMatcher;
-
-import java.util.ArrayList;
-import java.util.Iterator;
+import static io.github.nik9000.mapmatcher.MapMatcher.EMPTY;
+import static io.github.nik9000.mapmatcher.MapMatcher.convert;
+import static io.github.nik9000.mapmatcher.MapMatcher.matcherForConverted;
+
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Locale;
+import java.util.RandomAccess;
 
+import org.hamcrest.BaseMatcher;
 import org.hamcrest.Description;
 import org.hamcrest.Matcher;
-import org.hamcrest.TypeSafeMatcher;
 
 /**
- * Matcher for {@link List Lists} that reports all errors at once.
+ * Matcher for {@link List Lists} that reports all errors at once. It also
+ * reads NIO buffers like {@link java.nio.IntBuffer} and
+ * {@link java.nio.ByteBuffer} in place, as lists of their remaining
+ * elements.
  */
-public class ListMatcher extends TypeSafeMatcher<List<?>> {
+public final class ListMatcher extends BaseMatcher<List<?>> {
+  /**
+   * The most unexpected trailing items we describe from an NIO buffer.
+   * Buffers are often huge columns and describing them all would make a
+   * huge message. Other lists, and maps, are described in full.
+   */
+  static final int MAX_UNEXPECTED = 20;
+
+  /**
+   * Match the whole actual list.
+   */
+  static final int WHOLE = 0;
+  /**
+   * Match the start of the actual list. See {@link #asPrefix}.
+   */
+  static final int PREFIX = 1;
+  /**
+   * Match the end of the actual list. See {@link #asSuffix}.
+   */
+  static final int SUFFIX = 2;
+  /**
+   * Match anywhere in the actual list. See {@link #asSubList}.
+   */
+  static final int SUB_LIST = 3;
+
   /**
    * Create a {@linkplain ListMatcher} that matches empty lists.
    */
   public static ListMatcher matchesList() {
-    return new ListMatcher(emptyList());
+    return new ListMatcher(EMPTY, 0, null, 1, null, false, null, WHOLE, false);
   }
 
   /**
    * Create a {@linkplain ListMatcher} that matches a list.
    */
   public static ListMatcher matchesList(List<?> list) {
-    ListMatcher matcher = matchesList();
-    for (Object item : list) {
-      matcher = matcher.item(item);
-    }
-    return matcher;
+    return (ListMatcher) convert(list);
+  }
+
+  /**
+   * Build a {@linkplain ListMatcher} from items already passed through
+   * {@link MapMatcher#convert}.
+   */
+  static ListMatcher fromConverted(Object[] items) {
+    return new ListMatcher(items, items.length, null,
+        MapMatcher.literalDepth(items, items.length), null, false, null, WHOLE, false);
   }
 
-  private final List<Matcher<?>> matchers;
+  /**
+   * Expected items. Either {@link Matcher}s or, see
+   * {@link MapMatcher#convert}, plain values compared with
+   * {@link Object#equals}. Plain values are only wrapped in
+   * {@link Matcher}s when we describe them.
+   */
+  private final Object[] items;
+
+  /**
+   * The number of expected items. Only the first {@code size}
+   * {@link #items} are ours. Matchers we append to may own the rest. See
+   * {@link Tail}.
+   */
+  private final int size;
 
-  private ListMatcher(List<Matcher<?>> matchers) {
-    this.matchers = matchers;
+  /**
+   * Shared with the matchers we were appended from and that are appended
+   * to us. {@code null} if nothing has appended to us yet.
+   */
+  private final Tail tail;
+
+  /**
+   * How many levels deep this matcher is if every expected item is a
+   * plain value or a {@link MapMatcher} or {@linkplain ListMatcher} made
+   * only of plain values. {@code -1} if any aren't. See
+   * {@link #literal}.
+   */
+  private final int literalDepth;
+
+  /**
+   * Which items to check or {@code null} to check them all.
+   */
+  private final Sample sample;
+
+  /**
+   * The indices {@link #sample} checks. Built the first time we need them.
+   */
+  private volatile int[] checked;
+
+  /**
+   * Describe mismatches by aligning the lists? See {@link #aligned}.
+   */
+  private final boolean aligned;
+
+  /**
+   * The path to the key that items are joined on and the keys of the
+   * expected items or {@code null} to match items by position. See
+   * {@link #keyedBy}.
+   */
+  private final KeyedJoin.Index keyIndex;
+
+  /**
+   * Which part of the actual list to match. One of {@link #WHOLE},
+   * {@link #PREFIX}, {@link #SUFFIX}, or {@link #SUB_LIST}.
+   */
+  private final int window;
+
+  /**
+   * What we need to search for our items. Built the first time we need it.
+   */
+  private volatile SubList.Pattern subListPattern;
+
+  /**
+   * The expected items as a plain {@link List}. Built the first time we
+   * need it.
+   */
+  private volatile List<Object> literal;
+
+  /**
+   * Read the properties of beans and records? See {@link #forBeans}.
+   */
+  private final boolean beans;
+
+  private ListMatcher(Object[] items, int size, Tail tail, int literalDepth, Sample sample,
+      boolean aligned, KeyedJoin.Index keyIndex, int window, boolean beans) {
+    this.items = items;
+    this.size = size;
+    this.tail = tail;
+    this.literalDepth = literalDepth;
+    this.sample = sample;
+    this.aligned = aligned;
+    this.keyIndex = keyIndex;
+    this.window = window;
+    this.beans = beans;
+  }
+
+  /**
+   * This matcher typed so it can match any {@link Object}. Use this to
+   * match trees read by an {@link ActualAdapter} at the top level. Nested
+   * matchers match them without it.
+   */
+  @SuppressWarnings("unchecked")
+  public Matcher<Object> forObjects() {
+    return (Matcher<Object>) (Matcher<?>) this;
+  }
+
+  /**
+   * This matcher typed so it can match any {@link Object} with the
+   * {@link MapMatcher}s nested in it reading the properties of beans and
+   * records. See {@link MapMatcher#forBeans}.
+   */
+  public Matcher<Object> forBeans() {
+    return new ListMatcher(items, size, tail, literalDepth, sample, aligned, keyIndex, window,
+        true).forObjects();
+  }
+
+  /**
+   * Does this matcher read the properties of beans? See {@link #forBeans}.
+   */
+  boolean readsBeans() {
+    return beans;
   }
 
   /**
@@ -60,9 +194,12 @@ public class ListMatcher extends TypeSafeMatcher<List<?>> {
    *
    * @return a new {@link ListMatcher} that expects all items this matcher
    *         expected followed by the provided item
+   * @throws IllegalArgumentException if this matcher is
+   *         {@linkplain #keyedBy keyed} and the item doesn't have a plain
+   *         key or has the same key as another item
    */
   public ListMatcher item(Object value) {
-    return item(matcherFor(value));
+    return append(convert(value));
   }
 
   /**
@@ -70,14 +207,325 @@ public class ListMatcher extends TypeSafeMatcher<List<?>> {
    *
    * @return a new {@link ListMatcher} that expects all items this matcher
    *         expected followed by the provided item
+   * @throws IllegalArgumentException if this matcher is
+   *         {@linkplain #keyedBy keyed} and the item doesn't have a plain
+   *         key or has the same key as another item
    */
   public ListMatcher item(Matcher<?> valueMatcher) {
-    if (valueMatcher == null) {
-      valueMatcher = nullValue();
+    return append(valueMatcher);
+  }
+
+  private ListMatcher append(Object value) {
+    Tail newTail = tail;
+    Object[] newItems = items;
+    if (tail == null || false == tail.claim(size)) {
+      newTail = new Tail(size + 1);
+      newItems = Arrays.copyOf(items, Tail.grow(size));
+    } else if (size == items.length) {
+      newItems = Arrays.copyOf(items, Tail.grow(size));
+    }
+    newItems[size] = value;
+    KeyedJoin.Index newKeyIndex = keyIndex == null
+        ? null
+        : keyIndex.append(size, value, newTail == tail);
+    return new ListMatcher(newItems, size + 1, newTail,
+        MapMatcher.nestLiteral(literalDepth, value), sample, aligned, newKeyIndex, window, beans);
+  }
+
+  /**
+   * Only check a sample of the items. Lists must still be the expected
+   * size but we only read the sampled items from lists that implement
+   * {@link java.util.RandomAccess}. Failure messages describe only the
+   * sampled items and include the seed so you can check them again.
+   *
+   * @return a new {@link ListMatcher} that checks the {@code sample}
+   */
+  public ListMatcher sampled(Sample sample) {
+    return new ListMatcher(items, size, tail, literalDepth, sample, aligned, keyIndex, window,
+        beans);
+  }
+
+  /**
+   * Describe mismatches by aligning the actual items with the expected
+   * ones rather than index by index. So an item inserted at the front of
+   * a long list is reported as one unexpected item instead of every item
+   * being wrong. Runs of matching items are described as one line, keyed
+   * by their indices in the actual list. This only changes how mismatches
+   * are described, not what matches. Lists that differ by more than a
+   * thousand items or are {@link #sampled} are still described index by
+   * index.
+   *
+   * @return a new {@link ListMatcher} that describes mismatches by
+   *         aligning the lists
+   */
+  public ListMatcher aligned() {
+    return new ListMatcher(items, size, tail, literalDepth, sample, true, keyIndex, window, beans);
+  }
+
+  /**
+   * Match items by a key rather than by position, like the {@code _id}s
+   * of documents in a search response. Every expected item must be a
+   * {@link Map} or {@link MapMatcher} with a plain value at {@code path}
+   * and no two may have the same value. Each actual item is paired with
+   * the expected item with the same value at {@code path} and they must
+   * match. The order of the actual items doesn't matter. Mismatches are
+   * described by key: actual items missing a key, expected items without
+   * a matching actual item, and pairs that don't match.
+   * <p>
+   * Keys are compared with {@link Object#equals} and
+   * {@link Object#hashCode} so pairing them is O(n). Keyed lists check
+   * every item even if they are {@link #sampled}.
+   *
+   * @param path the key, or keys for nested keys, to read from each item
+   * @return a new {@link ListMatcher} that matches items by key
+   * @throws IllegalArgumentException if {@code path} is empty, an item
+   *         doesn't have a plain value at {@code path}, or two items
+   *         have the same value there
+   */
+  public ListMatcher keyedBy(Object... path) {
+    if (path.length == 0) {
+      throw new IllegalArgumentException("path must not be empty");
+    }
+    if (window != WHOLE) {
+      throw new IllegalArgumentException("can't key a list that matches part of the actual list");
+    }
+    return new ListMatcher(items, size, tail, literalDepth, sample, aligned,
+        KeyedJoin.Index.build(path.clone(), items, size), window, beans);
+  }
+
+  /**
+   * Match lists that start with the expected items, like the head of a
+   * log. Other items may follow them.
+   *
+   * @return a new {@link ListMatcher} that matches the start of lists
+   */
+  public ListMatcher asPrefix() {
+    return window(PREFIX);
+  }
+
+  /**
+   * Match lists that end with the expected items, like the tail of a
+   * log. Other items may come before them.
+   *
+   * @return a new {@link ListMatcher} that matches the end of lists
+   */
+  public ListMatcher asSuffix() {
+    return window(SUFFIX);
+  }
+
+  /**
+   * Match lists that contain the expected items, in order and next to
+   * each other, anywhere, like a window of a time series. If all of the
+   * expected items are plain values we search in time linear in the
+   * length of the actual list. If any are {@link Matcher}s searching can
+   * take time proportional to the lengths of both lists multiplied
+   * together. Mismatches are described against the position where the
+   * most expected items, counting from the first, match.
+   *
+   * @return a new {@link ListMatcher} that matches lists that contain the
+   *         expected items
+   */
+  public ListMatcher asSubList() {
+    return window(SUB_LIST);
+  }
+
+  private ListMatcher window(int window) {
+    if (keyIndex != null) {
+      throw new IllegalArgumentException("can't match part of the actual list by key");
     }
-    List<Matcher<?>> matchers = new ArrayList<>(this.matchers);
-    matchers.add(valueMatcher);
-    return new ListMatcher(matchers);
+    return new ListMatcher(items, size, tail, literalDepth, sample, aligned, keyIndex, window,
+        beans);
+  }
+
+  /**
+   * Which part of the actual list we match. One of {@link #WHOLE},
+   * {@link #PREFIX}, {@link #SUFFIX}, or {@link #SUB_LIST}.
+   */
+  int window() {
+    return window;
+  }
+
+  /**
+   * What we need to search for our items.
+   */
+  SubList.Pattern subListPattern() {
+    SubList.Pattern pattern = subListPattern;
+    if (pattern == null) {
+      pattern = new SubList.Pattern(this);
+      subListPattern = pattern;
+    }
+    return pattern;
+  }
+
+  /**
+   * Are items matched by key? See {@link #keyedBy}.
+   */
+  boolean isKeyed() {
+    return keyIndex != null;
+  }
+
+  /**
+   * The path to the key items are matched by.
+   */
+  Object[] keyPath() {
+    return keyIndex.path();
+  }
+
+  /**
+   * The keys of the expected items.
+   */
+  KeyedJoin.Index keyIndex() {
+    return keyIndex;
+  }
+
+  /**
+   * Should we describe mismatches by aligning the lists?
+   */
+  boolean isAligned() {
+    return aligned && sample == null && keyIndex == null && window == WHOLE;
+  }
+
+  /**
+   * The number of expected items.
+   */
+  int size() {
+    return size;
+  }
+
+  /**
+   * How many levels deep this matcher is if a plain {@link List} that is
+   * {@link Object#equals} to {@link #literal} always matches it.
+   *
+   * @return the depth or {@code -1} if we have to match item by item
+   */
+  int literalDepth() {
+    return sample == null && keyIndex == null && window == WHOLE ? literalDepth : -1;
+  }
+
+  /**
+   * A {@link List} view of the expected items that plain {@link List}s
+   * are {@link Object#equals} to if they match. Only valid if
+   * {@link #literalDepth} isn't {@code -1}.
+   */
+  List<Object> literal() {
+    List<Object> result = literal;
+    if (result == null) {
+      result = new Literal();
+      literal = result;
+    }
+    return result;
+  }
+
+  /**
+   * Is {@code o} {@link Object#equals} to {@link #literal}? Compare like
+   * {@link AbstractList#equals} but read {@code o} by index if it is
+   * {@link RandomAccess} so we don't need to iterate it, and don't build
+   * the view.
+   */
+  boolean equalsLiteral(Object o) {
+    if (false == o instanceof List) {
+      return false;
+    }
+    List<?> other = (List<?>) o;
+    if (other.size() != size) {
+      return false;
+    }
+    if (other instanceof RandomAccess) {
+      for (int i = 0; i < size; i++) {
+        if (false == MapMatcher.literalEquals(items[i], other.get(i))) {
+          return false;
+        }
+      }
+      return true;
+    }
+    int i = 0;
+    for (Object actual : other) {
+      if (false == MapMatcher.literalEquals(items[i++], actual)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * The number of items that we check.
+   */
+  int checkedCount() {
+    return checksAll() ? size : checked().length;
+  }
+
+  /**
+   * The index of the {@code i}th item that we check. They are in
+   * ascending order.
+   */
+  int checkedIndex(int i) {
+    return checksAll() ? i : checked()[i];
+  }
+
+  /**
+   * Do we check every item? Only lists that match every item positionally
+   * can be sampled.
+   */
+  private boolean checksAll() {
+    return sample == null || keyIndex != null || window != WHOLE;
+  }
+
+  private int[] checked() {
+    int[] indices = checked;
+    if (indices == null) {
+      indices = sample.indices(size);
+      checked = indices;
+    }
+    return indices;
+  }
+
+  /**
+   * Describe the start of this list.
+   */
+  void describeHeader(Description description) {
+    if (window == PREFIX) {
+      description.appendText("a list starting with");
+    } else if (window == SUFFIX) {
+      description.appendText("a list ending with");
+    } else if (window == SUB_LIST) {
+      description.appendText("a list containing the sub-list");
+    } else if (size == 0) {
+      description.appendText("an empty list");
+    } else if (keyIndex != null) {
+      description.appendText("a list keyed by " + keyPathString() + " containing");
+    } else if (sample == null) {
+      description.appendText("a list containing");
+    } else {
+      description.appendText("a list containing " + checkedCount() + " of " + size
+          + " items sampled with seed " + sample.seed());
+    }
+  }
+
+  private String keyPathString() {
+    StringBuilder b = new StringBuilder();
+    for (Object k : keyIndex.path()) {
+      if (b.length() > 0) {
+        b.append('.');
+      }
+      b.append(k);
+    }
+    return b.toString();
+  }
+
+  /**
+   * The {@code i}th expected item, either a {@link Matcher} or a plain
+   * value. See {@link MapMatcher#convert}.
+   */
+  Object expected(int i) {
+    return items[i];
+  }
+
+  /**
+   * The {@link Matcher} for the {@code i}th expected item, wrapping
+   * plain values as we go.
+   */
+  Matcher<?> matcher(int i) {
+    return matcherForConverted(items[i]);
   }
 
   /**
@@ -91,63 +539,113 @@ public class ListMatcher extends TypeSafeMatcher<List<?>> {
   }
 
   int keyWidth(List<?> item) {
-    int max = Integer.toString(matchers.size()).length();
-    Iterator<?> value = item.iterator();
-    Iterator<Matcher<?>> matcher = matchers.iterator();
-    while (matcher.hasNext()) {
-      max = Math.max(max,
-          maxKeyWidthForMatcher(value.hasNext() ? value.next() : null, matcher.next()));
-    }
-    return max;
+    return Walker.keyWidth(this, item);
   }
 
+  /**
+   * The width of the widest key in this matcher and its children when
+   * matched against {@code item}.
+   */
+  int keyWidthFor(Object item) {
+    return Walker.keyWidth(this, item);
+  }
+
+  /**
+   * Describe this matcher, indenting all keys to {@code keyWidth}.
+   */
   void describeTo(int keyWidth, Description description) {
-    description.appendText(matchers.isEmpty() ? "an empty list" : "a list containing");
-    int index = 0;
-    for (Matcher<?> matcher : matchers) {
-      describeMatcher(keyWidth, index++, matcher, description);
-    }
+    Walker.describeTo(this, keyWidth, description);
   }
 
+  /**
+   * {@inheritDoc}
+   *
+   * @hidden
+   */
   @Override
-  protected boolean matchesSafely(List<?> item) {
-    if (item.size() != matchers.size()) {
-      return false;
+  public boolean matches(Object actual) {
+    return Walker.matches(this, actual);
+  }
+
+  /**
+   * {@code item} as a {@link List} or {@code null} if this can't match it.
+   * NIO buffers and the values {@link ActualAdapter}s read become views.
+   */
+  static List<?> asList(Object item) {
+    if (item instanceof List) {
+      return (List<?>) item;
     }
-    Iterator<?> value = item.iterator();
-    Iterator<Matcher<?>> matcher = matchers.iterator();
-    while (matcher.hasNext()) {
-      if (false == matcher.next().matches(value.next())) {
-        return false;
-      }
+    List<?> buffer = Buffers.asList(item);
+    if (buffer != null) {
+      return buffer;
     }
-    return true;
+    return Adapters.asList(item);
   }
 
+  /**
+   * {@inheritDoc}
+   *
+   * @hidden
+   */
   @Override
-  protected void describeMismatchSafely(List<?> item, Description description) {
-    describePotentialMismatch(keyWidth(item), item, description);
+  public void describeMismatch(Object item, Description description) {
+    List<?> list = asList(item);
+    if (list != null) {
+      describePotentialMismatch(keyWidth(list), list, description);
+      return;
+    }
+    item = Adapters.toJava(item);
+    if (item == null) {
+      super.describeMismatch(item, description);
+      return;
+    }
+    // Same as TypeSafeMatcher
+    description.appendText("was a ")
+        .appendText(item.getClass().getName())
+        .appendText(" (")
+        .appendValue(item)
+        .appendText(")");
+  }
+
+  /**
+   * Describe how {@code item} matches this matcher.
+   *
+   * @return {@code false} without describing anything if {@code item}
+   *         isn't a list
+   */
+  boolean describePotentialMismatchOf(int keyWidth, Object item, Description description) {
+    List<?> list = asList(item);
+    if (list == null) {
+      return false;
+    }
+    describePotentialMismatch(keyWidth, list, description);
+    return true;
   }
 
   void describePotentialMismatch(int keyWidth, List<?> item, Description description) {
-    description.appendText(matchers.isEmpty() ? "an empty list" : "a list containing");
-    int maxKeyWidth = Integer.toString(Math.max(item.size(), matchers.size())).length();
-    String keyFormat = "%" + maxKeyWidth + "s";
-
-    Iterator<?> value = item.iterator();
-    Iterator<Matcher<?>> matcher = matchers.iterator();
-    int index = 0;
-    while (matcher.hasNext()) {
-      describeEntry(keyWidth, String.format(Locale.ROOT, keyFormat, index++), description);
-      if (false == value.hasNext()) {
-        describeEntryMissing(matcher.next(), description);
-        continue;
-      }
-      describeEntryValue(keyWidth, matcher.next(), value.next(), description);
+    Walker.describeMismatch(this, keyWidth, item, description);
+  }
+
+  /**
+   * The expected items as a {@link List}. See {@link #literal}.
+   */
+  private final class Literal extends AbstractList<Object> implements RandomAccess {
+    @Override
+    public boolean equals(Object o) {
+      return equalsLiteral(o);
     }
-    while (value.hasNext()) {
-      describeEntry(keyWidth, String.format(Locale.ROOT, keyFormat, index++), description);
-      describeEntryUnexepected(value.next(), description);
+
+    @Override
+    public int size() {
+      return size;
+    }
+
+    @Override
+    public Object get(int index) {
+      if (index < 0 || index >= size) {
+        throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+      }
+      return MapMatcher.literalValue(items[index]);
     }
   }
 }
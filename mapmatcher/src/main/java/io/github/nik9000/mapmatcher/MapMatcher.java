@@ -5,35 +5,58 @@
 
 package io.github.nik9000.mapmatcher;
 
-import static java.util.Collections.emptyList;
 import static java.util.Collections.emptyMap;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.nullValue;
 
+import java.lang.invoke.MethodHandle;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
 import java.util.TreeMap;
-import java.util.stream.Stream;
 
+import org.hamcrest.BaseMatcher;
 import org.hamcrest.Description;
 import org.hamcrest.Matcher;
 import org.hamcrest.MatcherAssert;
 import org.hamcrest.StringDescription;
-import org.hamcrest.TypeSafeMatcher;
 
 /**
  * Matcher for {@link Map Maps} that reports all errors at once.
+ * <p>
+ * Matchers built with {@link #forBeans} also match beans and records by
+ * reading their properties as though they were entries. Property
+ * {@code foo} comes from a public no-argument method named {@code foo},
+ * {@code getFoo}, or {@code isFoo} declared on a public type. Unless the
+ * matcher is {@link #extraOk}, every property is an entry, so a property
+ * it doesn't expect is an unexpected entry and the bean doesn't match.
+ * A property we aren't allowed to read, like a component of a record
+ * that isn't public, doesn't match either. Without {@link #forBeans}
+ * beans and records don't match.
  */
-public class MapMatcher extends TypeSafeMatcher<Map<?, ?>> {
-  private static final int INDENT = 2;
+public final class MapMatcher extends BaseMatcher<Map<?, ?>> {
+  static final Object[] EMPTY = new Object[0];
+
+  /**
+   * Maps with at most this many keys find keys by scanning {@link #keys}
+   * rather than building {@link KeyTail#index}.
+   */
+  private static final int LINEAR_SCAN_MAX = 8;
 
   /**
    * Create a {@linkplain MapMatcher} that matches empty {@link Map}s.
    */
   public static MapMatcher matchesMap() {
-    return new MapMatcher(emptyMap(), false);
+    return new MapMatcher(EMPTY, EMPTY, 0, null, 1, false, false, false);
   }
 
   /**
@@ -46,11 +69,17 @@ public class MapMatcher extends TypeSafeMatcher<Map<?, ?>> {
    * like by calling {@link #entry entry}.
    */
   public static MapMatcher matchesMap(Map<?, ?> map) {
-    MapMatcher matcher = matchesMap();
-    for (Map.Entry<?, ?> e : map.entrySet()) {
-      matcher = matcher.entry(e.getKey(), e.getValue());
-    }
-    return matcher;
+    return (MapMatcher) convert(map);
+  }
+
+  /**
+   * Build a {@linkplain MapMatcher} from keys and values already passed
+   * through {@link #convert}.
+   */
+  static MapMatcher fromConverted(Object[] keys, Object[] values) {
+    KeyTail tail = keys.length > LINEAR_SCAN_MAX ? new KeyTail(keys.length) : null;
+    return new MapMatcher(keys, values, keys.length, tail, literalDepth(values, keys.length),
+        false, false, false);
   }
 
   /**
@@ -66,26 +95,113 @@ public class MapMatcher extends TypeSafeMatcher<Map<?, ?>> {
    * Assert match. Shorter output on failure than
    * {@link MatcherAssert#assertThat(Object, Matcher)} that looks better for
    * {@link MapMatcher} and {@link ListMatcher}.
+   *
+   * @throws MismatchError if {@code actual} doesn't match. It describes
+   *         the mismatch the first time you ask for its message.
    */
   public static <T> void assertMap(String reason, T actual, Matcher<? super T> matcher) {
     if (matcher.matches(actual)) {
       return;
     }
+    MatchStats stats = MatchStats.current();
+    if (stats != null) {
+      stats.failure();
+    }
+    throw new MismatchError(reason, actual, matcher, TimeBudget.handOff());
+  }
 
+  /**
+   * Compare two documents, like two responses from a service before and
+   * after an upgrade, without building a matcher for the first. We walk
+   * both of them together and skip any part of them that is the same
+   * reference on both sides. {@code actual} matches if
+   * {@code matchesMap(expected)} or {@code matchesList(expected)} would
+   * match it.
+   *
+   * @return {@code null} if {@code actual} matches {@code expected} or a
+   *         description of the differences in the same format as
+   *         {@link #assertMap}
+   */
+  public static String diff(Object expected, Object actual) {
+    if (Walker.matchesUnconverted(expected, actual)) {
+      return null;
+    }
     Description description = new StringDescription();
-    description.appendText(reason).appendText("Expected ");
-    matcher.describeMismatch(actual, description);
-
-    throw new AssertionError(description.toString());
+    matcherFor(expected).describeMismatch(actual, description);
+    return description.toString();
   }
 
-  private final Map<Object, Matcher<?>> matchers;
+  /**
+   * Expected keys in the order they were added. Only the first
+   * {@link #size} are ours. Matchers we append to may own the rest. See
+   * {@link Tail}.
+   */
+  private final Object[] keys;
+
+  /**
+   * Expected value for each key in {@link #keys}. Either a {@link Matcher}
+   * or, see {@link #convert}, a plain value compared with
+   * {@link Object#equals}. Plain values are only wrapped in
+   * {@link Matcher}s when we describe them.
+   */
+  private final Object[] values;
+
+  /**
+   * The number of expected entries.
+   */
+  private final int size;
+
+  /**
+   * Shared with the matchers we were appended from and that are appended
+   * to us. {@code null} if we have at most {@link #LINEAR_SCAN_MAX} keys
+   * and nothing has appended to us yet.
+   */
+  private final KeyTail tail;
+
+  /**
+   * How many levels deep this matcher is if every expected value is a
+   * plain value or a {@linkplain MapMatcher} or {@link ListMatcher} made
+   * only of plain values. {@code -1} if any aren't. See
+   * {@link #literal}.
+   */
+  private final int literalDepth;
 
   private final boolean extraOk;
 
-  private MapMatcher(Map<Object, Matcher<?>> matchers, boolean extraOk) {
-    this.matchers = matchers;
+  private final boolean adaptive;
+
+  /**
+   * Read the properties of beans and records? See {@link #forBeans}.
+   */
+  private final boolean beans;
+
+  /**
+   * Accessors for the last bean class we matched.
+   */
+  private volatile BeanAccessors beanAccessors;
+
+  /**
+   * The order to check entries in if we're {@link #adaptive}. Built the
+   * first time we match.
+   */
+  private volatile EntryOrder entryOrder;
+
+  /**
+   * The expected entries as a plain {@link Map}. Built the first time we
+   * need it.
+   */
+  private volatile Map<Object, Object> literal;
+
+  private MapMatcher(Object[] keys, Object[] values, int size, KeyTail tail,
+      int literalDepth, boolean extraOk, boolean adaptive, boolean beans) {
+    this.keys = keys;
+    this.values = values;
+    this.size = size;
+    this.tail = tail;
+    this.literalDepth = literalDepth;
     this.extraOk = extraOk;
+    this.adaptive = adaptive;
+    this.beans = beans;
   }
 
   /**
@@ -94,7 +210,44 @@ public class MapMatcher extends TypeSafeMatcher<Map<?, ?>> {
    * @return a new {@link MapMatcher} that will not fail if it encounters extra entries
    */
   public MapMatcher extraOk() {
-    return new MapMatcher(matchers, true);
+    return new MapMatcher(keys, values, size, tail, literalDepth, true, adaptive, beans);
+  }
+
+  /**
+   * Learn which entries fail most often for the least work and check
+   * them first. Use this for matchers that live a long time and match
+   * many values, like in a service that validates a stream of documents.
+   * Entries are still described in the order they were added. Only this
+   * map's entries are reordered. Call this on nested matchers to reorder
+   * their entries too.
+   *
+   * @return a new {@link MapMatcher} that reorders its entries
+   */
+  public MapMatcher adaptive() {
+    return new MapMatcher(keys, values, size, tail, literalDepth, extraOk, true, beans);
+  }
+
+  /**
+   * This matcher typed so it can match any {@link Object}. Use this to
+   * match trees read by an {@link ActualAdapter} at the top level.
+   * Nested matchers match them without it.
+   */
+  @SuppressWarnings("unchecked")
+  public Matcher<Object> forObjects() {
+    return (Matcher<Object>) (Matcher<?>) this;
+  }
+
+  /**
+   * This matcher typed so it can match any {@link Object}, reading the
+   * properties of beans and records as though they were entries. See the
+   * {@linkplain MapMatcher class documentation} for how we find them. The
+   * {@linkplain MapMatcher}s and {@link ListMatcher}s nested in this one
+   * read them too. Unless this matcher is {@link #extraOk} every property
+   * of the bean must be expected.
+   */
+  public Matcher<Object> forBeans() {
+    return new MapMatcher(keys, values, size, tail, literalDepth, extraOk, adaptive, true)
+        .forObjects();
   }
 
   /**
@@ -106,7 +259,7 @@ public class MapMatcher extends TypeSafeMatcher<Map<?, ?>> {
    * @return a new {@link MapMatcher} that expects another entry
    */
   public MapMatcher entry(Object key, Object value) {
-    return entry(key, matcherFor(value));
+    return append(key, convert(value));
   }
 
   /**
@@ -115,15 +268,239 @@ public class MapMatcher extends TypeSafeMatcher<Map<?, ?>> {
    * @return a new {@link MapMatcher} that expects another entry
    */
   public MapMatcher entry(Object key, Matcher<?> valueMatcher) {
-    if (valueMatcher == null) {
-      valueMatcher = nullValue();
+    return append(key, valueMatcher);
+  }
+
+  private MapMatcher append(Object key, Object value) {
+    int old = indexOf(key);
+    if (old >= 0) {
+      throw new IllegalArgumentException(
+          "Already had an entry for [" + key + "]: " + matcher(old));
+    }
+    KeyTail newTail = tail;
+    Object[] newKeys = keys;
+    Object[] newValues = values;
+    if (tail == null || false == tail.claim(size)) {
+      newTail = new KeyTail(size + 1);
+      newKeys = Arrays.copyOf(keys, Tail.grow(size));
+      newValues = Arrays.copyOf(values, newKeys.length);
+    } else if (size == keys.length) {
+      newKeys = Arrays.copyOf(keys, Tail.grow(size));
+      newValues = Arrays.copyOf(values, newKeys.length);
+    }
+    newKeys[size] = key;
+    newValues[size] = value;
+    return new MapMatcher(newKeys, newValues, size + 1, newTail,
+        nestLiteral(literalDepth, value), extraOk, adaptive, beans);
+  }
+
+  /**
+   * Does this matcher ignore extra entries?
+   */
+  boolean isExtraOk() {
+    return extraOk;
+  }
+
+  /**
+   * Does this matcher read the properties of beans? See {@link #forBeans}.
+   */
+  boolean readsBeans() {
+    return beans;
+  }
+
+  /**
+   * The order to check entries in or {@code null} if we check them in the
+   * order they were added.
+   */
+  EntryOrder entryOrder() {
+    if (false == adaptive) {
+      return null;
     }
-    Map<Object, Matcher<?>> matchers = new LinkedHashMap<>(this.matchers);
-    Matcher<?> old = matchers.put(key, valueMatcher);
-    if (old != null) {
-      throw new IllegalArgumentException("Already had an entry for [" + key + "]: " + old);
+    EntryOrder order = entryOrder;
+    if (order == null) {
+      synchronized (this) {
+        order = entryOrder;
+        if (order == null) {
+          order = new EntryOrder(size);
+          entryOrder = order;
+        }
+      }
+    }
+    return order;
+  }
+
+  /**
+   * The number of expected entries.
+   */
+  int size() {
+    return size;
+  }
+
+  /**
+   * The key of the {@code i}th expected entry.
+   */
+  Object key(int i) {
+    return keys[i];
+  }
+
+  /**
+   * The {@code i}th expected value, either a {@link Matcher} or a plain
+   * value. See {@link #convert}.
+   */
+  Object expected(int i) {
+    return values[i];
+  }
+
+  /**
+   * The {@link Matcher} for the {@code i}th expected entry, wrapping
+   * plain values as we go.
+   */
+  Matcher<?> matcher(int i) {
+    return matcherForConverted(values[i]);
+  }
+
+  /**
+   * How many levels deep this matcher is if a plain {@link Map} that is
+   * {@link Object#equals} to {@link #literal} always matches it.
+   *
+   * @return the depth or {@code -1} if we have to match entry by entry
+   */
+  int literalDepth() {
+    return extraOk ? -1 : literalDepth;
+  }
+
+  /**
+   * A {@link Map} view of the expected entries that plain {@link Map}s
+   * are {@link Object#equals} to if they match. Only valid if
+   * {@link #literalDepth} isn't {@code -1}.
+   */
+  Map<Object, Object> literal() {
+    Map<Object, Object> result = literal;
+    if (result == null) {
+      result = new Literal();
+      literal = result;
     }
-    return new MapMatcher(matchers, extraOk);
+    return result;
+  }
+
+  /**
+   * Is {@code o} {@link Object#equals} to {@link #literal}? Compare like
+   * {@link AbstractMap#equals} but look up each of our keys in {@code o}
+   * so we don't need to iterate it, and don't build the view.
+   */
+  boolean equalsLiteral(Object o) {
+    if (false == o instanceof Map) {
+      return false;
+    }
+    Map<?, ?> other = (Map<?, ?>) o;
+    if (other.size() != size) {
+      return false;
+    }
+    for (int i = 0; i < size; i++) {
+      Object actual = other.get(keys[i]);
+      if (actual == null && false == other.containsKey(keys[i])) {
+        return false;
+      }
+      if (false == literalEquals(values[i], actual)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * The depth of {@code values}, the output of {@link #convert}, if they
+   * are all plain. See {@link #literalDepth}.
+   */
+  static int literalDepth(Object[] values, int size) {
+    int depth = 1;
+    for (int i = 0; i < size; i++) {
+      depth = nestLiteral(depth, values[i]);
+    }
+    return depth;
+  }
+
+  /**
+   * The depth of a matcher at {@code depth} once we add {@code value},
+   * the output of {@link #convert}, to it. See {@link #literalDepth}.
+   */
+  static int nestLiteral(int depth, Object value) {
+    if (depth < 0) {
+      return -1;
+    }
+    int child;
+    if (value instanceof MapMatcher) {
+      child = ((MapMatcher) value).literalDepth();
+    } else if (value instanceof ListMatcher) {
+      child = ((ListMatcher) value).literalDepth();
+    } else if (value instanceof Matcher) {
+      return -1;
+    } else {
+      return depth;
+    }
+    return child < 0 ? -1 : Math.max(depth, child + 1);
+  }
+
+  /**
+   * Is {@code actual} equal to {@code expected}, a value of a matcher
+   * whose {@link #literalDepth} isn't {@code -1}? Plain values are
+   * compared like {@link #matchesValue} compares them.
+   */
+  static boolean literalEquals(Object expected, Object actual) {
+    if (expected instanceof MapMatcher) {
+      return ((MapMatcher) expected).equalsLiteral(actual);
+    }
+    if (expected instanceof ListMatcher) {
+      return ((ListMatcher) expected).equalsLiteral(actual);
+    }
+    return Objects.equals(actual, expected);
+  }
+
+  /**
+   * {@code value}, the output of {@link #convert}, as a plain value. Only
+   * valid for the values of matchers whose {@link #literalDepth} isn't
+   * {@code -1}.
+   */
+  static Object literalValue(Object value) {
+    if (value instanceof MapMatcher) {
+      return ((MapMatcher) value).literal();
+    }
+    if (value instanceof ListMatcher) {
+      return ((ListMatcher) value).literal();
+    }
+    return value;
+  }
+
+  /**
+   * The position of {@code key} in the expected entries or {@code -1}
+   * if it isn't expected.
+   */
+  int indexOf(Object key) {
+    if (size <= LINEAR_SCAN_MAX) {
+      for (int i = 0; i < size; i++) {
+        if (Objects.equals(keys[i], key)) {
+          return i;
+        }
+      }
+      return -1;
+    }
+    int[] table = tail.index(keys, size);
+    int mask = table.length - 1;
+    for (int slot = hash(key) & mask;; slot = (slot + 1) & mask) {
+      int position = table[slot];
+      if (position == 0) {
+        return -1;
+      }
+      if (Objects.equals(keys[position - 1], key)) {
+        // Keys are unique across the chain so later ones aren't ours
+        return position <= size ? position - 1 : -1;
+      }
+    }
+  }
+
+  private static int hash(Object key) {
+    int h = Objects.hashCode(key);
+    return h ^ (h >>> 16);
   }
 
   /**
@@ -137,105 +514,276 @@ public class MapMatcher extends TypeSafeMatcher<Map<?, ?>> {
   }
 
   int keyWidth(Map<?, ?> item) {
-    int max = 0;
-    for (Object k : item.keySet()) {
-      max = Math.max(max, k.toString().length());
+    return Walker.keyWidth(this, item);
+  }
+
+  /**
+   * The width of the widest key in this matcher and its children when
+   * matched against {@code item}.
+   */
+  int keyWidthFor(Object item) {
+    return Walker.keyWidth(this, item);
+  }
+
+  /**
+   * Describe this matcher, indenting all keys to {@code keyWidth}.
+   */
+  void describeTo(int keyWidth, Description description) {
+    Walker.describeTo(this, keyWidth, description);
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @hidden
+   */
+  @Override
+  public boolean matches(Object actual) {
+    return Walker.matches(this, actual);
+  }
+
+  /**
+   * Match an actual value against the output of {@link #convert}.
+   */
+  static boolean matchesValue(Object expected, Object actual) {
+    if (expected instanceof Matcher) {
+      if (Nodes.isNode(expected)) {
+        return ((Matcher<?>) expected).matches(actual);
+      }
+      return TimeBudget.matches((Matcher<?>) expected, actual);
     }
-    for (Map.Entry<Object, Matcher<?>> e : matchers.entrySet()) {
-      max = Math.max(max, e.getKey().toString().length());
-      max = Math.max(max, maxKeyWidthForMatcher(item.get(e.getKey()), e.getValue()));
+    // Compare actual to expected like equalTo does
+    return Objects.equals(actual, expected) || Adapters.leafEquals(expected, actual);
+  }
+
+  /**
+   * Accessors for each expected key on beans of {@code type}, {@code null}
+   * for keys that {@code type} doesn't have.
+   */
+  MethodHandle[] beanAccessors(Class<?> type) {
+    return beanAccessorsFor(type).accessors;
+  }
+
+  /**
+   * The properties of beans of {@code type} that we don't expect.
+   */
+  String[] unexpectedProperties(Class<?> type) {
+    return beanAccessorsFor(type).unexpected;
+  }
+
+  private BeanAccessors beanAccessorsFor(Class<?> type) {
+    BeanAccessors cached = beanAccessors;
+    if (cached != null && cached.type == type) {
+      return cached;
+    }
+    MethodHandle[] accessors = new MethodHandle[size];
+    for (int i = 0; i < size; i++) {
+      accessors[i] = Beans.accessor(type, keys[i]);
+    }
+    List<String> unexpected = new ArrayList<>();
+    for (String property : Beans.properties(type)) {
+      if (indexOf(property) < 0) {
+        unexpected.add(property);
+      }
     }
-    return max;
+    cached = new BeanAccessors(type, accessors, unexpected.toArray(new String[0]));
+    beanAccessors = cached;
+    return cached;
   }
 
-  static int maxKeyWidthForMatcher(Object item, Matcher<?> matcher) {
-    if (matcher instanceof MapMatcher) {
-      Map<?, ?> longestSubMap = item instanceof Map ? (Map<?, ?>) item : emptyMap();
-      return ((MapMatcher) matcher).keyWidth(longestSubMap) - INDENT;
+  /**
+   * A {@link Tail} that also shares an open addressing hash table of
+   * positions in the chain's keys plus one. It covers the first
+   * {@link #indexed} keys and we add keys to it as matchers with more
+   * than {@link #LINEAR_SCAN_MAX} keys look them up.
+   */
+  private static final class KeyTail extends Tail {
+    private volatile int[] table;
+    private volatile int indexed;
+
+    KeyTail(int size) {
+      super(size);
     }
-    if (matcher instanceof ListMatcher) {
-      List<?> longestSubList = item instanceof List ? (List<?>) item : emptyList();
-      return ((ListMatcher) matcher).keyWidth(longestSubList) - INDENT;
+
+    /**
+     * The table, covering at least the first {@code size} keys.
+     */
+    int[] index(Object[] keys, int size) {
+      if (indexed >= size) {
+        return table;
+      }
+      synchronized (this) {
+        int[] t = table;
+        int from = indexed;
+        if (from >= size) {
+          return t;
+        }
+        if (t == null || size * 2 > t.length) {
+          t = new int[Integer.highestOneBit(size) << 2];
+          from = 0;
+        }
+        int mask = t.length - 1;
+        for (int i = from; i < size; i++) {
+          int slot = hash(keys[i]) & mask;
+          while (t[slot] != 0) {
+            slot = (slot + 1) & mask;
+          }
+          t[slot] = i + 1;
+        }
+        table = t;
+        indexed = size;
+        return t;
+      }
     }
-    return 0;
   }
 
-  void describeTo(int keyWidth, Description description) {
-    description.appendText(matchers.isEmpty() ? "an empty map" : "a map containing");
-    for (Map.Entry<?, Matcher<?>> e : matchers.entrySet()) {
-      describeMatcher(keyWidth, e.getKey(), e.getValue(), description);
+  private static final class BeanAccessors {
+    private final Class<?> type;
+    private final MethodHandle[] accessors;
+    private final String[] unexpected;
+
+    BeanAccessors(Class<?> type, MethodHandle[] accessors, String[] unexpected) {
+      this.type = type;
+      this.accessors = accessors;
+      this.unexpected = unexpected;
     }
   }
 
-  static void describeMatcher(int keyWidth, Object key, Matcher<?> matcher,
-      Description description) {
-    String keyFormat = "\n%" + keyWidth + "s";
-    description.appendText(String.format(Locale.ROOT, keyFormat, key)).appendText(": ");
-    if (matcher instanceof MapMatcher) {
-      ((MapMatcher) matcher).describeTo(keyWidth + INDENT, description);
-      return;
+  /**
+   * The expected entries as a {@link Map}. See {@link #literal}.
+   */
+  private final class Literal extends AbstractMap<Object, Object> {
+    @Override
+    public boolean equals(Object o) {
+      return equalsLiteral(o);
     }
-    if (matcher instanceof ListMatcher) {
-      ((ListMatcher) matcher).describeTo(keyWidth + INDENT, description);
-      return;
+
+    @Override
+    public int size() {
+      return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+      return indexOf(key) >= 0;
+    }
+
+    @Override
+    public Object get(Object key) {
+      int i = indexOf(key);
+      // AbstractMap has a field named values too
+      return i < 0 ? null : literalValue(MapMatcher.this.values[i]);
+    }
+
+    @Override
+    public Set<Map.Entry<Object, Object>> entrySet() {
+      return new AbstractSet<Map.Entry<Object, Object>>() {
+        @Override
+        public int size() {
+          return size;
+        }
+
+        @Override
+        public Iterator<Map.Entry<Object, Object>> iterator() {
+          return new Iterator<Map.Entry<Object, Object>>() {
+            private int i;
+
+            @Override
+            public boolean hasNext() {
+              return i < size;
+            }
+
+            @Override
+            public Map.Entry<Object, Object> next() {
+              if (i >= size) {
+                throw new NoSuchElementException();
+              }
+              Map.Entry<Object, Object> e =
+                  new SimpleImmutableEntry<>(keys[i], literalValue(MapMatcher.this.values[i]));
+              i++;
+              return e;
+            }
+          };
+        }
+      };
     }
-    description.appendDescriptionOf(matcher);
   }
 
-  @Override
-  protected boolean matchesSafely(Map<?, ?> item) {
-    if (extraOk) {
-      if (false == item.keySet().containsAll(matchers.keySet())) {
-        return false;
-      }
-    } else {
-      if (false == item.keySet().equals(matchers.keySet())) {
-        return false;
-      }
+  /**
+   * {@code item} as a {@link Map} or {@code null} if this can't match it.
+   * {@link ActualAdapter}s provide a view of the values they read. If
+   * {@code beans} is set beans become a {@link Map} of the properties we
+   * expect plus, unless we're {@link #extraOk}, the ones we don't.
+   */
+  Map<?, ?> asMap(Object item, boolean beans) {
+    if (item instanceof Map) {
+      return (Map<?, ?>) item;
     }
-    for (Map.Entry<Object, Matcher<?>> e : matchers.entrySet()) {
-      if (false == item.containsKey(e.getKey())) {
-        return false;
+    Map<?, ?> adapted = Adapters.asMap(item);
+    if (adapted != null) {
+      return adapted;
+    }
+    if (false == (beans && Beans.isBean(item))) {
+      return null;
+    }
+    Class<?> type = item.getClass();
+    MethodHandle[] accessors = beanAccessors(type);
+    Map<Object, Object> properties = new LinkedHashMap<>();
+    for (int i = 0; i < size; i++) {
+      if (accessors[i] != null) {
+        properties.put(keys[i], Beans.read(accessors[i], item));
       }
-      Object v = item.get(e.getKey());
-      if (false == e.getValue().matches(v)) {
-        return false;
+    }
+    if (false == extraOk) {
+      for (String property : unexpectedProperties(type)) {
+        properties.put(property, Beans.read(Beans.accessor(type, property), item));
       }
     }
-    return true;
+    return properties;
   }
 
+  /**
+   * {@inheritDoc}
+   *
+   * @hidden
+   */
   @Override
-  protected void describeMismatchSafely(Map<?, ?> item, Description description) {
-    describePotentialMismatch(keyWidth(item), item, description);
+  public void describeMismatch(Object item, Description description) {
+    Map<?, ?> map = asMap(item, beans);
+    if (map != null) {
+      describePotentialMismatch(keyWidth(map), map, description);
+      return;
+    }
+    item = Adapters.toJava(item);
+    if (item == null) {
+      super.describeMismatch(item, description);
+      return;
+    }
+    // Same as TypeSafeMatcher
+    description.appendText("was a ")
+        .appendText(item.getClass().getName())
+        .appendText(" (")
+        .appendValue(item)
+        .appendText(")");
   }
 
-  void describePotentialMismatch(int keyWidth, Map<?, ?> item, Description description) {
-    description.appendText(matchers.isEmpty() ? "an empty map" : "a map containing");
-    int maxKeyWidth = Stream.concat(matchers.keySet().stream(), item.keySet().stream())
-        .mapToInt(k -> k.toString().length())
-        .max()
-        .orElse(keyWidth);
-    String keyFormat = "%" + maxKeyWidth + "s";
-
-    for (Map.Entry<Object, Matcher<?>> e : matchers.entrySet()) {
-      describeEntry(keyWidth, String.format(Locale.ROOT, keyFormat, e.getKey()), description);
-      if (false == item.containsKey(e.getKey())) {
-        describeEntryMissing(e.getValue(), description);
-        continue;
-      }
-      describeEntryValue(keyWidth, e.getValue(), item.get(e.getKey()), description);
-    }
-    for (Map.Entry<?, ?> e : item.entrySet()) {
-      if (false == matchers.containsKey(e.getKey())) {
-        describeEntry(keyWidth, String.format(Locale.ROOT, keyFormat, e.getKey()), description);
-        if (extraOk) {
-          describeEntryUnexepectedButOk(e.getValue(), description);
-        } else {
-          describeEntryUnexepected(e.getValue(), description);
-        }
-      }
+  /**
+   * Describe how {@code item} matches this matcher.
+   *
+   * @return {@code false} without describing anything if {@code item}
+   *         isn't a map
+   */
+  boolean describePotentialMismatchOf(int keyWidth, Object item, Description description) {
+    Map<?, ?> map = asMap(item, beans);
+    if (map == null) {
+      return false;
     }
+    describePotentialMismatch(keyWidth, map, description);
+    return true;
+  }
+
+  void describePotentialMismatch(int keyWidth, Map<?, ?> item, Description description) {
+    Walker.describeMismatch(this, keyWidth, item, description);
   }
 
   /**
@@ -243,19 +791,32 @@ public class MapMatcher extends TypeSafeMatcher<Map<?, ?>> {
    * for the public API methods that take {@linkplain Object}.
    */
   static Matcher<?> matcherFor(Object value) {
-    if (value == null) {
+    return matcherForConverted(convert(value));
+  }
+
+  /**
+   * Converts an expected value into the form we store in
+   * {@linkplain MapMatcher} and {@link ListMatcher}. {@link Map}s and
+   * {@link List}s become {@link MapMatcher}s and {@link ListMatcher}s,
+   * {@link Matcher}s, {@link Leaf}s, and arrays become {@link Matcher}s,
+   * and everything else stays a plain value that we compare with
+   * {@link Object#equals}.
+   */
+  static Object convert(Object value) {
+    return Walker.convert(value);
+  }
+
+  /**
+   * Builds a {@link Matcher} from the result of {@link #convert}.
+   */
+  static Matcher<?> matcherForConverted(Object converted) {
+    if (converted == null) {
       return nullValue();
     }
-    if (value instanceof List) {
-      return ListMatcher.matchesList((List<?>) value);
-    }
-    if (value instanceof Map) {
-      return matchesMap((Map<?, ?>) value);
+    if (converted instanceof Matcher) {
+      return (Matcher<?>) converted;
     }
-    if (value instanceof Matcher) {
-      return (Matcher<?>) value;
-    }
-    return equalTo(value);
+    return equalTo(converted);
   }
 
   static void describeEntry(int keyWidth, Object key, Description description) {
@@ -263,49 +824,13 @@ public class MapMatcher extends TypeSafeMatcher<Map<?, ?>> {
     description.appendText(String.format(Locale.ROOT, keyFormat, key)).appendText(": ");
   }
 
-  static void describeEntryMissing(Matcher<?> matcher, Description description) {
-    description.appendText("expected ");
-    /*
-     * Use a short description for multi-line matchers so the "but was <missing>"
-     * bit of the erro is more prominent. It's the more important part.
-     */
-    if (matcher instanceof MapMatcher) {
-      description.appendText("a map");
-    } else if (matcher instanceof ListMatcher) {
-      description.appendText("a list");
-    } else {
-      description.appendDescriptionOf(matcher);
-    }
-    description.appendText(" but was <missing>");
-  }
-
   static void describeEntryUnexepected(Object value, Description description) {
     description.appendText("<unexpected> but was ");
-    description.appendValue(value);
+    description.appendValue(Adapters.toJava(value));
   }
 
   static void describeEntryUnexepectedButOk(Object value, Description description) {
-    description.appendValue(value);
+    description.appendValue(Adapters.toJava(value));
     description.appendText(" unexpected but ok");
   }
-
-  static void describeEntryValue(int keyWidth, Matcher<?> matcher, Object v,
-      Description description) {
-    if (v instanceof Map && matcher instanceof MapMatcher) {
-      ((MapMatcher) matcher)
-          .describePotentialMismatch(keyWidth + INDENT, (Map<?, ?>) v, description);
-      return;
-    }
-    if (v instanceof List && matcher instanceof ListMatcher) {
-      ((ListMatcher) matcher)
-          .describePotentialMismatch(keyWidth + INDENT, (List<?>) v, description);
-      return;
-    }
-    if (false == matcher.matches(v)) {
-      description.appendText("expected ").appendDescriptionOf(matcher).appendText(" but ");
-      matcher.describeMismatch(v, description);
-      return;
-    }
-    description.appendValue(v);
-  }
 }
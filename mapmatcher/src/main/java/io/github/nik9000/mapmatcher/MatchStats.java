@@ -0,0 +1,226 @@
+/*
+ * Copyright 2021 Nikolas Everett
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.github.nik9000.mapmatcher;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * What {@link MapMatcher}s and {@link ListMatcher}s cost one thread
+ * between {@link #start} and {@link #stop}. Tools like test framework
+ * extensions use this to find tests where matching is slow. While no
+ * thread is recording the matchers check one {@code volatile} field and
+ * move on.
+ * <p>
+ * Time spent matching is counted separately from time spent rendering
+ * descriptions and failure messages. Matchers nested in other matchers
+ * count towards the outermost one so nothing is counted twice. Work
+ * handed to other threads, like {@linkplain ParallelRendering rendering
+ * in parallel}, counts towards the thread that handed it off.
+ */
+public final class MatchStats {
+  /**
+   * The number of threads recording. We only check {@link #CURRENT}
+   * if this isn't {@code 0}.
+   */
+  private static final AtomicInteger RECORDING = new AtomicInteger();
+
+  private static final ThreadLocal<MatchStats> CURRENT = new ThreadLocal<>();
+
+  /**
+   * Start recording on this thread, throwing away anything recorded on
+   * it already.
+   */
+  public static void start() {
+    if (CURRENT.get() == null) {
+      RECORDING.incrementAndGet();
+    }
+    CURRENT.set(new MatchStats());
+  }
+
+  /**
+   * Stop recording on this thread.
+   *
+   * @return what we recorded or {@code null} if we weren't recording
+   */
+  public static MatchStats stop() {
+    MatchStats stats = CURRENT.get();
+    if (stats != null) {
+      CURRENT.remove();
+      RECORDING.decrementAndGet();
+    }
+    return stats;
+  }
+
+  /**
+   * The stats this thread is recording or {@code null} if it isn't.
+   */
+  static MatchStats current() {
+    if (RECORDING.get() == 0) {
+      return null;
+    }
+    return CURRENT.get();
+  }
+
+  /**
+   * Stats for work this thread hands to other threads, like
+   * {@linkplain ParallelRendering rendering in parallel}. The work
+   * counts towards this thread's outermost match or render so
+   * {@link #run} doesn't time it again. {@link #merge} it back when the
+   * work is done.
+   *
+   * @return the stats or {@code null} if this thread isn't recording
+   */
+  static MatchStats fork() {
+    if (current() == null) {
+      return null;
+    }
+    MatchStats fork = new MatchStats();
+    fork.depth = 1;
+    return fork;
+  }
+
+  /**
+   * Do {@code work} on this thread recording to {@code stats} from
+   * {@link #fork}.
+   */
+  static <T> T run(MatchStats stats, Supplier<T> work) {
+    if (stats == null) {
+      return work.get();
+    }
+    MatchStats previous = CURRENT.get();
+    CURRENT.set(stats);
+    RECORDING.incrementAndGet();
+    try {
+      return work.get();
+    } finally {
+      RECORDING.decrementAndGet();
+      CURRENT.set(previous);
+    }
+  }
+
+  private int depth;
+  private long matches;
+  private long failures;
+  private long matchNanos;
+  private long renderNanos;
+  private long nodes;
+  private long messageChars;
+
+  private MatchStats() {}
+
+  /**
+   * Start matching or rendering.
+   *
+   * @return the time to pass to {@link #endMatch} or {@link #endRender}
+   */
+  long begin() {
+    return depth++ == 0 ? System.nanoTime() : 0;
+  }
+
+  /**
+   * Finish matching.
+   *
+   * @param start the result of {@link #begin}
+   * @param visited how many nodes we visited
+   */
+  void endMatch(long start, int visited) {
+    nodes += visited;
+    if (--depth == 0) {
+      matches++;
+      matchNanos += System.nanoTime() - start;
+    }
+  }
+
+  /**
+   * Finish rendering.
+   *
+   * @param start the result of {@link #begin}
+   * @param visited how many nodes we visited
+   */
+  void endRender(long start, int visited) {
+    nodes += visited;
+    if (--depth == 0) {
+      renderNanos += System.nanoTime() - start;
+    }
+  }
+
+  /**
+   * Add what a {@link #fork} recorded.
+   */
+  void merge(MatchStats fork) {
+    matches += fork.matches;
+    failures += fork.failures;
+    matchNanos += fork.matchNanos;
+    renderNanos += fork.renderNanos;
+    nodes += fork.nodes;
+    messageChars += fork.messageChars;
+  }
+
+  /**
+   * Record a failed assertion.
+   */
+  void failure() {
+    failures++;
+  }
+
+  /**
+   * Record rendering a failure message.
+   */
+  void message(int chars) {
+    messageChars += chars;
+  }
+
+  /**
+   * The number of values matched.
+   */
+  public long matches() {
+    return matches;
+  }
+
+  /**
+   * The number of failed {@link MapMatcher#assertMap assertions}.
+   */
+  public long failures() {
+    return failures;
+  }
+
+  /**
+   * Nanoseconds spent matching.
+   */
+  public long matchNanos() {
+    return matchNanos;
+  }
+
+  /**
+   * Nanoseconds spent describing matchers and mismatches.
+   */
+  public long renderNanos() {
+    return renderNanos;
+  }
+
+  /**
+   * The number of expected values visited while matching and rendering.
+   */
+  public long nodes() {
+    return nodes;
+  }
+
+  /**
+   * The total length of the messages of {@link MismatchError}s rendered
+   * on this thread.
+   */
+  public long messageChars() {
+    return messageChars;
+  }
+
+  @Override
+  public String toString() {
+    return matches + " matches in " + matchNanos + "ns, rendered in " + renderNanos
+        + "ns, visiting " + nodes + " nodes, " + failures + " failures totalling "
+        + messageChars + " chars";
+  }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2021 Nikolas Everett
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.github.nik9000.mapmatcher;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Writer;
+
+import org.hamcrest.Description;
+import org.hamcrest.Matcher;
+import org.hamcrest.StringDescription;
+
+/**
+ * Thrown by {@link MapMatcher#assertMap} when a value doesn't match.
+ * Describing the mismatch can be expensive for large values so we only
+ * describe it the first time something asks for the message. Code that
+ * catches the error and retries never pays for it.
+ * <p>
+ * The {@link #actual} value and the {@link #matcher} are available for
+ * inspection and {@link #writeReport} writes the result of matching them
+ * as a {@link JsonReport}. They aren't serialized so they are only
+ * available where the error was thrown, but the message is rendered
+ * before serializing. If leaves were on a {@link TimeBudget} the error
+ * keeps the leaves that ran out of time and describes the mismatch with
+ * the same budget.
+ */
+public final class MismatchError extends AssertionError {
+  private static final long serialVersionUID = 1L;
+
+  private final String reason;
+  private final transient Object actual;
+  private final transient Matcher<?> matcher;
+  /**
+   * The {@link TimeBudget} assertion that found the mismatch or
+   * {@code null} if leaves weren't on a budget.
+   */
+  private final transient Object budget;
+  private volatile String message;
+
+  MismatchError(String reason, Object actual, Matcher<?> matcher, Object budget) {
+    this.reason = reason;
+    this.actual = actual;
+    this.matcher = matcher;
+    this.budget = budget;
+  }
+
+  /**
+   * The value that didn't match.
+   */
+  public Object actual() {
+    return actual;
+  }
+
+  /**
+   * The matcher that it didn't match.
+   */
+  public Matcher<?> matcher() {
+    return matcher;
+  }
+
+  /**
+   * The reason passed to {@link MapMatcher#assertMap(String, Object, Matcher)}.
+   */
+  public String reason() {
+    return reason;
+  }
+
+  /**
+   * Write a {@link JsonReport} line for each leaf of {@link #actual} that
+   * doesn't match {@link #matcher}.
+   */
+  @SuppressWarnings("unchecked")
+  public void writeReport(Writer out) throws IOException {
+    JsonReport.write(actual, (Matcher<Object>) matcher, out);
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @hidden
+   */
+  @Override
+  public String getMessage() {
+    String m = message;
+    if (m == null) {
+      synchronized (this) {
+        m = message;
+        if (m == null) {
+          m = render();
+          message = m;
+        }
+      }
+    }
+    return m;
+  }
+
+  private String render() {
+    String rendered = TimeBudget.run(budget, () -> {
+      Description description = new StringDescription();
+      description.appendText(reason).appendText("Expected ");
+      matcher.describeMismatch(actual, description);
+      return description.toString();
+    });
+    MatchStats stats = MatchStats.current();
+    if (stats != null) {
+      stats.message(rendered.length());
+    }
+    return rendered;
+  }
+
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    getMessage();
+    out.defaultWriteObject();
+  }
+}
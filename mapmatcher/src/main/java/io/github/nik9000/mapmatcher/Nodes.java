@@ -0,0 +1,178 @@
+/*
+ * Copyright 2021 Nikolas Everett
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.github.nik9000.mapmatcher;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.hamcrest.Description;
+import org.hamcrest.Matcher;
+import org.hamcrest.StringDescription;
+
+/**
+ * Dispatches between {@link MapMatcher}, {@link ListMatcher},
+ * {@link JsonMatcher}, and leaf {@link Matcher}s while describing. We
+ * call the first three "nodes" because they describe themselves as a
+ * nested tree inside of the description of their parent.
+ */
+final class Nodes {
+  static final int INDENT = 2;
+
+  private Nodes() {}
+
+  static void describeMatcher(int keyWidth, Object key, Matcher<?> matcher,
+      Description description) {
+    String keyFormat = "\n%" + keyWidth + "s";
+    description.appendText(String.format(Locale.ROOT, keyFormat, key)).appendText(": ");
+    if (matcher instanceof MapMatcher) {
+      ((MapMatcher) matcher).describeTo(keyWidth + INDENT, description);
+      return;
+    }
+    if (matcher instanceof ListMatcher) {
+      ((ListMatcher) matcher).describeTo(keyWidth + INDENT, description);
+      return;
+    }
+    if (matcher instanceof JsonMatcher) {
+      ((JsonMatcher) matcher).describeTo(keyWidth + INDENT, description);
+      return;
+    }
+    description.appendDescriptionOf(matcher);
+  }
+
+  static void describeEntryMissing(Matcher<?> matcher, Description description) {
+    describeEntryUnread(matcher, "<missing>", description);
+  }
+
+  /**
+   * Describe an entry we couldn't read, {@code was} explaining why.
+   */
+  private static void describeEntryUnread(Matcher<?> matcher, String was,
+      Description description) {
+    description.appendText("expected ");
+    /*
+     * Use a short description for multi-line matchers so the "but was <missing>"
+     * bit of the erro is more prominent. It's the more important part.
+     */
+    if (isNode(matcher)) {
+      description.appendText(shortDescription(matcher));
+    } else {
+      description.appendDescriptionOf(matcher);
+    }
+    description.appendText(" but was ").appendText(was);
+  }
+
+  static void describeEntryValue(int keyWidth, Matcher<?> matcher, Object v,
+      Description description) {
+    if (v == Beans.INACCESSIBLE) {
+      describeEntryUnread(matcher, "<inaccessible>", description);
+      return;
+    }
+    if (v instanceof Map && matcher instanceof MapMatcher) {
+      ((MapMatcher) matcher)
+          .describePotentialMismatch(keyWidth + INDENT, (Map<?, ?>) v, description);
+      return;
+    }
+    if (v instanceof List && matcher instanceof ListMatcher) {
+      ((ListMatcher) matcher)
+          .describePotentialMismatch(keyWidth + INDENT, (List<?>) v, description);
+      return;
+    }
+    if (describePotentialMismatchOf(matcher, keyWidth + INDENT, v, description)) {
+      return;
+    }
+    if (false == TimeBudget.matches(matcher, v)) {
+      description.appendText("expected ").appendDescriptionOf(matcher).appendText(" but ");
+      String outOfTime = TimeBudget.outOfTime(matcher);
+      if (outOfTime != null) {
+        description.appendText(outOfTime);
+      } else {
+        matcher.describeMismatch(Adapters.toJava(v), description);
+      }
+      return;
+    }
+    description.appendValue(Adapters.toJava(v));
+  }
+
+  /**
+   * Is {@code matcher} a {@link MapMatcher}, {@link ListMatcher}, or
+   * {@link JsonMatcher}?
+   */
+  static boolean isNode(Object matcher) {
+    return matcher instanceof MapMatcher || matcher instanceof ListMatcher
+        || matcher instanceof JsonMatcher;
+  }
+
+  /**
+   * The width of the widest key in {@code matcher} and its children when
+   * matched against {@code item} or {@code 0} if it isn't a node.
+   */
+  static int keyWidthFor(Object matcher, Object item) {
+    if (matcher instanceof MapMatcher) {
+      return ((MapMatcher) matcher).keyWidthFor(item);
+    }
+    if (matcher instanceof ListMatcher) {
+      return ((ListMatcher) matcher).keyWidthFor(item);
+    }
+    if (matcher instanceof JsonMatcher) {
+      return ((JsonMatcher) matcher).keyWidthFor(item);
+    }
+    return 0;
+  }
+
+  /**
+   * Single line description of {@code matcher} used when the value is
+   * missing.
+   */
+  static String shortDescription(Matcher<?> matcher) {
+    if (matcher instanceof MapMatcher) {
+      return "a map";
+    }
+    if (matcher instanceof ListMatcher) {
+      return "a list";
+    }
+    if (matcher instanceof JsonMatcher) {
+      return ((JsonMatcher) matcher).shortDescription();
+    }
+    return StringDescription.toString(matcher);
+  }
+
+  /**
+   * Describe {@code matcher}, indenting the keys of nodes to
+   * {@code keyWidth}.
+   */
+  static void describeTo(Matcher<?> matcher, int keyWidth, Description description) {
+    if (matcher instanceof MapMatcher) {
+      ((MapMatcher) matcher).describeTo(keyWidth, description);
+    } else if (matcher instanceof ListMatcher) {
+      ((ListMatcher) matcher).describeTo(keyWidth, description);
+    } else if (matcher instanceof JsonMatcher) {
+      ((JsonMatcher) matcher).describeTo(keyWidth, description);
+    } else {
+      description.appendDescriptionOf(matcher);
+    }
+  }
+
+  /**
+   * Describe how {@code item} matches the node {@code matcher}.
+   *
+   * @return {@code false} without describing anything if {@code matcher}
+   *         isn't a node or {@code item} isn't the kind of value it matches
+   */
+  static boolean describePotentialMismatchOf(Matcher<?> matcher, int keyWidth, Object item,
+      Description description) {
+    if (matcher instanceof MapMatcher) {
+      return ((MapMatcher) matcher).describePotentialMismatchOf(keyWidth, item, description);
+    }
+    if (matcher instanceof ListMatcher) {
+      return ((ListMatcher) matcher).describePotentialMismatchOf(keyWidth, item, description);
+    }
+    if (matcher instanceof JsonMatcher) {
+      return ((JsonMatcher) matcher).describePotentialMismatchOf(keyWidth, item, description);
+    }
+    return false;
+  }
+}
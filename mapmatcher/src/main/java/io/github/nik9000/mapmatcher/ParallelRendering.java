@@ -0,0 +1,69 @@
+/*
+ * Copyright 2021 Nikolas Everett
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.github.nik9000.mapmatcher;
+
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+
+import org.hamcrest.StringDescription;
+
+/**
+ * Opt-in parallel rendering of mismatch descriptions. When a
+ * {@link MapMatcher} or {@link ListMatcher} that doesn't match has at
+ * least {@link #MIN_CHILDREN} entries we describe ranges of them on a
+ * {@link ForkJoinPool}, each into its own buffer, and join the buffers
+ * in order. The result is exactly the same as describing them one after
+ * the other.
+ * <p>
+ * Only descriptions rendered into a {@link StringDescription}, like
+ * failure messages, are rendered in parallel. Lists that aren't
+ * {@link java.util.RandomAccess} are always described one item at a time.
+ */
+public final class ParallelRendering {
+  /**
+   * The fewest entries we'll split across threads.
+   */
+  public static final int MIN_CHILDREN = 1024;
+
+  private static volatile ForkJoinPool pool;
+
+  private ParallelRendering() {}
+
+  /**
+   * Start rendering in parallel on the {@link ForkJoinPool#commonPool}.
+   */
+  public static void enable() {
+    enable(ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Start rendering in parallel on {@code pool}.
+   */
+  public static void enable(ForkJoinPool pool) {
+    ParallelRendering.pool = Objects.requireNonNull(pool, "pool");
+  }
+
+  /**
+   * Stop rendering in parallel.
+   */
+  public static void disable() {
+    pool = null;
+  }
+
+  /**
+   * Are we rendering in parallel?
+   */
+  public static boolean isEnabled() {
+    return pool != null;
+  }
+
+  /**
+   * The pool to render on or {@code null} if we're rendering serially.
+   */
+  static ForkJoinPool pool() {
+    return pool;
+  }
+}
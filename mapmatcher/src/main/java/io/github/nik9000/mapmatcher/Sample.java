@@ -0,0 +1,117 @@
+/*
+ * Copyright 2021 Nikolas Everett
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.github.nik9000.mapmatcher;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Which items a {@linkplain ListMatcher#sampled sampled}
+ * {@link ListMatcher} checks. It always checks the first and last
+ * {@link #edges} items and a reproducible random sample of the ones
+ * between them. The sample is spread evenly across the list by picking
+ * one item at random from each of {@code count} equal sized stretches.
+ * <p>
+ * Failure messages include the seed. Pass it to {@link #seed} to check
+ * the same items again.
+ */
+public final class Sample {
+  /**
+   * The number of items at each end of the list that we always check
+   * unless {@link #edges} says otherwise.
+   */
+  public static final int DEFAULT_EDGES = 10;
+
+  /**
+   * Check {@code count} items between the edges.
+   */
+  public static Sample count(int count) {
+    if (count < 0) {
+      throw new IllegalArgumentException("count must be >= 0 but was [" + count + "]");
+    }
+    return new Sample(count, Double.NaN, DEFAULT_EDGES, ThreadLocalRandom.current().nextLong());
+  }
+
+  /**
+   * Check {@code rate} of the items between the edges.
+   */
+  public static Sample rate(double rate) {
+    if (false == (rate >= 0 && rate <= 1)) {
+      throw new IllegalArgumentException("rate must be in [0, 1] but was [" + rate + "]");
+    }
+    return new Sample(-1, rate, DEFAULT_EDGES, ThreadLocalRandom.current().nextLong());
+  }
+
+  private final int count;
+  private final double rate;
+  private final int edges;
+  private final long seed;
+
+  private Sample(int count, double rate, int edges, long seed) {
+    this.count = count;
+    this.rate = rate;
+    this.edges = edges;
+    this.seed = seed;
+  }
+
+  /**
+   * Always check the first and last {@code edges} items.
+   */
+  public Sample edges(int edges) {
+    if (edges < 0) {
+      throw new IllegalArgumentException("edges must be >= 0 but was [" + edges + "]");
+    }
+    return new Sample(count, rate, edges, seed);
+  }
+
+  /**
+   * Pick the sample with this seed rather than a random one.
+   */
+  public Sample seed(long seed) {
+    return new Sample(count, rate, edges, seed);
+  }
+
+  /**
+   * The seed that picks the sample.
+   */
+  public long seed() {
+    return seed;
+  }
+
+  /**
+   * The sorted indices to check in a list of {@code size} items.
+   */
+  int[] indices(int size) {
+    int head = Math.min(edges, size);
+    int tail = Math.min(edges, size - head);
+    int middle = size - head - tail;
+    int sampled = count >= 0
+        ? Math.min(count, middle)
+        : (int) Math.min(middle, (long) Math.ceil(rate * middle));
+    int[] indices = new int[head + sampled + tail];
+    int i = 0;
+    for (int index = 0; index < head; index++) {
+      indices[i++] = index;
+    }
+    SplittableRandom random = new SplittableRandom(seed);
+    for (int s = 0; s < sampled; s++) {
+      // Pick one item from each of the sampled equal sized stretches
+      int from = head + (int) ((long) s * middle / sampled);
+      int to = head + (int) ((long) (s + 1) * middle / sampled);
+      indices[i++] = from + random.nextInt(to - from);
+    }
+    for (int index = size - tail; index < size; index++) {
+      indices[i++] = index;
+    }
+    return indices;
+  }
+
+  @Override
+  public String toString() {
+    return (count >= 0 ? count + " items" : rate + " of items") + " with " + edges
+        + " at each edge and seed " + seed;
+  }
+}
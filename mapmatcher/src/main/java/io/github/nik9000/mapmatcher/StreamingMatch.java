@@ -0,0 +1,212 @@
+/*
+ * Copyright 2021 Nikolas Everett
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.github.nik9000.mapmatcher;
+
+import static io.github.nik9000.mapmatcher.MapMatcher.convert;
+import static io.github.nik9000.mapmatcher.MapMatcher.describeEntry;
+import static io.github.nik9000.mapmatcher.MapMatcher.describeEntryUnexepected;
+import static io.github.nik9000.mapmatcher.MapMatcher.matcherForConverted;
+import static io.github.nik9000.mapmatcher.MapMatcher.matchesValue;
+import static io.github.nik9000.mapmatcher.Nodes.INDENT;
+import static io.github.nik9000.mapmatcher.Nodes.describeEntryMissing;
+import static io.github.nik9000.mapmatcher.Nodes.describeEntryValue;
+
+import java.util.Locale;
+
+import org.hamcrest.Description;
+import org.hamcrest.Matcher;
+import org.hamcrest.StringDescription;
+
+/**
+ * Matches items one at a time as they arrive, like events from a stream,
+ * without keeping them. Either each item must match the item at the same
+ * position of a {@link ListMatcher} or every item must match the same
+ * expected value. Matching is decided as soon as an item doesn't match
+ * or, for {@linkplain ListMatcher#asPrefix prefixes}, as soon as all of
+ * the expected items have matched. Otherwise it is decided when you
+ * {@link #finish} it.
+ * <p>
+ * Because we don't keep the items the {@link #report} only describes the
+ * item that decided the match, in the same format {@link MapMatcher#assertMap}
+ * would describe it.
+ * <p>
+ * {@linkplain StreamingMatch}es are not thread safe.
+ */
+public final class StreamingMatch {
+  private static final int UNDECIDED = 0;
+  private static final int MATCHED = 1;
+  private static final int FAILED = 2;
+
+  /**
+   * Match each item against the item at the same position of
+   * {@code list}.
+   *
+   * @throws IllegalArgumentException if matching {@code list} needs to
+   *         see all of the items at once, like
+   *         {@linkplain ListMatcher#keyedBy keyed},
+   *         {@linkplain ListMatcher#sampled sampled}, and
+   *         {@linkplain ListMatcher#asSuffix suffix} lists do
+   */
+  public static StreamingMatch matching(ListMatcher list) {
+    if (list.isKeyed() || list.checkedCount() != list.size()
+        || list.window() == ListMatcher.SUFFIX || list.window() == ListMatcher.SUB_LIST) {
+      throw new IllegalArgumentException("can't match a stream one item at a time with "
+          + StringDescription.toString(list));
+    }
+    return new StreamingMatch(list, null);
+  }
+
+  /**
+   * Match every item against {@code expected}, either a {@link Matcher}
+   * or a value like the ones {@link MapMatcher#entry(Object, Object)} takes.
+   */
+  public static StreamingMatch eachItem(Object expected) {
+    return new StreamingMatch(null, convert(expected));
+  }
+
+  private final ListMatcher list;
+  private final Object each;
+  private long items;
+  private int state;
+  private String report;
+
+  private StreamingMatch(ListMatcher list, Object each) {
+    this.list = list;
+    this.each = each;
+    if (list != null && list.window() == ListMatcher.PREFIX && list.size() == 0) {
+      state = MATCHED;
+    }
+  }
+
+  /**
+   * Check the next item.
+   *
+   * @return {@code true} if this item decided the match so there's no
+   *         need to check any more
+   * @throws IllegalStateException if the match was already decided
+   */
+  public boolean offer(Object item) {
+    if (state != UNDECIDED) {
+      throw new IllegalStateException("already decided");
+    }
+    long index = items++;
+    if (TimeBudget.isEnabled()) {
+      // Leaves remember running out of time by the index of the item
+      TimeBudget.at(null, index);
+    }
+    if (list == null) {
+      if (false == matchesValue(each, item)) {
+        fail(index, each, item);
+      }
+      return state != UNDECIDED;
+    }
+    if (index >= list.size()) {
+      StringDescription description = new StringDescription();
+      list.describeHeader(description);
+      describeKey(index, Long.toString(index).length(), description);
+      describeEntryUnexepected(item, description);
+      state = FAILED;
+      report = description.toString();
+      return true;
+    }
+    Object expected = list.expected((int) index);
+    if (false == matchesValue(expected, item)) {
+      fail(index, expected, item);
+    } else if (index == list.size() - 1 && list.window() == ListMatcher.PREFIX) {
+      state = MATCHED;
+    }
+    return state != UNDECIDED;
+  }
+
+  /**
+   * Record that there aren't any more items, deciding the match if it
+   * wasn't already.
+   *
+   * @return did the items match?
+   */
+  public boolean finish() {
+    if (state != UNDECIDED) {
+      return state == MATCHED;
+    }
+    if (list == null || items == list.size()) {
+      state = MATCHED;
+      return true;
+    }
+    StringDescription description = new StringDescription();
+    list.describeHeader(description);
+    describeKey(items, Long.toString(items).length(), description);
+    describeEntryMissing(list.matcher((int) items), description);
+    state = FAILED;
+    report = description.toString();
+    return false;
+  }
+
+  /**
+   * Has the match been decided?
+   */
+  public boolean isDecided() {
+    return state != UNDECIDED;
+  }
+
+  /**
+   * Was the match decided and did the items match?
+   */
+  public boolean matched() {
+    return state == MATCHED;
+  }
+
+  /**
+   * The number of items we've checked.
+   */
+  public long items() {
+    return items;
+  }
+
+  /**
+   * A description of the item that didn't match or {@code null} if none
+   * have failed.
+   */
+  public String report() {
+    return report;
+  }
+
+  private void fail(long index, Object expected, Object item) {
+    Matcher<?> matcher = matcherForConverted(expected);
+    int keyWidth = Long.toString(index).length();
+    if (Nodes.isNode(matcher)) {
+      // Nested keys are indented past ours
+      keyWidth = Math.max(keyWidth, Nodes.keyWidthFor(matcher, item) - INDENT);
+    }
+    StringDescription description = new StringDescription();
+    if (list == null) {
+      description.appendText("every item is");
+    } else {
+      list.describeHeader(description);
+    }
+    describeKey(index, keyWidth, description);
+    describeEntryValue(keyWidth, matcher, item, description);
+    state = FAILED;
+    report = description.toString();
+  }
+
+  private static void describeKey(long index, int keyWidth, Description description) {
+    describeEntry(keyWidth, String.format(Locale.ROOT, "%" + keyWidth + "s", index), description);
+  }
+
+  /**
+   * Describe the expectation.
+   */
+  @Override
+  public String toString() {
+    Description description = new StringDescription();
+    if (list == null) {
+      description.appendText("every item is ").appendDescriptionOf(matcherForConverted(each));
+    } else {
+      list.describeTo(description);
+    }
+    return description.toString();
+  }
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright 2021 Nikolas Everett
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.github.nik9000.mapmatcher;
+
+import static io.github.nik9000.mapmatcher.MapMatcher.matchesValue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+import org.hamcrest.Matcher;
+
+/**
+ * Finds where the items of a {@link ListMatcher} that matches
+ * {@linkplain ListMatcher#asSubList sub-lists} are in the actual list.
+ * If every expected item is a plain value, or a {@link MapMatcher} or
+ * {@link ListMatcher} of plain values, we search with the
+ * Knuth-Morris-Pratt algorithm, reading each actual item about once and
+ * comparing hash codes before calling {@link Object#equals}. That relies
+ * on {@linkplain Object#equals equals} being transitive, which it is for
+ * any sane plain value. If any expected item is some other
+ * {@link Matcher} we can't know which expected items an actual item
+ * matches without trying them so we try the expected items at each
+ * position in turn.
+ * <p>
+ * Actual maps and lists can match nested expected values without being
+ * {@linkplain Object#equals equal} to them, say if they contain a Gson
+ * tree. So if the expected items nest and the search doesn't find them
+ * we try them at each position too.
+ * <p>
+ * When the items aren't there the best partial alignment is the
+ * position where the longest run of expected items from the first one
+ * matches.
+ */
+final class SubList {
+  /**
+   * Align {@code actual} with {@code list} for describing.
+   */
+  static SubList align(ListMatcher list, List<?> actual) {
+    List<?> items = randomAccess(actual);
+    int offset;
+    switch (list.window()) {
+      case ListMatcher.PREFIX:
+        offset = 0;
+        break;
+      case ListMatcher.SUFFIX:
+        offset = Math.max(0, items.size() - list.size());
+        break;
+      case ListMatcher.SUB_LIST:
+        offset = search(list, items, true);
+        break;
+      default:
+        throw new IllegalStateException("unknown window [" + list.window() + "]");
+    }
+    return new SubList(offset, items);
+  }
+
+  /**
+   * Find the first position of {@code list}'s items in {@code actual}.
+   *
+   * @return the position or {@code -1} if they aren't there
+   */
+  static int find(ListMatcher list, List<?> actual) {
+    return search(list, actual, false);
+  }
+
+  /**
+   * {@code list} or, if it isn't {@link RandomAccess}, a copy of it.
+   */
+  static List<?> randomAccess(List<?> list) {
+    return list instanceof RandomAccess ? list : new ArrayList<>(list);
+  }
+
+  /**
+   * Find the first position of {@code list}'s items in {@code actual}.
+   *
+   * @param best return the best partial alignment rather than {@code -1}
+   *        if the items aren't there
+   */
+  private static int search(ListMatcher list, List<?> actual, boolean best) {
+    int m = list.size();
+    if (m == 0) {
+      return 0;
+    }
+    Pattern pattern = list.subListPattern();
+    if (pattern.failure != null && false == pattern.nested) {
+      return searchPlain(list, pattern, actual, best);
+    }
+    if (pattern.failure != null) {
+      int found = searchPlain(list, pattern, actual, false);
+      if (found >= 0) {
+        return found;
+      }
+    }
+    // Leaves remember running out of time by the path to the item
+    Object path = TimeBudget.position();
+    try {
+      return searchMatchers(list, actual, best, path);
+    } finally {
+      if (path != null) {
+        TimeBudget.at(path);
+      }
+    }
+  }
+
+  private static int searchPlain(ListMatcher list, Pattern pattern, List<?> actual,
+      boolean best) {
+    int m = list.size();
+    int bestLength = 0;
+    int bestStart = 0;
+    int j = 0;
+    int i = 0;
+    for (Object item : actual) {
+      while (j > 0 && false == same(list, pattern, j, item)) {
+        j = pattern.failure[j - 1];
+      }
+      if (same(list, pattern, j, item)) {
+        j++;
+      }
+      if (j == m) {
+        return i - m + 1;
+      }
+      if (j > bestLength) {
+        bestLength = j;
+        bestStart = i - j + 1;
+      }
+      i++;
+    }
+    return best ? bestStart : -1;
+  }
+
+  private static boolean same(ListMatcher list, Pattern pattern, int j, Object actual) {
+    if (false == Adapters.handles(actual) && Objects.hashCode(actual) != pattern.hashes[j]) {
+      return false;
+    }
+    Object expected = list.expected(j);
+    return expected instanceof Matcher
+        ? MapMatcher.literalEquals(expected, actual)
+        : matchesValue(expected, actual);
+  }
+
+  private static int searchMatchers(ListMatcher list, List<?> actual, boolean best,
+      Object path) {
+    actual = randomAccess(actual);
+    int m = list.size();
+    int n = actual.size();
+    int bestLength = 0;
+    int bestStart = 0;
+    for (int offset = 0; offset < n; offset++) {
+      int k = 0;
+      while (k < m && offset + k < n && matches(list, k, actual, offset + k, path)) {
+        k++;
+      }
+      if (k == m) {
+        return offset;
+      }
+      if (k > bestLength) {
+        bestLength = k;
+        bestStart = offset;
+      }
+    }
+    return best ? bestStart : -1;
+  }
+
+  /**
+   * Does the {@code a}th actual item match the {@code e}th expected item?
+   *
+   * @param path the {@linkplain TimeBudget#position path} to the list
+   */
+  private static boolean matches(ListMatcher list, int e, List<?> actual, int a, Object path) {
+    if (path != null) {
+      TimeBudget.at(path, a);
+    }
+    return matchesValue(list.expected(e), actual.get(a));
+  }
+
+  private final int offset;
+  private final List<?> actual;
+
+  private SubList(int offset, List<?> actual) {
+    this.offset = offset;
+    this.actual = actual;
+  }
+
+  /**
+   * The position in the actual list of the first expected item.
+   */
+  int offset() {
+    return offset;
+  }
+
+  /**
+   * The actual items.
+   */
+  List<?> actual() {
+    return actual;
+  }
+
+  /**
+   * What we precompute about a {@linkplain ListMatcher}'s items to search
+   * for them.
+   */
+  static final class Pattern {
+    /**
+     * The Knuth-Morris-Pratt failure function or {@code null} if any item
+     * is a {@link Matcher} other than a {@link MapMatcher} or
+     * {@link ListMatcher} of plain values. {@code failure[j]} is the
+     * length of the longest proper prefix of the first {@code j + 1}
+     * items that is also a suffix of them.
+     */
+    private final int[] failure;
+    /**
+     * The {@link Object#hashCode} of each item's
+     * {@linkplain MapMatcher#literalValue plain value}.
+     */
+    private final int[] hashes;
+    /**
+     * Is any item a {@link MapMatcher} or {@link ListMatcher}?
+     */
+    private final boolean nested;
+
+    Pattern(ListMatcher list) {
+      int m = list.size();
+      Object[] values = new Object[m];
+      boolean nested = false;
+      for (int i = 0; i < m; i++) {
+        Object expected = list.expected(i);
+        if (expected instanceof Matcher) {
+          if (MapMatcher.nestLiteral(0, expected) < 0) {
+            this.failure = null;
+            this.hashes = null;
+            this.nested = false;
+            return;
+          }
+          nested = true;
+        }
+        values[i] = MapMatcher.literalValue(expected);
+      }
+      this.nested = nested;
+      hashes = new int[m];
+      for (int i = 0; i < m; i++) {
+        hashes[i] = Objects.hashCode(values[i]);
+      }
+      failure = new int[m];
+      int k = 0;
+      for (int i = 1; i < m; i++) {
+        while (k > 0 && false == Objects.equals(values[i], values[k])) {
+          k = failure[k - 1];
+        }
+        if (Objects.equals(values[i], values[k])) {
+          k++;
+        }
+        failure[i] = k;
+      }
+    }
+  }
+}
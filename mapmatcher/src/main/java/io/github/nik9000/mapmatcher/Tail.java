@@ -0,0 +1,58 @@
+/*
+ * Copyright 2021 Nikolas Everett
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.github.nik9000.mapmatcher;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * Lets a chain of matchers built by appending one entry at a time, like
+ * {@code matchesMap().entry("a", 1).entry("b", 2)}, share their backing
+ * arrays rather than copying them on every append. That copying made
+ * building a matcher with {@code n} entries take O(n<sup>2</sup>) time.
+ * <p>
+ * Every matcher in the chain holds the arrays and how many of their
+ * slots are its own. The first matcher to {@link #claim} the slot after
+ * its own may write it and return a new matcher that owns one more slot.
+ * Nothing ever writes to a slot a matcher owns so the matchers stay
+ * immutable. If the slot is already claimed, because we appended to this
+ * matcher before, we copy the arrays and start a new {@linkplain Tail}.
+ * <p>
+ * Matchers that nothing has appended to yet, like the ones built from
+ * fixtures, don't have a {@linkplain Tail}. Their arrays are full so
+ * the first append copies them anyway.
+ */
+class Tail {
+  /**
+   * The capacity we grow empty arrays to.
+   */
+  private static final int MIN_CAPACITY = 4;
+
+  private static final AtomicIntegerFieldUpdater<Tail> CLAIMED =
+      AtomicIntegerFieldUpdater.newUpdater(Tail.class, "claimed");
+
+  private volatile int claimed;
+
+  Tail(int size) {
+    claimed = size;
+  }
+
+  /**
+   * Claim the slot after the first {@code size} slots.
+   *
+   * @return {@code true} if the caller may write the slot or
+   *         {@code false} if someone else already claimed it
+   */
+  final boolean claim(int size) {
+    return CLAIMED.compareAndSet(this, size, size + 1);
+  }
+
+  /**
+   * The capacity to grow arrays holding {@code size} entries to.
+   */
+  static int grow(int size) {
+    return Math.max(MIN_CAPACITY, size + (size >> 1) + 1);
+  }
+}
@@ -0,0 +1,463 @@
+/*
+ * Copyright 2021 Nikolas Everett
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.github.nik9000.mapmatcher;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.hamcrest.Matcher;
+
+/**
+ * Opt-in time budgets for leaf {@link Matcher}s, like a regex that
+ * backtracks catastrophically or a slow custom matcher. With a budget
+ * enabled we time each call to a leaf {@linkplain Matcher} and a call
+ * that takes longer than the leaf budget doesn't match. Once matching or
+ * describing one value has taken longer than the assertion budget we
+ * stop calling leaf {@linkplain Matcher}s and they don't match either.
+ * Plain expected values are compared with {@link Object#equals} as
+ * usual.
+ * <p>
+ * Budgets belong to the thread that {@linkplain #enable enabled} them so
+ * tests running in parallel don't share them. A {@link MismatchError}
+ * carries the budget of the assertion that threw it and describes the
+ * mismatch with that budget whichever thread asks for its message.
+ * <p>
+ * Budgets are enforced between leaves, on the thread that is matching.
+ * We time a leaf when it returns and never interrupt it, so a leaf that
+ * never returns still hangs. But one slow leaf no longer takes the rest
+ * of the tree down with it. The mismatch description describes the rest
+ * of the tree as usual and the leaf as
+ * {@code expected <description> but timed out after N ms} at its path.
+ * Leaves we skipped because the assertion was out of time are described
+ * as {@code not checked: assertion budget exhausted}.
+ * <p>
+ * We remember the leaves that timed out or were skipped, along with the
+ * path to the value they did it on, for the rest of the assertion so
+ * describing the mismatch doesn't call them again. We remember the path
+ * rather than the value because reading buffers and beans makes a new
+ * value each time. An assertion is the outermost match on a thread and
+ * the description of its mismatch. We forget them when the description
+ * is done, when the match succeeds, or when the thread starts its next
+ * match.
+ */
+public final class TimeBudget {
+  /**
+   * Remembered in place of how long a leaf took if we skipped it.
+   */
+  private static final long SKIPPED = -1;
+
+  /**
+   * The path to the root of the value an assertion is matching.
+   */
+  private static final Path ROOT = new Path(null, "<root>");
+
+  private static final ThreadLocal<Assertion> CURRENT = ThreadLocal.withInitial(Assertion::new);
+
+  /**
+   * The number of threads that have a budget, or are running part of an
+   * assertion that does. Matching checks this before looking up the
+   * thread's budget so it is cheap when budgets are off.
+   */
+  private static final AtomicInteger BUDGETED = new AtomicInteger();
+
+  /**
+   * Give each call to a leaf {@link Matcher} on this thread
+   * {@code leafMillis} and each match or description {@code assertionMillis}.
+   */
+  public static void enable(long leafMillis, long assertionMillis) {
+    if (leafMillis < 1) {
+      throw new IllegalArgumentException("leafMillis must be at least 1 but was ["
+          + leafMillis + "]");
+    }
+    if (assertionMillis < 1) {
+      throw new IllegalArgumentException("assertionMillis must be at least 1 but was ["
+          + assertionMillis + "]");
+    }
+    Assertion assertion = CURRENT.get();
+    if (assertion.budget == null) {
+      BUDGETED.incrementAndGet();
+    }
+    assertion.budget = new TimeBudget(leafMillis, assertionMillis);
+  }
+
+  /**
+   * Stop timing leaves on this thread.
+   */
+  public static void disable() {
+    Assertion assertion = CURRENT.get();
+    if (assertion.budget != null) {
+      BUDGETED.decrementAndGet();
+    }
+    assertion.budget = null;
+    assertion.timedOut = null;
+    assertion.at = null;
+  }
+
+  /**
+   * Are leaves on this thread on a budget?
+   */
+  public static boolean isEnabled() {
+    return current() != null;
+  }
+
+  /**
+   * This thread's assertion or {@code null} if it doesn't have a budget.
+   */
+  private static Assertion current() {
+    if (BUDGETED.get() == 0) {
+      return null;
+    }
+    Assertion assertion = CURRENT.get();
+    return assertion.budget == null ? null : assertion;
+  }
+
+  /**
+   * Start matching a value. The outermost match on a thread starts a new
+   * assertion.
+   *
+   * @return {@code true} if this started a match so you need to call
+   *         {@link #endMatch}
+   */
+  static boolean beginMatch() {
+    return begin(false);
+  }
+
+  /**
+   * Finish matching a value.
+   *
+   * @param matched did it match? If the outermost match did we're done
+   *        with the assertion because there isn't a mismatch to describe.
+   */
+  static void endMatch(boolean matched) {
+    end(matched);
+  }
+
+  /**
+   * Start describing a mismatch, continuing the assertion that found it.
+   *
+   * @return {@code true} if this started a description so you need to
+   *         call {@link #endDescribe}
+   */
+  static boolean beginDescribe() {
+    return begin(true);
+  }
+
+  /**
+   * Finish describing a mismatch. If this is the outermost description
+   * we're done with the assertion.
+   */
+  static void endDescribe() {
+    end(true);
+  }
+
+  private static boolean begin(boolean describing) {
+    Assertion assertion = current();
+    if (assertion == null) {
+      return false;
+    }
+    if (assertion.depth++ == 0) {
+      assertion.deadline = System.nanoTime()
+          + TimeUnit.MILLISECONDS.toNanos(assertion.budget.assertionMillis);
+      assertion.at = ROOT;
+      if (false == describing) {
+        assertion.timedOut = null;
+      }
+    }
+    return true;
+  }
+
+  private static void end(boolean done) {
+    Assertion assertion = CURRENT.get();
+    if (--assertion.depth == 0) {
+      assertion.at = null;
+      if (done) {
+        assertion.timedOut = null;
+      }
+    }
+  }
+
+  /**
+   * The path to the value we're about to check or {@code null} if
+   * budgets are off. Leaves that match {@link Map}s and {@link List}s of
+   * their own start from here.
+   */
+  static Object position() {
+    Assertion assertion = current();
+    return assertion == null ? null : assertion.at;
+  }
+
+  /**
+   * Record that we're about to check the value at {@code key} in the
+   * value at {@code parent}, a path from {@link #position} or
+   * {@code null} for a value outside of any assertion.
+   *
+   * @return the path to the value or {@code null} if budgets are off
+   */
+  static Object at(Object parent, Object key) {
+    Assertion assertion = current();
+    if (assertion == null) {
+      return null;
+    }
+    Path path = new Path((Path) parent, key);
+    assertion.at = path;
+    return path;
+  }
+
+  /**
+   * Record that we're about to check the value at {@code path}, a path
+   * from {@link #at}.
+   */
+  static void at(Object path) {
+    Assertion assertion = current();
+    if (assertion != null) {
+      assertion.at = (Path) path;
+    }
+  }
+
+  /**
+   * Capture this thread's assertion so another thread can describe part
+   * of it with {@link #run}.
+   *
+   * @return the captured assertion or {@code null} if budgets are off
+   */
+  static Object fork() {
+    Assertion assertion = current();
+    if (assertion == null) {
+      return null;
+    }
+    Assertion fork = new Assertion();
+    fork.budget = assertion.budget;
+    fork.depth = 1;
+    fork.deadline = assertion.deadline;
+    fork.timedOut = assertion.timedOut();
+    return fork;
+  }
+
+  /**
+   * Hand the assertion that just failed on this thread over to the
+   * {@link MismatchError} that describes it, which can describe it on
+   * any thread with {@link #run}. This thread forgets it.
+   *
+   * @return the assertion or {@code null} if budgets are off
+   */
+  static Object handOff() {
+    Assertion assertion = current();
+    if (assertion == null) {
+      return null;
+    }
+    Assertion failed = new Assertion();
+    failed.budget = assertion.budget;
+    failed.timedOut = assertion.timedOut;
+    assertion.timedOut = null;
+    return failed;
+  }
+
+  /**
+   * Run {@code work} as part of an assertion from {@link #fork} or
+   * {@link #handOff}, sharing its budget and the leaves it remembers.
+   */
+  static <T> T run(Object assertion, Supplier<T> work) {
+    if (assertion == null) {
+      return work.get();
+    }
+    Assertion previous = CURRENT.get();
+    CURRENT.set((Assertion) assertion);
+    BUDGETED.incrementAndGet();
+    try {
+      return work.get();
+    } finally {
+      BUDGETED.decrementAndGet();
+      CURRENT.set(previous);
+    }
+  }
+
+  /**
+   * Does {@code actual} match the leaf {@code matcher}? It doesn't if
+   * it is out of time. Leaf matchers only understand plain java values
+   * so we pass it the {@linkplain Adapters#toJava plain} version of
+   * {@code actual}.
+   */
+  static boolean matches(Matcher<?> matcher, Object actual) {
+    Assertion assertion = current();
+    if (assertion == null) {
+      return call(matcher, actual);
+    }
+    Position position = assertion.at == null ? null : new Position(matcher, assertion.at);
+    if (position != null && assertion.remembered(position) != null) {
+      return false;
+    }
+    long start = System.nanoTime();
+    if (assertion.depth > 0 && start - assertion.deadline > 0) {
+      assertion.remember(position, SKIPPED);
+      return false;
+    }
+    boolean matched = call(matcher, actual);
+    long took = System.nanoTime() - start;
+    if (took > TimeUnit.MILLISECONDS.toNanos(assertion.budget.leafMillis)) {
+      assertion.remember(position, TimeUnit.NANOSECONDS.toMillis(took));
+      return false;
+    }
+    return matched;
+  }
+
+  private static boolean call(Matcher<?> matcher, Object actual) {
+    Object plain = Adapters.toJava(actual);
+    if (matcher instanceof LeafMatcher) {
+      // Skip Hamcrest
+      return ((LeafMatcher) matcher).leaf().test(plain);
+    }
+    return matcher.matches(plain);
+  }
+
+  /**
+   * Why {@code matcher} didn't check the value we're about to check in
+   * this assertion.
+   *
+   * @return {@code timed out after N ms}, {@code not checked: assertion
+   *         budget exhausted}, or {@code null} if it checked it
+   */
+  static String outOfTime(Matcher<?> matcher) {
+    Assertion assertion = current();
+    if (assertion == null || assertion.at == null) {
+      return null;
+    }
+    Long millis = assertion.remembered(new Position(matcher, assertion.at));
+    if (millis == null) {
+      return null;
+    }
+    return millis == SKIPPED
+        ? "not checked: assertion budget exhausted"
+        : "timed out after " + millis + " ms";
+  }
+
+  private final long leafMillis;
+  private final long assertionMillis;
+
+  private TimeBudget(long leafMillis, long assertionMillis) {
+    this.leafMillis = leafMillis;
+    this.assertionMillis = assertionMillis;
+  }
+
+  /**
+   * The assertion running on a thread.
+   */
+  private static final class Assertion {
+    /**
+     * The thread's budget or {@code null} if it doesn't have one.
+     */
+    private TimeBudget budget;
+    /**
+     * How many matches or descriptions deep we are. Only the outermost
+     * one sets the deadline.
+     */
+    private int depth;
+    private long deadline;
+    /**
+     * The path to the value we're about to check or {@code null} if we
+     * aren't in a {@link Walker}.
+     */
+    private Path at;
+    /**
+     * How long each leaf that timed out took at each path or
+     * {@link #SKIPPED}, shared with {@link #fork}s. {@code null} until a
+     * leaf runs out of time.
+     */
+    private Map<Position, Long> timedOut;
+
+    private Map<Position, Long> timedOut() {
+      if (timedOut == null) {
+        timedOut = Collections.synchronizedMap(new HashMap<>());
+      }
+      return timedOut;
+    }
+
+    private Long remembered(Position position) {
+      Map<Position, Long> leaves = timedOut;
+      return leaves == null ? null : leaves.get(position);
+    }
+
+    private void remember(Position position, long millis) {
+      if (position != null) {
+        timedOut().put(position, millis);
+      }
+    }
+  }
+
+  /**
+   * A leaf and the path to the value it checked. Hamcrest matchers don't
+   * override {@link Object#equals} so we compare them by identity.
+   */
+  private static final class Position {
+    private final Matcher<?> matcher;
+    private final Path path;
+
+    Position(Matcher<?> matcher, Path path) {
+      this.matcher = matcher;
+      this.path = path;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (false == o instanceof Position) {
+        return false;
+      }
+      Position other = (Position) o;
+      return matcher == other.matcher && path.equals(other.path);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * System.identityHashCode(matcher) + path.hashCode();
+    }
+  }
+
+  /**
+   * The keys and indices from the root of the actual value to one of
+   * the values in it.
+   */
+  private static final class Path {
+    private final Path parent;
+    private final Object key;
+    private final int depth;
+    private final int hash;
+
+    Path(Path parent, Object key) {
+      this.parent = parent;
+      this.key = key;
+      this.depth = parent == null ? 0 : parent.depth + 1;
+      this.hash = 31 * (parent == null ? 0 : parent.hash) + Objects.hashCode(key);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (false == o instanceof Path) {
+        return false;
+      }
+      Path other = (Path) o;
+      if (depth != other.depth || hash != other.hash) {
+        return false;
+      }
+      // Walk both paths together rather than recursing once per level
+      for (Path p = this; p != other; p = p.parent, other = other.parent) {
+        if (false == Objects.equals(p.key, other.key)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+}
@@ -0,0 +1,1346 @@
+/*
+ * Copyright 2021 Nikolas Everett
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.github.nik9000.mapmatcher;
+
+import static io.github.nik9000.mapmatcher.MapMatcher.describeEntry;
+import static io.github.nik9000.mapmatcher.MapMatcher.describeEntryUnexepected;
+import static io.github.nik9000.mapmatcher.MapMatcher.describeEntryUnexepectedButOk;
+import static io.github.nik9000.mapmatcher.MapMatcher.matcherForConverted;
+import static io.github.nik9000.mapmatcher.MapMatcher.matchesValue;
+import static io.github.nik9000.mapmatcher.Nodes.INDENT;
+import static io.github.nik9000.mapmatcher.Nodes.describeEntryMissing;
+import static io.github.nik9000.mapmatcher.Nodes.describeEntryValue;
+import static io.github.nik9000.mapmatcher.Nodes.describeMatcher;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.emptyMap;
+import static org.hamcrest.Matchers.equalTo;
+
+import java.lang.invoke.MethodHandle;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import org.hamcrest.Description;
+import org.hamcrest.StringDescription;
+
+/**
+ * Walks trees of {@link MapMatcher}s and {@link ListMatcher}s, and the
+ * values they match, with an explicit stack rather than by recursing.
+ * So the depth of the documents we can match and describe is limited by
+ * the heap rather than by the thread's stack.
+ * <p>
+ * Each walk keeps one frame per {@linkplain MapMatcher} or
+ * {@linkplain ListMatcher} that it is inside of. Frames are stored in
+ * parallel arrays: {@code frames} holds the matcher, the actual value,
+ * and two slots of per walk state, and {@code ints} holds the position
+ * of the next child, the key width, and how far we've read the actual
+ * list's {@link Iterator} if it isn't {@link RandomAccess}. Other
+ * {@link org.hamcrest.Matcher}s are leaves.
+ * <p>
+ * Before pushing a frame for a {@linkplain MapMatcher} or
+ * {@linkplain ListMatcher} made only of plain values we check if the
+ * actual value is a plain {@link Map} or {@link List} that is
+ * {@link Object#equals} to a view of its expected values.
+ * Most such subtrees match so that one call is usually all we need.
+ * <p>
+ * While matching, frames for {@linkplain MapMatcher#adaptive adaptive}
+ * {@linkplain MapMatcher}s hold the order to check entries in and
+ * use the cursor to remember how many values we'd visited when we
+ * started checking the current entry.
+ * <p>
+ * {@link #matchesUnconverted} walks plain {@link Map}s and {@link List}s
+ * on both sides instead, keeping the expected value in the matcher's
+ * slot.
+ * <p>
+ * Each thread reuses one {@linkplain Walker} for matching. So once the
+ * matchers' caches are warm matching plain {@link Map}s and
+ * {@link RandomAccess} {@link List}s against plain values and
+ * {@link Leaf}s allocates nothing. Leaves are tested against the
+ * {@linkplain Adapters#toJava plain} version of adapted values and
+ * converting those does allocate.
+ */
+final class Walker {
+  private static final int NODE = 0;
+  private static final int ACTUAL = 1;
+  private static final int EXTRA = 2;
+  private static final int FORMAT = 3;
+  private static final int OBJECT_STRIDE = 4;
+
+  private static final int POSITION = 0;
+  private static final int WIDTH = 1;
+  private static final int CURSOR = 2;
+  /**
+   * {@code 1} if the frame reads the properties of beans because its
+   * matcher or one of the matchers it is nested in is
+   * {@linkplain MapMatcher#forBeans for beans}.
+   */
+  private static final int BEANS = 3;
+  /**
+   * The index in the actual list of the first item of a list frame that
+   * matches a {@linkplain ListMatcher#asSuffix suffix}.
+   */
+  private static final int OFFSET = 4;
+  private static final int INT_STRIDE = 5;
+
+  private static final int INITIAL_FRAMES = 8;
+  /**
+   * The most frames a reused {@linkplain Walker} keeps room for between
+   * matches. Walking deeper documents grows the stack past this but we
+   * shrink it back afterwards so one deep document doesn't pin a big
+   * stack to the thread.
+   */
+  private static final int MAX_RETAINED_FRAMES = 256;
+
+  /**
+   * The {@linkplain Walker} each thread reuses for matching so matching
+   * plain {@link Map}s and {@link RandomAccess} {@link List}s doesn't
+   * allocate anything.
+   */
+  private static final ThreadLocal<Walker> MATCHING = ThreadLocal.withInitial(Walker::new);
+
+  /**
+   * The deepest {@linkplain MapMatcher} or {@linkplain ListMatcher} made
+   * only of plain values that we match with a single
+   * {@link Object#equals} call. {@link Object#equals} recurses so we walk
+   * deeper ones until we get this close to their leaves.
+   */
+  static final int MAX_LITERAL_DEPTH = 64;
+
+  /**
+   * When {@linkplain ParallelRendering rendering in parallel} split the
+   * children into this many ranges per thread so threads that finish
+   * early can pick up more work.
+   */
+  private static final int RANGES_PER_THREAD = 4;
+  /**
+   * The fewest children we'll describe in one range.
+   */
+  private static final int MIN_RANGE = 256;
+
+  private Object[] frames = new Object[INITIAL_FRAMES * OBJECT_STRIDE];
+  private int[] ints = new int[INITIAL_FRAMES * INT_STRIDE];
+  private int size;
+  /**
+   * The number of expected values we've visited. See {@link MatchStats}.
+   */
+  private int visited;
+  /**
+   * Is this thread's reused {@linkplain Walker} in the middle of a match?
+   * Leaf matchers can match with {@linkplain MapMatcher}s of their own so
+   * matches can nest.
+   */
+  private boolean busy;
+  /**
+   * The {@link DocumentIndex} that remembers which {@linkplain MapMatcher}s
+   * and {@linkplain ListMatcher}s matched which values or {@code null} if
+   * we aren't matching against one.
+   */
+  private DocumentIndex index;
+  /**
+   * The actual value each frame is matching before we read it as a
+   * {@link Map} or {@link List}, only kept while matching against a
+   * {@link #index}.
+   */
+  private Object[] sources;
+  /**
+   * The {@linkplain TimeBudget#at path} to each frame's actual value, only
+   * kept while leaves are on a {@link TimeBudget}.
+   */
+  private Object[] paths;
+  /**
+   * The path to the value we're about to check, only kept while leaves
+   * are on a {@link TimeBudget}.
+   */
+  private Object at;
+
+  private Walker() {}
+
+  /**
+   * A {@linkplain Walker} to match with. Give it back with
+   * {@link #release}.
+   */
+  private static Walker forMatching() {
+    Walker walker = MATCHING.get();
+    if (walker.busy) {
+      return new Walker();
+    }
+    walker.busy = true;
+    return walker;
+  }
+
+  /**
+   * Clear this {@linkplain Walker} so the thread can reuse it.
+   */
+  private void release() {
+    if (frames.length > MAX_RETAINED_FRAMES * OBJECT_STRIDE) {
+      frames = new Object[INITIAL_FRAMES * OBJECT_STRIDE];
+      ints = new int[INITIAL_FRAMES * INT_STRIDE];
+    } else {
+      Arrays.fill(frames, 0, size * OBJECT_STRIDE, null);
+    }
+    size = 0;
+    visited = 0;
+    busy = false;
+    index = null;
+    sources = null;
+    paths = null;
+    at = null;
+  }
+
+  /**
+   * Keep the path to each frame's actual value, starting from the path
+   * to the value we're about to check, so a {@link TimeBudget} can
+   * remember the leaves that ran out of time at each path.
+   */
+  private void trackPaths() {
+    paths = new Object[frames.length / OBJECT_STRIDE];
+    at = TimeBudget.position();
+  }
+
+  /**
+   * Record that we're about to check the value at {@code key} in the top
+   * frame's actual value.
+   */
+  private void at(Object key) {
+    at = TimeBudget.at(paths[size - 1], key);
+  }
+
+  private void push(Object node, Object actual, Object extra, Object format, int width) {
+    if (size * OBJECT_STRIDE == frames.length) {
+      frames = Arrays.copyOf(frames, frames.length * 2);
+      ints = Arrays.copyOf(ints, ints.length * 2);
+      if (sources != null) {
+        sources = Arrays.copyOf(sources, sources.length * 2);
+      }
+      if (paths != null) {
+        paths = Arrays.copyOf(paths, paths.length * 2);
+      }
+    }
+    int o = size * OBJECT_STRIDE;
+    frames[o + NODE] = node;
+    frames[o + ACTUAL] = actual;
+    frames[o + EXTRA] = extra;
+    frames[o + FORMAT] = format;
+    int i = size * INT_STRIDE;
+    ints[i + POSITION] = 0;
+    ints[i + WIDTH] = width;
+    ints[i + CURSOR] = 0;
+    ints[i + BEANS] = readsBeans(node) ? 1 : 0;
+    ints[i + OFFSET] = 0;
+    if (paths != null) {
+      paths[size] = at;
+    }
+    size++;
+  }
+
+  private void pop() {
+    size--;
+    Arrays.fill(frames, size * OBJECT_STRIDE, (size + 1) * OBJECT_STRIDE, null);
+    if (sources != null) {
+      sources[size] = null;
+    }
+    if (paths != null) {
+      paths[size] = null;
+    }
+  }
+
+  /**
+   * Would a frame for {@code node} pushed now read beans? It does if
+   * {@code node} is for beans or the top frame reads them.
+   */
+  private boolean readsBeans(Object node) {
+    return (size > 0 && ints[(size - 1) * INT_STRIDE + BEANS] != 0) || isForBeans(node);
+  }
+
+  private static boolean isForBeans(Object node) {
+    if (node instanceof MapMatcher) {
+      return ((MapMatcher) node).readsBeans();
+    }
+    return node instanceof ListMatcher && ((ListMatcher) node).readsBeans();
+  }
+
+  private Object top(int slot) {
+    return frames[(size - 1) * OBJECT_STRIDE + slot];
+  }
+
+  private int width() {
+    return ints[(size - 1) * INT_STRIDE + WIDTH];
+  }
+
+  /**
+   * The item at {@code index} of the top frame's actual list. Lists that
+   * aren't {@link RandomAccess} are read with the {@link Iterator} in
+   * {@link #EXTRA} so {@code index} must be larger than the last one.
+   */
+  private Object item(int index) {
+    Object iterator = top(EXTRA);
+    if (iterator == null) {
+      return ((List<?>) top(ACTUAL)).get(index);
+    }
+    Iterator<?> value = (Iterator<?>) iterator;
+    int c = (size - 1) * INT_STRIDE + CURSOR;
+    Object item;
+    do {
+      item = value.next();
+    } while (ints[c]++ < index);
+    return item;
+  }
+
+  /**
+   * The position of the next child of the top frame, advancing it.
+   */
+  private int next() {
+    return ints[(size - 1) * INT_STRIDE + POSITION]++;
+  }
+
+  /**
+   * Does {@code actual} match {@code expected}, the output of
+   * {@link MapMatcher#convert}?
+   */
+  static boolean matches(Object expected, Object actual) {
+    return matches(expected, actual, null);
+  }
+
+  /**
+   * Does {@code actual} match {@code expected}, the output of
+   * {@link MapMatcher#convert}, remembering the results of matching
+   * {@linkplain MapMatcher}s and {@linkplain ListMatcher}s in
+   * {@code index}?
+   */
+  static boolean matches(Object expected, Object actual, DocumentIndex index) {
+    Walker walker = forMatching();
+    if (index != null) {
+      walker.index = index;
+      walker.sources = new Object[walker.frames.length / OBJECT_STRIDE];
+    }
+    MatchStats stats = MatchStats.current();
+    long start = stats == null ? 0 : stats.begin();
+    boolean budgeted = TimeBudget.beginMatch();
+    if (budgeted) {
+      walker.trackPaths();
+    }
+    boolean matched = false;
+    try {
+      matched = walker.match(expected, actual);
+      return matched;
+    } finally {
+      if (budgeted) {
+        TimeBudget.endMatch(matched);
+      }
+      if (stats != null) {
+        stats.endMatch(start, walker.visited);
+      }
+      walker.release();
+    }
+  }
+
+  private boolean match(Object expected, Object actual) {
+    if (false == enterMatch(expected, actual)) {
+      return false;
+    }
+    while (size > 0) {
+      Object node = top(NODE);
+      int i = next();
+      Object expectedChild;
+      Object actualChild;
+      if (node instanceof MapMatcher) {
+        MapMatcher map = (MapMatcher) node;
+        int[] order = (int[]) top(FORMAT);
+        if (order != null) {
+          int c = (size - 1) * INT_STRIDE + CURSOR;
+          if (i > 0) {
+            map.entryOrder().checked(order[i - 1], visited - ints[c], true);
+          }
+          if (i == map.size()) {
+            map.entryOrder().finished();
+            matched();
+            continue;
+          }
+          ints[c] = visited;
+          i = order[i];
+        } else if (i == map.size()) {
+          matched();
+          continue;
+        }
+        Object accessors = top(EXTRA);
+        if (accessors == null) {
+          Map<?, ?> actualMap = (Map<?, ?>) top(ACTUAL);
+          Object key = map.key(i);
+          actualChild = actualMap.get(key);
+          if (actualChild == null && false == actualMap.containsKey(key)) {
+            return failed();
+          }
+        } else {
+          MethodHandle accessor = ((MethodHandle[]) accessors)[i];
+          if (accessor == null) {
+            return failed();
+          }
+          actualChild = Beans.read(accessor, top(ACTUAL));
+          if (actualChild == Beans.INACCESSIBLE) {
+            return failed();
+          }
+        }
+        expectedChild = map.expected(i);
+        if (paths != null) {
+          at(map.key(i));
+        }
+      } else {
+        ListMatcher list = (ListMatcher) node;
+        if (i == list.checkedCount()) {
+          matched();
+          continue;
+        }
+        int index = list.checkedIndex(i);
+        actualChild = item(index);
+        expectedChild = list.expected(index);
+        if (paths != null) {
+          at(index + ints[(size - 1) * INT_STRIDE + OFFSET]);
+        }
+      }
+      if (false == enterMatch(expectedChild, actualChild)) {
+        return failed();
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Pop the top frame, which matched.
+   */
+  private void matched() {
+    if (index != null) {
+      index.remember(top(NODE), sources[size - 1], true);
+    }
+    pop();
+  }
+
+  /**
+   * Record that the entries {@linkplain MapMatcher#adaptive adaptive}
+   * {@link MapMatcher}s on the stack are checking didn't match and, if we
+   * are matching against a {@link DocumentIndex}, that none of the
+   * frames on the stack matched.
+   *
+   * @return {@code false}
+   */
+  private boolean failed() {
+    for (int f = size - 1; f >= 0; f--) {
+      if (index != null) {
+        index.remember(frames[f * OBJECT_STRIDE + NODE], sources[f], false);
+      }
+      Object order = frames[f * OBJECT_STRIDE + FORMAT];
+      if (order instanceof int[]) {
+        int i = f * INT_STRIDE;
+        EntryOrder entryOrder = ((MapMatcher) frames[f * OBJECT_STRIDE + NODE]).entryOrder();
+        entryOrder.checked(((int[]) order)[ints[i + POSITION] - 1], visited - ints[i + CURSOR],
+            false);
+        entryOrder.finished();
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Does {@code actual} match {@code expected}, a value that we haven't
+   * passed through {@link MapMatcher#convert}? This is the same as
+   * {@code matches(convert(expected), actual)} but it walks plain
+   * {@link Map}s and {@link List}s on both sides together without
+   * building any matchers. And it skips values that are the same
+   * reference on both sides.
+   */
+  static boolean matchesUnconverted(Object expected, Object actual) {
+    Walker walker = forMatching();
+    MatchStats stats = MatchStats.current();
+    long start = stats == null ? 0 : stats.begin();
+    boolean budgeted = TimeBudget.beginMatch();
+    if (budgeted) {
+      walker.trackPaths();
+    }
+    boolean matched = false;
+    try {
+      matched = walker.matchUnconverted(expected, actual);
+      return matched;
+    } finally {
+      if (budgeted) {
+        TimeBudget.endMatch(matched);
+      }
+      if (stats != null) {
+        stats.endMatch(start, walker.visited);
+      }
+      walker.release();
+    }
+  }
+
+  private boolean matchUnconverted(Object expected, Object actual) {
+    if (false == enterUnconverted(expected, actual)) {
+      return false;
+    }
+    while (size > 0) {
+      // EXTRA is an iterator over the expected entries or items
+      Iterator<?> expectedChildren = (Iterator<?>) top(EXTRA);
+      if (false == expectedChildren.hasNext()) {
+        pop();
+        continue;
+      }
+      Object expectedChild;
+      Object actualChild;
+      if (top(NODE) instanceof Map) {
+        Map.Entry<?, ?> entry = (Map.Entry<?, ?>) expectedChildren.next();
+        Map<?, ?> actualMap = (Map<?, ?>) top(ACTUAL);
+        actualChild = actualMap.get(entry.getKey());
+        if (actualChild == null && false == actualMap.containsKey(entry.getKey())) {
+          return false;
+        }
+        expectedChild = entry.getValue();
+        if (paths != null) {
+          at(entry.getKey());
+        }
+      } else {
+        expectedChild = expectedChildren.next();
+        // FORMAT is an iterator over the actual items
+        actualChild = ((Iterator<?>) top(FORMAT)).next();
+        int i = next();
+        if (paths != null) {
+          at(i);
+        }
+      }
+      if (false == enterUnconverted(expectedChild, actualChild)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Push a frame to match {@code actual} against an unconverted
+   * {@link Map} or {@link List} or match it right away.
+   *
+   * @return {@code false} if we already know {@code actual} doesn't match
+   */
+  private boolean enterUnconverted(Object expected, Object actual) {
+    visited++;
+    if (expected == actual) {
+      return true;
+    }
+    if (expected instanceof Map && actual instanceof Map) {
+      Map<?, ?> expectedMap = (Map<?, ?>) expected;
+      if (expectedMap.size() != ((Map<?, ?>) actual).size()) {
+        return false;
+      }
+      push(expected, actual, expectedMap.entrySet().iterator(), null, 0);
+      return true;
+    }
+    if (expected instanceof List && actual instanceof List) {
+      List<?> expectedList = (List<?>) expected;
+      List<?> actualList = (List<?>) actual;
+      if (expectedList.size() != actualList.size()) {
+        return false;
+      }
+      push(expected, actual, expectedList.iterator(), actualList.iterator(), 0);
+      return true;
+    }
+    // Beans, buffers, adapted values, and leaves
+    Object converted = convert(expected);
+    if (converted instanceof MapMatcher || converted instanceof ListMatcher) {
+      return matches(converted, actual);
+    }
+    return matchesValue(converted, actual);
+  }
+
+  /**
+   * Push a frame to match {@code actual} against a {@link MapMatcher} or
+   * {@link ListMatcher} or match it right away against anything else.
+   *
+   * @return {@code false} if we already know {@code actual} doesn't match
+   */
+  private boolean enterMatch(Object expected, Object actual) {
+    visited++;
+    if (index == null || false == (expected instanceof MapMatcher
+        || expected instanceof ListMatcher)) {
+      return enterNode(expected, actual);
+    }
+    Boolean known = index.known(expected, actual);
+    if (known != null) {
+      return known;
+    }
+    int before = size;
+    boolean entered = enterNode(expected, actual);
+    if (size > before) {
+      // We'll know if it matched when we pop the frame
+      sources[size - 1] = actual;
+    } else {
+      index.remember(expected, actual, entered);
+    }
+    return entered;
+  }
+
+  /**
+   * The body of {@link #enterMatch}.
+   */
+  private boolean enterNode(Object expected, Object actual) {
+    if (expected instanceof MapMatcher) {
+      MapMatcher map = (MapMatcher) expected;
+      if (isLiteral(map.literalDepth()) && map.equalsLiteral(actual)) {
+        return true;
+      }
+      Map<?, ?> actualMap = index == null ? mapView(actual) : index.asMap(actual);
+      if (actualMap != null) {
+        if (map.isExtraOk() ? actualMap.size() < map.size() : actualMap.size() != map.size()) {
+          return false;
+        }
+        push(map, actualMap, null, entryOrder(map), 0);
+        return true;
+      }
+      if (false == (readsBeans(map) && Beans.isBean(actual))) {
+        return false;
+      }
+      Class<?> type = actual.getClass();
+      if (false == map.isExtraOk() && map.unexpectedProperties(type).length > 0) {
+        return false;
+      }
+      push(map, actual, map.beanAccessors(type), entryOrder(map), 0);
+      return true;
+    }
+    if (expected instanceof ListMatcher) {
+      ListMatcher list = (ListMatcher) expected;
+      if (isLiteral(list.literalDepth()) && list.equalsLiteral(actual)) {
+        return true;
+      }
+      List<?> actualList = index == null ? ListMatcher.asList(actual) : index.asList(actual);
+      if (actualList == null) {
+        return false;
+      }
+      if (list.window() != ListMatcher.WHOLE) {
+        return enterWindow(list, actualList);
+      }
+      if (actualList.size() != list.size()) {
+        return false;
+      }
+      if (list.isKeyed()) {
+        Object[] joined = KeyedJoin.match(list, actualList, readsBeans(list));
+        if (joined == null) {
+          return false;
+        }
+        push(list, Arrays.asList(joined), null, null, 0);
+        return true;
+      }
+      push(list, actualList, actualList instanceof RandomAccess ? null : actualList.iterator(),
+          null, 0);
+      return true;
+    }
+    return matchesValue(expected, actual);
+  }
+
+  /**
+   * Can we match a matcher {@code depth} levels deep with a single
+   * {@link Object#equals} call? If it doesn't match we still walk it so
+   * we compare leaves exactly as we would have without the shortcut.
+   */
+  private static boolean isLiteral(int depth) {
+    return depth >= 0 && depth <= MAX_LITERAL_DEPTH;
+  }
+
+  /**
+   * {@code actual} as a {@link Map} or {@code null} if it isn't a
+   * {@link Map} and no {@link ActualAdapter} reads it as one. Beans
+   * aren't {@link Map}s here. We read their properties directly.
+   */
+  static Map<?, ?> mapView(Object actual) {
+    return actual instanceof Map ? (Map<?, ?>) actual : Adapters.asMap(actual);
+  }
+
+  /**
+   * Match a {@link ListMatcher} against part of {@code actual}, pushing a
+   * frame for the part if it is a prefix or suffix.
+   *
+   * @return {@code false} if we already know {@code actual} doesn't match
+   */
+  private boolean enterWindow(ListMatcher list, List<?> actual) {
+    int n = actual.size();
+    int m = list.size();
+    if (n < m) {
+      return false;
+    }
+    if (list.window() == ListMatcher.SUB_LIST) {
+      return SubList.find(list, actual) >= 0;
+    }
+    List<?> window = list.window() == ListMatcher.PREFIX
+        ? actual.subList(0, m)
+        : actual.subList(n - m, n);
+    push(list, window, window instanceof RandomAccess ? null : window.iterator(), null, 0);
+    if (list.window() == ListMatcher.SUFFIX) {
+      ints[(size - 1) * INT_STRIDE + OFFSET] = n - m;
+    }
+    return true;
+  }
+
+  /**
+   * The order to check {@code map}'s entries in while matching or
+   * {@code null} to check them in the order they were added.
+   */
+  private static int[] entryOrder(MapMatcher map) {
+    EntryOrder order = map.entryOrder();
+    return order == null ? null : order.order();
+  }
+
+  /**
+   * The width of the keys when describing {@code node} against
+   * {@code actual}. That's the widest key in {@code node} and all of the
+   * {@link MapMatcher}s and {@link ListMatcher}s inside of it, less
+   * {@link Nodes#INDENT} for each level they are nested.
+   */
+  static int keyWidth(Object node, Object actual) {
+    Walker walker = new Walker();
+    MatchStats stats = MatchStats.current();
+    if (stats == null) {
+      return walker.findKeyWidth(node, actual);
+    }
+    long start = stats.begin();
+    try {
+      return walker.findKeyWidth(node, actual);
+    } finally {
+      stats.endRender(start, walker.visited);
+    }
+  }
+
+  private int findKeyWidth(Object node, Object actual) {
+    push(node, actual, null, null, 0);
+    int max = 0;
+    while (size > 0) {
+      Object top = top(NODE);
+      Object topActual = top(ACTUAL);
+      int depthIndent = width();
+      // We pop before pushing the children so they can't read this from the stack
+      boolean beans = ints[(size - 1) * INT_STRIDE + BEANS] != 0;
+      pop();
+      if (top instanceof MapMatcher) {
+        MapMatcher map = (MapMatcher) top;
+        Map<?, ?> actualMap = map.asMap(topActual, beans);
+        if (actualMap == null) {
+          actualMap = emptyMap();
+        }
+        for (Object k : actualMap.keySet()) {
+          max = Math.max(max, k.toString().length() - depthIndent);
+        }
+        for (int i = 0; i < map.size(); i++) {
+          max = Math.max(max, map.key(i).toString().length() - depthIndent);
+          max = Math.max(max, enterKeyWidth(map.expected(i), actualMap.get(map.key(i)),
+              depthIndent, beans));
+        }
+      } else {
+        ListMatcher list = (ListMatcher) top;
+        List<?> actualList = ListMatcher.asList(topActual);
+        if (actualList == null) {
+          actualList = emptyList();
+        }
+        if (list.window() != ListMatcher.WHOLE) {
+          SubList sub = SubList.align(list, actualList);
+          List<?> items = sub.actual();
+          max = Math.max(max, Integer.toString(Math.max(items.size(),
+              sub.offset() + list.size())).length() - depthIndent);
+          for (int i = 0; i < list.size(); i++) {
+            int a = sub.offset() + i;
+            Object item = a < items.size() ? items.get(a) : null;
+            max = Math.max(max, enterKeyWidth(list.expected(i), item, depthIndent, beans));
+          }
+          continue;
+        }
+        if (list.isKeyed()) {
+          KeyedJoin join = KeyedJoin.join(list, actualList, beans);
+          max = Math.max(max, join.keyWidth() - depthIndent);
+          for (int i = 0; i < list.size(); i++) {
+            Object item = join.found(i) ? join.actual(i) : null;
+            max = Math.max(max, enterKeyWidth(list.expected(i), item, depthIndent, beans));
+          }
+          continue;
+        }
+        Iterator<?> value = actualList instanceof RandomAccess ? null : actualList.iterator();
+        int read = 0;
+        max = Math.max(max, Integer.toString(list.size()).length() - depthIndent);
+        for (int i = 0; i < list.checkedCount(); i++) {
+          int index = list.checkedIndex(i);
+          Object item = null;
+          if (index < actualList.size()) {
+            if (value == null) {
+              item = actualList.get(index);
+            } else {
+              while (read++ <= index) {
+                item = value.next();
+              }
+            }
+          }
+          max = Math.max(max, enterKeyWidth(list.expected(index), item, depthIndent, beans));
+        }
+      }
+    }
+    return max;
+  }
+
+  /**
+   * Push a frame to find the key width of a {@link MapMatcher} or
+   * {@link ListMatcher} or find the key width of any other matcher.
+   *
+   * @param beans does the parent frame read beans?
+   * @return the width of other matchers
+   */
+  private int enterKeyWidth(Object expected, Object actual, int depthIndent, boolean beans) {
+    visited++;
+    if (expected instanceof MapMatcher || expected instanceof ListMatcher) {
+      push(expected, actual, null, null, depthIndent + INDENT);
+      ints[(size - 1) * INT_STRIDE + BEANS] = beans || isForBeans(expected) ? 1 : 0;
+      return 0;
+    }
+    if (expected instanceof JsonMatcher) {
+      return ((JsonMatcher) expected).keyWidthFor(actual) - INDENT - depthIndent;
+    }
+    return 0;
+  }
+
+  /**
+   * Describe {@code node} with its first level of keys {@code keyWidth}
+   * wide.
+   */
+  static void describeTo(Object node, int keyWidth, Description description) {
+    Walker walker = new Walker();
+    MatchStats stats = MatchStats.current();
+    if (stats == null) {
+      walker.describe(node, keyWidth, description);
+      return;
+    }
+    long start = stats.begin();
+    try {
+      walker.describe(node, keyWidth, description);
+    } finally {
+      stats.endRender(start, walker.visited);
+    }
+  }
+
+  private void describe(Object node, int keyWidth, Description description) {
+    enterDescribeTo(node, keyWidth, description);
+    while (size > 0) {
+      Object top = top(NODE);
+      int width = width();
+      int i = next();
+      Object key;
+      Object expected;
+      if (top instanceof MapMatcher) {
+        MapMatcher map = (MapMatcher) top;
+        if (i == map.size()) {
+          pop();
+          continue;
+        }
+        key = map.key(i);
+        expected = map.expected(i);
+      } else {
+        ListMatcher list = (ListMatcher) top;
+        if (i == list.checkedCount()) {
+          pop();
+          continue;
+        }
+        int index = list.checkedIndex(i);
+        key = list.isKeyed() ? list.keyIndex().key(index) : index;
+        expected = list.expected(index);
+      }
+      visited++;
+      if (expected instanceof MapMatcher || expected instanceof ListMatcher) {
+        describeEntry(width, key, description);
+        enterDescribeTo(expected, width + INDENT, description);
+      } else {
+        describeMatcher(width, key, matcherForConverted(expected), description);
+      }
+    }
+  }
+
+  private void enterDescribeTo(Object node, int keyWidth, Description description) {
+    if (node instanceof MapMatcher) {
+      description.appendText(((MapMatcher) node).size() == 0
+          ? "an empty map" : "a map containing");
+    } else {
+      ((ListMatcher) node).describeHeader(description);
+    }
+    push(node, null, null, null, keyWidth);
+  }
+
+  /**
+   * Describe how {@code actual} matches {@code node}.
+   *
+   * @param actual a {@link Map} if {@code node} is a {@link MapMatcher}
+   *        and a {@link List} if it is a {@link ListMatcher}
+   */
+  static void describeMismatch(Object node, int keyWidth, Object actual,
+      Description description) {
+    Walker walker = new Walker();
+    MatchStats stats = MatchStats.current();
+    long start = stats == null ? 0 : stats.begin();
+    boolean budgeted = TimeBudget.beginDescribe();
+    if (budgeted) {
+      walker.trackPaths();
+    }
+    try {
+      walker.describe(node, keyWidth, actual, description);
+    } finally {
+      if (budgeted) {
+        TimeBudget.endDescribe();
+      }
+      if (stats != null) {
+        stats.endRender(start, walker.visited);
+      }
+    }
+  }
+
+  private void describe(Object node, int keyWidth, Object actual,
+      Description description) {
+    enterDescribeMismatch(node, keyWidth, actual, description);
+    ForkJoinPool pool = ParallelRendering.pool();
+    if (pool != null && description instanceof StringDescription) {
+      int children = splittableChildren();
+      if (children >= ParallelRendering.MIN_CHILDREN) {
+        describeInParallel(pool, children, description);
+      }
+    }
+    describeUntil(Integer.MAX_VALUE, description);
+  }
+
+  /**
+   * The number of children of the root frame if we can describe ranges
+   * of them independently or {@code 0} if we can't.
+   */
+  private int splittableChildren() {
+    Object root = frames[NODE];
+    if (root instanceof MapMatcher) {
+      return ((MapMatcher) root).size();
+    }
+    Object extra = frames[EXTRA];
+    if (extra instanceof ListDiff) {
+      return ((ListDiff) extra).size();
+    }
+    // Lists that aren't RandomAccess are read with an iterator
+    return extra == null ? ((ListMatcher) root).checkedCount() : 0;
+  }
+
+  /**
+   * Describe the root frame's first {@code children} children in ranges
+   * on {@code pool}, each with its own {@linkplain Walker} and
+   * {@linkplain MatchStats#fork fork} of this thread's stats, and append
+   * the results in order.
+   */
+  private void describeInParallel(ForkJoinPool pool, int children, Description description) {
+    int ranges = Math.max(1, Math.min(pool.getParallelism() * RANGES_PER_THREAD,
+        children / MIN_RANGE));
+    Walker[] walkers = new Walker[ranges];
+    MatchStats[] stats = new MatchStats[ranges];
+    List<ForkJoinTask<String>> tasks = new ArrayList<>(ranges);
+    for (int r = 0; r < ranges; r++) {
+      int from = (int) ((long) children * r / ranges);
+      int to = (int) ((long) children * (r + 1) / ranges);
+      Walker walker = new Walker();
+      walker.push(frames[NODE], frames[ACTUAL], frames[EXTRA], frames[FORMAT], ints[WIDTH]);
+      walker.ints[POSITION] = from;
+      if (paths != null) {
+        walker.paths = new Object[INITIAL_FRAMES];
+        walker.paths[0] = paths[0];
+      }
+      walkers[r] = walker;
+      MatchStats rangeStats = MatchStats.fork();
+      stats[r] = rangeStats;
+      Object budget = TimeBudget.fork();
+      tasks.add(pool.submit(() -> MatchStats.run(rangeStats, () -> TimeBudget.run(budget, () -> {
+        Description range = new StringDescription();
+        walker.describeUntil(to, range);
+        return range.toString();
+      }))));
+    }
+    MatchStats current = MatchStats.current();
+    for (int r = 0; r < ranges; r++) {
+      description.appendText(tasks.get(r).join());
+      visited += walkers[r].visited;
+      if (current != null) {
+        current.merge(stats[r]);
+      }
+    }
+    ints[POSITION] = children;
+  }
+
+  /**
+   * Describe until the stack is empty or the root frame reaches its
+   * {@code end}th child.
+   */
+  private void describeUntil(int end, Description description) {
+    while (size > 0) {
+      if (size == 1 && ints[POSITION] == end) {
+        return;
+      }
+      Object top = top(NODE);
+      int width = width();
+      String format = (String) top(FORMAT);
+      int i = next();
+      if (top instanceof MapMatcher) {
+        MapMatcher map = (MapMatcher) top;
+        Map<?, ?> actualMap = (Map<?, ?>) top(ACTUAL);
+        if (i == map.size()) {
+          pop();
+          describeUnexpected(map, actualMap, width, format, description);
+          continue;
+        }
+        visited++;
+        Object key = map.key(i);
+        describeEntry(width, String.format(Locale.ROOT, format, key), description);
+        if (false == actualMap.containsKey(key)) {
+          describeEntryMissing(map.matcher(i), description);
+          continue;
+        }
+        if (paths != null) {
+          at(key);
+        }
+        describeValue(map.expected(i), actualMap.get(key), width, description);
+      } else {
+        ListMatcher list = (ListMatcher) top;
+        if (top(EXTRA) instanceof ListDiff) {
+          describeRun((ListDiff) top(EXTRA), i, list, width, format, description);
+          continue;
+        }
+        if (top(EXTRA) instanceof KeyedJoin) {
+          describeKeyed((KeyedJoin) top(EXTRA), i, list, width, format, description);
+          continue;
+        }
+        if (top(EXTRA) instanceof SubList) {
+          describeWindow((SubList) top(EXTRA), i, list, width, format, description);
+          continue;
+        }
+        List<?> actualList = (List<?>) top(ACTUAL);
+        if (i == list.checkedCount()) {
+          pop();
+          describeUnexpected(list, actualList, width, format, description);
+          continue;
+        }
+        visited++;
+        int index = list.checkedIndex(i);
+        describeEntry(width, String.format(Locale.ROOT, format, index), description);
+        if (index >= actualList.size()) {
+          describeEntryMissing(list.matcher(index), description);
+          continue;
+        }
+        Object item = item(index);
+        if (paths != null) {
+          at(index);
+        }
+        describeValue(list.expected(index), item, width, description);
+      }
+    }
+  }
+
+  private void enterDescribeMismatch(Object node, int keyWidth, Object actual,
+      Description description) {
+    if (node instanceof MapMatcher) {
+      MapMatcher map = (MapMatcher) node;
+      Map<?, ?> actualMap = (Map<?, ?>) actual;
+      description.appendText(map.size() == 0 ? "an empty map" : "a map containing");
+      int maxKeyWidth = -1;
+      for (int i = 0; i < map.size(); i++) {
+        maxKeyWidth = Math.max(maxKeyWidth, map.key(i).toString().length());
+      }
+      for (Object k : actualMap.keySet()) {
+        maxKeyWidth = Math.max(maxKeyWidth, k.toString().length());
+      }
+      if (maxKeyWidth < 0) {
+        maxKeyWidth = keyWidth;
+      }
+      push(map, actualMap, null, "%" + maxKeyWidth + "s", keyWidth);
+      return;
+    }
+    ListMatcher list = (ListMatcher) node;
+    List<?> actualList = (List<?>) actual;
+    list.describeHeader(description);
+    if (list.window() != ListMatcher.WHOLE) {
+      SubList sub = SubList.align(list, actualList);
+      int maxKeyWidth = Integer.toString(Math.max(sub.actual().size(),
+          sub.offset() + list.size())).length();
+      push(list, actualList, sub, "%" + maxKeyWidth + "s", keyWidth);
+      return;
+    }
+    if (list.isKeyed()) {
+      KeyedJoin join = KeyedJoin.join(list, actualList, readsBeans(list));
+      push(list, actualList, join, "%" + join.keyWidth() + "s", keyWidth);
+      return;
+    }
+    if (list.isAligned()) {
+      ListDiff diff = ListDiff.align(list, actualList);
+      if (diff != null) {
+        int maxKeyWidth = 0;
+        for (int i = 0; i < diff.size(); i++) {
+          maxKeyWidth = Math.max(maxKeyWidth, diff.key(i).length());
+        }
+        push(list, actualList, diff, "%" + maxKeyWidth + "s", keyWidth);
+        return;
+      }
+    }
+    int maxKeyWidth = Integer.toString(Math.max(actualList.size(), list.size())).length();
+    push(list, actualList, actualList instanceof RandomAccess ? null : actualList.iterator(),
+        "%" + maxKeyWidth + "s", keyWidth);
+  }
+
+  /**
+   * Describe the {@code i}th run of an aligned list, popping its frame
+   * after the last one.
+   */
+  private void describeRun(ListDiff diff, int i, ListMatcher list, int width, String format,
+      Description description) {
+    if (i == diff.size()) {
+      pop();
+      return;
+    }
+    visited++;
+    describeEntry(width, String.format(Locale.ROOT, format, diff.key(i)), description);
+    int e = diff.expectedIndex(i);
+    int a = diff.actualIndex(i);
+    if (paths != null) {
+      at(a);
+    }
+    switch (diff.kind(i)) {
+      case ListDiff.SAME:
+        if (diff.length(i) == 1) {
+          describeValue(list.expected(e), diff.actual().get(a), width, description);
+        } else {
+          description.appendText(diff.length(i) + " matching items");
+        }
+        return;
+      case ListDiff.CHANGED:
+        describeValue(list.expected(e), diff.actual().get(a), width, description);
+        return;
+      case ListDiff.MISSING:
+        describeEntryMissing(list.matcher(e), description);
+        return;
+      case ListDiff.UNEXPECTED:
+        describeEntryUnexepected(diff.actual().get(a), description);
+        return;
+      default:
+        throw new IllegalStateException("unknown run [" + diff.kind(i) + "]");
+    }
+  }
+
+  /**
+   * Describe the {@code i}th expected item of a list that matches part of
+   * the actual list against the actual item it is aligned with, popping
+   * its frame after the last one. Actual items outside of the alignment
+   * aren't described.
+   */
+  private void describeWindow(SubList sub, int i, ListMatcher list, int width, String format,
+      Description description) {
+    if (i == list.size()) {
+      pop();
+      return;
+    }
+    visited++;
+    int a = sub.offset() + i;
+    describeEntry(width, String.format(Locale.ROOT, format, a), description);
+    if (a >= sub.actual().size()) {
+      describeEntryMissing(list.matcher(i), description);
+      return;
+    }
+    if (paths != null) {
+      at(a);
+    }
+    describeValue(list.expected(i), sub.actual().get(a), width, description);
+  }
+
+  /**
+   * Describe the {@code i}th expected item of a keyed list and, after the
+   * last one, the unexpected items, popping its frame.
+   */
+  private void describeKeyed(KeyedJoin join, int i, ListMatcher list, int width,
+      String format, Description description) {
+    if (i == list.size()) {
+      pop();
+      for (int u = 0; u < join.unexpectedCount(); u++) {
+        describeEntry(width, String.format(Locale.ROOT, format, join.unexpectedKey(u)),
+            description);
+        describeEntryUnexepected(join.unexpected(u), description);
+      }
+      return;
+    }
+    visited++;
+    describeEntry(width, String.format(Locale.ROOT, format, join.expectedKey(i)), description);
+    if (join.found(i)) {
+      if (paths != null) {
+        at(i);
+      }
+      describeValue(list.expected(i), join.actual(i), width, description);
+    } else {
+      describeEntryMissing(list.matcher(i), description);
+    }
+  }
+
+  /**
+   * Describe an actual value against one expected child, pushing a frame
+   * if the child is a {@link MapMatcher} or {@link ListMatcher} that can
+   * match the value.
+   */
+  private void describeValue(Object expected, Object actual, int keyWidth,
+      Description description) {
+    if (expected instanceof MapMatcher) {
+      Map<?, ?> actualMap = ((MapMatcher) expected).asMap(actual, readsBeans(expected));
+      if (actualMap != null) {
+        enterDescribeMismatch(expected, keyWidth + INDENT, actualMap, description);
+        return;
+      }
+    } else if (expected instanceof ListMatcher) {
+      List<?> actualList = ListMatcher.asList(actual);
+      if (actualList != null) {
+        enterDescribeMismatch(expected, keyWidth + INDENT, actualList, description);
+        return;
+      }
+    }
+    describeEntryValue(keyWidth, matcherForConverted(expected), actual, description);
+  }
+
+  private static void describeUnexpected(MapMatcher map, Map<?, ?> actual, int keyWidth,
+      String format, Description description) {
+    for (Map.Entry<?, ?> e : actual.entrySet()) {
+      if (map.indexOf(e.getKey()) < 0) {
+        describeEntry(keyWidth, String.format(Locale.ROOT, format, e.getKey()), description);
+        if (map.isExtraOk()) {
+          describeEntryUnexepectedButOk(e.getValue(), description);
+        } else {
+          describeEntryUnexepected(e.getValue(), description);
+        }
+      }
+    }
+  }
+
+  private static void describeUnexpected(ListMatcher list, List<?> actual, int keyWidth,
+      String format, Description description) {
+    int index = list.size();
+    int unexpected = actual.size() - index;
+    if (unexpected <= 0) {
+      return;
+    }
+    int limit = Buffers.isView(actual) ? ListMatcher.MAX_UNEXPECTED : Integer.MAX_VALUE;
+    Iterator<?> value = actual.listIterator(index);
+    for (int i = 0; value.hasNext() && i < limit; i++) {
+      describeEntry(keyWidth, String.format(Locale.ROOT, format, index++), description);
+      describeEntryUnexepected(value.next(), description);
+    }
+    if (unexpected > limit) {
+      describeEntry(keyWidth, String.format(Locale.ROOT, format, "..."), description);
+      description.appendText("and " + (unexpected - limit) + " more unexpected");
+    }
+  }
+
+  /**
+   * Converts an expected value into the form we store in
+   * {@linkplain MapMatcher} and {@link ListMatcher}. See
+   * {@link MapMatcher#convert}.
+   */
+  static Object convert(Object value) {
+    if (false == (value instanceof Map || value instanceof List)) {
+      return convertLeaf(value);
+    }
+    Object cached = ConversionCache.get(value);
+    if (cached != null) {
+      return cached;
+    }
+    Deque<Conversion> stack = new ArrayDeque<>();
+    stack.push(new Conversion(value));
+    while (true) {
+      Conversion top = stack.peek();
+      if (top.hasNext()) {
+        Object child = top.next();
+        if (child instanceof Map || child instanceof List) {
+          cached = ConversionCache.get(child);
+          if (cached == null) {
+            stack.push(new Conversion(child));
+          } else {
+            top.add(cached);
+          }
+        } else {
+          top.add(convertLeaf(child));
+        }
+        continue;
+      }
+      stack.pop();
+      Object converted = top.build();
+      ConversionCache.put(top.source, converted);
+      if (stack.isEmpty()) {
+        return converted;
+      }
+      stack.peek().add(converted);
+    }
+  }
+
+  private static Object convertLeaf(Object value) {
+    if (value instanceof Leaf) {
+      return new LeafMatcher((Leaf) value);
+    }
+    if (value != null && value.getClass().isArray()) {
+      // equalTo compares arrays by content but Object#equals doesn't
+      return equalTo(value);
+    }
+    return value;
+  }
+
+  /**
+   * A {@link Map} or {@link List} that {@link #convert} is converting.
+   */
+  private static final class Conversion {
+    private final Object source;
+    private final Iterator<?> iterator;
+    private final Object[] keys;
+    private final Object[] values;
+    private int i;
+
+    Conversion(Object source) {
+      this.source = source;
+      if (source instanceof Map) {
+        Map<?, ?> map = (Map<?, ?>) source;
+        iterator = map.entrySet().iterator();
+        keys = map.isEmpty() ? MapMatcher.EMPTY : new Object[map.size()];
+        values = map.isEmpty() ? MapMatcher.EMPTY : new Object[map.size()];
+      } else {
+        List<?> list = (List<?>) source;
+        iterator = list.iterator();
+        keys = null;
+        values = list.isEmpty() ? MapMatcher.EMPTY : new Object[list.size()];
+      }
+    }
+
+    boolean hasNext() {
+      return iterator.hasNext();
+    }
+
+    /**
+     * The next value to convert.
+     */
+    Object next() {
+      if (keys == null) {
+        return iterator.next();
+      }
+      Map.Entry<?, ?> e = (Map.Entry<?, ?>) iterator.next();
+      keys[i] = e.getKey();
+      return e.getValue();
+    }
+
+    /**
+     * Add the converted form of the value from {@link #next}.
+     */
+    void add(Object converted) {
+      values[i++] = converted;
+    }
+
+    Object build() {
+      if (keys == null) {
+        return ListMatcher.fromConverted(values);
+      }
+      return MapMatcher.fromConverted(keys, values);
+    }
+  }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2021 Nikolas Everett
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.github.nik9000.mapmatcher;
+
+import static io.github.nik9000.mapmatcher.ListMatcher.matchesList;
+import static io.github.nik9000.mapmatcher.MapMatcher.assertMap;
+import static io.github.nik9000.mapmatcher.MapMatcher.matchesMap;
+import static io.github.nik9000.mapmatcher.MapMatcherTest.assertMismatch;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class BeansTest {
+  public record Point(int x, int y) {}
+
+  public record Line(Point start, Point end) {}
+
+  record Hidden(int x) {}
+
+  public interface Named {
+    String getName();
+  }
+
+  private static class PrivateNamed implements Named {
+    @Override
+    public String getName() {
+      return "private";
+    }
+  }
+
+  public static class Empty {}
+
+  public static class Person {
+    private final String name;
+    private final boolean admin;
+    private int reads;
+
+    Person(String name, boolean admin) {
+      this.name = name;
+      this.admin = admin;
+    }
+
+    public String getName() {
+      reads++;
+      return name;
+    }
+
+    public boolean isAdmin() {
+      reads++;
+      return admin;
+    }
+
+    public String getUnused() {
+      throw new AssertionError("shouldn't read unused properties");
+    }
+  }
+
+  @Test
+  void record() {
+    assertMap(new Point(1, 2), matchesMap().entry("x", 1).entry("y", 2).forBeans());
+  }
+
+  @Test
+  void recordMismatch() {
+    assertMismatch(new Point(1, 2), matchesMap().entry("x", 1).entry("y", 3).forBeans(),
+        equalTo("""
+            a map containing
+            x: <1>
+            y: expected <3> but was <2>"""));
+  }
+
+  @Test
+  void nestedRecords() {
+    assertMismatch(new Line(new Point(1, 2), new Point(3, 4)),
+        matchesMap().entry("start", Map.of("x", 1))
+            .entry("end", matchesMap().entry("x", 3).entry("y", 5))
+            .forBeans(),
+        equalTo("""
+            a map containing
+            start: a map containing
+                  x: <1>
+                  y: <unexpected> but was <2>
+              end: a map containing
+                  x: <3>
+                  y: expected <5> but was <4>"""));
+  }
+
+  @Test
+  void recordsInList() {
+    assertMap(Map.of("points", List.of(new Point(1, 2))),
+        matchesMap().entry("points", matchesList().item(matchesMap().entry("y", greaterThan(1))
+            .extraOk())).forBeans());
+  }
+
+  @Test
+  void recordsInKeyedList() {
+    assertMap(List.of(new Point(2, 1), new Point(1, 2)),
+        matchesList().item(Map.of("x", 1, "y", 2)).item(Map.of("x", 2, "y", 1)).keyedBy("x")
+            .forBeans());
+  }
+
+  @Test
+  void missingProperty() {
+    assertMismatch(new Point(1, 2), matchesMap().entry("x", 1).entry("z", 3).forBeans(),
+        equalTo("""
+            a map containing
+            x: <1>
+            z: expected <3> but was <missing>
+            y: <unexpected> but was <2>"""));
+  }
+
+  @Test
+  void bean() {
+    Person person = new Person("nik", true);
+    assertMap(person,
+        matchesMap().entry("name", "nik").entry("admin", true).extraOk().forBeans());
+    assertThat(person.reads, equalTo(2));
+  }
+
+  /**
+   * Matchers that aren't {@link MapMatcher#extraOk} expect every property.
+   */
+  @Test
+  void unexpectedProperty() {
+    assertMismatch(new Point(1, 2), matchesMap().entry("x", 1).forBeans(), equalTo("""
+        a map containing
+        x: <1>
+        y: <unexpected> but was <2>"""));
+  }
+
+  @Test
+  void empty() {
+    assertMismatch(new Point(1, 2), matchesMap().forBeans(), equalTo("""
+        an empty map
+        x: <unexpected> but was <1>
+        y: <unexpected> but was <2>"""));
+    assertMap(new Empty(), matchesMap().forBeans());
+  }
+
+  /**
+   * Without {@link MapMatcher#forBeans} beans don't match.
+   */
+  @Test
+  void notForBeans() {
+    assertMismatch(new Point(1, 2), matchesMap().forObjects(), equalTo("""
+        was a io.github.nik9000.mapmatcher.BeansTest$Point (<Point[x=1, y=2]>)"""));
+    assertMismatch(new Point(1, 2), matchesMap().entry("x", 1).extraOk().forObjects(),
+        equalTo("""
+            was a io.github.nik9000.mapmatcher.BeansTest$Point (<Point[x=1, y=2]>)"""));
+    assertMismatch(Map.of("p", new Point(1, 2)), matchesMap().entry("p", matchesMap()),
+        equalTo("""
+            a map containing
+            p: expected an empty map but was a io.github.nik9000.mapmatcher.BeansTest$Point \
+            (<Point[x=1, y=2]>)"""));
+  }
+
+  @Test
+  void notABean() {
+    assertMismatch(1, matchesMap().entry("x", 1).forBeans(), equalTo("""
+        was a java.lang.Integer (<1>)"""));
+  }
+
+  /**
+   * We don't force access to accessors on types that aren't public, so
+   * their properties never match.
+   */
+  @Test
+  void inaccessible() {
+    assertMismatch(new Hidden(1), matchesMap().entry("x", 1).forBeans(), equalTo("""
+        a map containing
+        x: expected <1> but was <inaccessible>"""));
+  }
+
+  /**
+   * Accessors declared on a public interface are public even if the
+   * class that implements them isn't.
+   */
+  @Test
+  void publicInterface() {
+    assertMap(new PrivateNamed(), matchesMap().entry("name", "private").forBeans());
+  }
+
+}
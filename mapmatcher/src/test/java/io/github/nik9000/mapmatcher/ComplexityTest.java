@@ -0,0 +1,257 @@
+/*
+ * Copyright 2021 Nikolas Everett
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.github.nik9000.mapmatcher;
+
+import static io.github.nik9000.mapmatcher.ListMatcher.matchesList;
+import static io.github.nik9000.mapmatcher.MapMatcher.matchesMap;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThan;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+import org.hamcrest.Matcher;
+import org.hamcrest.StringDescription;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Guards against building, matching, and describing getting slower than
+ * linear in the number of entries. Each test runs an operation at
+ * {@link #SMALL} and {@link #LARGE} sizes and checks that the bytes it
+ * allocates and the time it takes grow about as fast as the size. Bytes
+ * allocated are measured with {@link com.sun.management.ThreadMXBean} so
+ * they are stable enough to check tightly. Time is noisy so we check it
+ * loosely, just tight enough to catch something quadratic.
+ */
+class ComplexityTest {
+  private static final int SMALL = 2_500;
+  private static final int LARGE = SMALL * 8;
+  /**
+   * Most that allocations may grow more than the size.
+   */
+  private static final double ALLOCATION_SLACK = 1.5;
+  /**
+   * Allocations that don't depend on the size at all.
+   */
+  private static final long CONSTANT_BYTES = 4096;
+  /**
+   * Most that time may grow more than the size. Quadratic would be
+   * {@code LARGE / SMALL}.
+   */
+  private static final double TIME_SLACK = 3;
+  private static final int RUNS = 5;
+
+  @Test
+  void buildMap() {
+    assertLinear(n -> n, n -> {
+      MapMatcher m = matchesMap();
+      for (int i = 0; i < n; i++) {
+        m = m.entry(Integer.toString(i), i);
+      }
+    }, 400);
+  }
+
+  @Test
+  void buildList() {
+    assertLinear(n -> n, n -> {
+      ListMatcher m = matchesList();
+      for (int i = 0; i < n; i++) {
+        m = m.item(i);
+      }
+    }, 200);
+  }
+
+  @Test
+  void convertMap() {
+    assertLinear(ComplexityTest::map, MapMatcher::matchesMap, 300);
+  }
+
+  @Test
+  void convertList() {
+    assertLinear(ComplexityTest::list, ListMatcher::matchesList, 100);
+  }
+
+  @Test
+  void matchMap() {
+    assertLinear(n -> new Object[] {matchesMap(map(n)), map(n)},
+        f -> assertThat(((MapMatcher) f[0]).matches(f[1]), equalTo(true)), 50);
+  }
+
+  @Test
+  void matchList() {
+    assertLinear(n -> new Object[] {matchesList(list(n)), list(n)},
+        f -> assertThat(((ListMatcher) f[0]).matches(f[1]), equalTo(true)), 50);
+  }
+
+  @Test
+  void matchKeyedList() {
+    assertLinear(n -> {
+      List<Object> hits = new ArrayList<>(n);
+      for (int i = 0; i < n; i++) {
+        hits.add(Map.of("_id", i));
+      }
+      List<Object> shuffled = new ArrayList<>(hits);
+      Collections.reverse(shuffled);
+      // Build the key index before measuring
+      ListMatcher matcher = matchesList(hits).keyedBy("_id");
+      matcher.matches(shuffled);
+      return new Object[] {matcher, shuffled};
+    }, f -> assertThat(((ListMatcher) f[0]).matches(f[1]), equalTo(true)), 200);
+  }
+
+  @Test
+  void findSubList() {
+    assertLinear(n -> {
+      List<Object> actual = list(n);
+      ListMatcher matcher = matchesList(actual.subList(n - 100, n)).asSubList();
+      // Build the search pattern before measuring
+      matcher.matches(actual);
+      return new Object[] {matcher, actual};
+    }, f -> assertThat(((ListMatcher) f[0]).matches(f[1]), equalTo(true)), 50);
+  }
+
+  /**
+   * Maps of plain values take the same hashed search as plain values.
+   * Trying the sub-list at each position would be quadratic here because
+   * almost all of it matches at every position.
+   */
+  @Test
+  void findSubListOfMaps() {
+    assertLinear(n -> {
+      List<Object> actual = new ArrayList<>(Collections.nCopies(n, Map.of("a", 0)));
+      actual.add(Map.of("a", 1));
+      ListMatcher matcher = matchesList(actual.subList(n - n / 8, n + 1)).asSubList();
+      matcher.matches(actual);
+      return new Object[] {matcher, actual};
+    }, f -> assertThat(((ListMatcher) f[0]).matches(f[1]), equalTo(true)), 50);
+  }
+
+  /**
+   * Searching a buffer reads it in place rather than copying it.
+   */
+  @Test
+  void findSubListInBuffer() {
+    assertLinear(n -> {
+      ByteBuffer actual = ByteBuffer.allocate(n);
+      for (int i = 0; i < n; i++) {
+        actual.put(i, (byte) i);
+      }
+      List<Object> expected = new ArrayList<>();
+      for (int i = n - 100; i < n; i++) {
+        expected.add((byte) i);
+      }
+      ListMatcher matcher = matchesList(expected).asSubList();
+      matcher.matches(actual);
+      return new Object[] {matcher, actual};
+    }, f -> assertThat(((ListMatcher) f[0]).matches(f[1]), equalTo(true)), 1);
+  }
+
+  @Test
+  void describeMapMismatch() {
+    assertLinear(n -> {
+      Map<String, Object> actual = map(n);
+      actual.put("0", -1);
+      return new Object[] {matchesMap(map(n)), actual};
+    }, f -> describeMismatch((MapMatcher) f[0], f[1]), 3000);
+  }
+
+  @Test
+  void describeListMismatch() {
+    assertLinear(n -> {
+      List<Object> actual = list(n);
+      actual.set(0, -1);
+      return new Object[] {matchesList(list(n)), actual};
+    }, f -> describeMismatch((ListMatcher) f[0], f[1]), 3000);
+  }
+
+  @Test
+  void describeAlignedListMismatch() {
+    assertLinear(n -> {
+      List<Object> actual = list(n);
+      actual.add(0, -1);
+      return new Object[] {matchesList(list(n)).aligned(), actual};
+    }, f -> describeMismatch((ListMatcher) f[0], f[1]), 300);
+  }
+
+  @Test
+  void describeTo() {
+    assertLinear(n -> matchesMap(map(n)), m -> m.describeTo(new StringDescription()), 2000);
+  }
+
+  private static void describeMismatch(Matcher<?> matcher, Object actual) {
+    StringDescription description = new StringDescription();
+    matcher.describeMismatch(actual, description);
+  }
+
+  /**
+   * Check that {@code op} grows linearly when run against
+   * {@code fixture}s of growing size.
+   *
+   * @param maxBytesPerEntry the most {@code op} may allocate per entry
+   */
+  private static <T> void assertLinear(IntFunction<T> fixture, Consumer<T> op,
+      long maxBytesPerEntry) {
+    // Warm up so we measure the JIT'd code
+    for (int i = 0; i < RUNS; i++) {
+      op.accept(fixture.apply(SMALL));
+    }
+    Cost small = measure(fixture.apply(SMALL), op);
+    Cost large = measure(fixture.apply(LARGE), op);
+    double growth = (double) LARGE / SMALL;
+    assertThat("bytes per entry", large.bytes / LARGE, lessThan(maxBytesPerEntry));
+    assertThat("allocation growth " + small + " -> " + large,
+        (double) large.bytes, lessThan(small.bytes * growth * ALLOCATION_SLACK + CONSTANT_BYTES));
+    assertThat("time growth " + small + " -> " + large,
+        (double) large.nanos / small.nanos, lessThan(growth * TIME_SLACK));
+  }
+
+  private static <T> Cost measure(T fixture, Consumer<T> op) {
+    com.sun.management.ThreadMXBean bean =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long thread = Thread.currentThread().getId();
+    long bytes = Long.MAX_VALUE;
+    long nanos = Long.MAX_VALUE;
+    for (int i = 0; i < RUNS; i++) {
+      long startBytes = bean.getThreadAllocatedBytes(thread);
+      long start = System.nanoTime();
+      op.accept(fixture);
+      nanos = Math.min(nanos, System.nanoTime() - start);
+      bytes = Math.min(bytes, bean.getThreadAllocatedBytes(thread) - startBytes);
+    }
+    return new Cost(bytes, nanos);
+  }
+
+  private record Cost(long bytes, long nanos) {
+    @Override
+    public String toString() {
+      return bytes + "b/" + nanos / 1000 + "us";
+    }
+  }
+
+  private static Map<String, Object> map(int size) {
+    Map<String, Object> map = new LinkedHashMap<>();
+    for (int i = 0; i < size; i++) {
+      map.put(Integer.toString(i), i);
+    }
+    return map;
+  }
+
+  private static List<Object> list(int size) {
+    List<Object> list = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      list.add(i);
+    }
+    return list;
+  }
+}
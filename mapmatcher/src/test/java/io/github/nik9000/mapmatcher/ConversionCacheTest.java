@@ -0,0 +1,108 @@
+/*
+ * Copyright 2021 Nikolas Everett
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.github.nik9000.mapmatcher;
+
+import static io.github.nik9000.mapmatcher.ListMatcher.matchesList;
+import static io.github.nik9000.mapmatcher.MapMatcher.assertMap;
+import static io.github.nik9000.mapmatcher.MapMatcher.matchesMap;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ConversionCacheTest {
+  private static final Map<String, Object> FIXTURE = Map.of(
+      "a", 1,
+      "b", List.of(1, 2),
+      "c", Map.of("d", "e"));
+
+  @BeforeEach
+  void enable() {
+    ConversionCache.enable();
+  }
+
+  @AfterEach
+  void disable() {
+    ConversionCache.disable();
+  }
+
+  @Test
+  void disabledByDefault() {
+    ConversionCache.disable();
+    assertThat(matchesMap(FIXTURE), not(sameInstance(matchesMap(FIXTURE))));
+    assertThat(ConversionCache.misses(), equalTo(0L));
+  }
+
+  @Test
+  void reusesImmutable() {
+    MapMatcher first = matchesMap(FIXTURE);
+    assertThat(ConversionCache.misses(), equalTo(3L));
+    assertThat(ConversionCache.hits(), equalTo(0L));
+    assertThat(matchesMap(FIXTURE), sameInstance(first));
+    assertThat(ConversionCache.hits(), equalTo(1L));
+  }
+
+  @Test
+  void reusesNested() {
+    MapMatcher first = matchesMap().entry("f", FIXTURE);
+    MapMatcher second = matchesMap().entry("f", FIXTURE);
+    assertThat(second.matcher(0), sameInstance(first.matcher(0)));
+  }
+
+  @Test
+  void matchesTheSame() {
+    assertMap(Map.of("a", 1, "b", List.of(1, 2), "c", Map.of("d", "e")), matchesMap(FIXTURE));
+    assertMap(Map.of("a", 1, "b", List.of(1, 2), "c", Map.of("d", "e")), matchesMap(FIXTURE));
+    assertThat(ConversionCache.hits(), equalTo(1L));
+  }
+
+  @Test
+  void skipsMutable() {
+    List<Object> list = new ArrayList<>(List.of(1, 2));
+    assertThat(matchesList(list), not(sameInstance(matchesList(list))));
+    assertThat(ConversionCache.hits(), equalTo(0L));
+    assertThat(ConversionCache.misses(), equalTo(0L));
+  }
+
+  @Test
+  void skipsImmutableContainingMutable() {
+    List<Object> list = new ArrayList<>(List.of(1, 2));
+    Map<String, Object> fixture = Map.of("list", list);
+    MapMatcher first = matchesMap(fixture);
+    list.add(3);
+    MapMatcher second = matchesMap(fixture);
+    assertThat(second, not(sameInstance(first)));
+    assertMap(Map.of("list", List.of(1, 2, 3)), second);
+  }
+
+  @Test
+  void concurrent() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<MapMatcher>> results = new ArrayList<>();
+      for (int i = 0; i < 100; i++) {
+        results.add(executor.submit(() -> matchesMap(FIXTURE)));
+      }
+      for (Future<MapMatcher> result : results) {
+        assertMap(FIXTURE, result.get());
+      }
+    } finally {
+      executor.shutdown();
+    }
+    assertThat(matchesMap(FIXTURE), sameInstance(matchesMap(FIXTURE)));
+  }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2021 Nikolas Everett
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.github.nik9000.mapmatcher;
+
+import static io.github.nik9000.mapmatcher.ListMatcher.matchesList;
+import static io.github.nik9000.mapmatcher.MapMatcher.matchesMap;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hamcrest.Matcher;
+import org.hamcrest.StringDescription;
+import org.junit.jupiter.api.Test;
+
+class DocumentIndexTest {
+  private static final MapMatcher SHARDS = matchesMap().entry("total", 5).entry("failed", 0);
+
+  @Test
+  void diffAll() {
+    Map<String, Object> response = response(10);
+    List<Matcher<?>> matchers = List.of(
+        matchesMap().entry("_shards", SHARDS).extraOk(),
+        matchesMap().entry("took", greaterThan(100)).extraOk(),
+        hasKey("hits"),
+        matchesMap().entry("took", 12).entry("_shards", SHARDS).extraOk());
+    List<String> diffs = DocumentIndex.of(response).diffAll(matchers);
+    assertThat(diffs.size(), equalTo(4));
+    assertThat(diffs.get(0), nullValue());
+    assertThat(diffs.get(1), equalTo(describeMismatch(matchers.get(1), response)));
+    assertThat(diffs.get(2), nullValue());
+    assertThat(diffs.get(3), nullValue());
+  }
+
+  @Test
+  void matches() {
+    DocumentIndex index = DocumentIndex.of(response(10));
+    assertThat(index.matches(matchesMap().entry("_shards", SHARDS).extraOk()), equalTo(true));
+    assertThat(index.matches(matchesMap().entry("_shards", SHARDS)), equalTo(false));
+    assertThat(index.matches(hasKey("took")), equalTo(true));
+  }
+
+  /**
+   * Sub-matchers that many matchers share are only matched against each
+   * value once.
+   */
+  @Test
+  void sharesSubMatchers() {
+    ListMatcher hits = matchesList(hits(1000));
+    Map<String, Object> response = response(1000);
+    long alone = nodes(() -> matchesMap().entry("hits", hits).extraOk().matches(response));
+
+    DocumentIndex index = DocumentIndex.of(response);
+    long first = nodes(() -> index.matches(matchesMap().entry("hits", hits).extraOk()));
+    long second = nodes(() -> index.matches(
+        matchesMap().entry("took", 12).entry("hits", hits).extraOk()));
+    assertThat(first, equalTo(alone));
+    assertThat(second, lessThan(10L));
+  }
+
+  /**
+   * Sub-matchers that don't match are remembered too.
+   */
+  @Test
+  void sharesMismatches() {
+    List<Object> expectedHits = hits(1000);
+    expectedHits.set(999, Map.of("_id", "nope"));
+    ListMatcher hits = matchesList(expectedHits);
+    DocumentIndex index = DocumentIndex.of(response(1000));
+    long first = nodes(() -> index.matches(matchesMap().entry("hits", hits).extraOk()));
+    long second = nodes(() -> index.matches(
+        matchesMap().entry("took", 12).entry("hits", hits).extraOk()));
+    assertThat(first, greaterThan(1000L));
+    assertThat(second, lessThan(10L));
+    assertThat(index.matches(matchesMap().entry("hits", hits).extraOk()), equalTo(false));
+  }
+
+  /**
+   * A sub-matcher remembers a separate result for each value it matches.
+   */
+  @Test
+  void perValue() {
+    MapMatcher hit = matchesMap().entry("_id", "1");
+    DocumentIndex index = DocumentIndex.of(
+        Map.of("a", Map.of("_id", "1"), "b", Map.of("_id", "2")));
+    assertThat(index.matches(matchesMap().entry("a", hit).extraOk()), equalTo(true));
+    assertThat(index.matches(matchesMap().entry("b", hit).extraOk()), equalTo(false));
+    assertThat(index.matches(matchesMap().entry("a", hit).extraOk()), equalTo(true));
+  }
+
+  @Test
+  void notADocument() {
+    DocumentIndex index = DocumentIndex.of("foo");
+    assertThat(index.matches(matchesMap()), equalTo(false));
+    assertThat(index.matches(matchesList()), equalTo(false));
+    assertThat(index.actual(), equalTo("foo"));
+  }
+
+  private static long nodes(Runnable run) {
+    MatchStats.start();
+    MatchStats stats;
+    try {
+      run.run();
+    } finally {
+      stats = MatchStats.stop();
+    }
+    return stats.nodes();
+  }
+
+  private static String describeMismatch(Matcher<?> matcher, Object actual) {
+    StringDescription description = new StringDescription();
+    matcher.describeMismatch(actual, description);
+    return description.toString();
+  }
+
+  private static Map<String, Object> response(int hits) {
+    Map<String, Object> response = new LinkedHashMap<>();
+    response.put("took", 12);
+    response.put("_shards", Map.of("total", 5, "failed", 0));
+    response.put("hits", hits(hits));
+    return response;
+  }
+
+  private static List<Object> hits(int count) {
+    List<Object> hits = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      hits.add(Map.of("_id", Integer.toString(i), "_source", Map.of("n", i)));
+    }
+    return hits;
+  }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2021 Nikolas Everett
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.github.nik9000.mapmatcher;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.sameInstance;
+
+import org.junit.jupiter.api.Test;
+
+class EntryOrderTest {
+  @Test
+  void declaredOrderAtFirst() {
+    assertThat(new EntryOrder(3).order(), equalTo(new int[] {0, 1, 2}));
+  }
+
+  @Test
+  void onlyReordersEvery() {
+    EntryOrder order = new EntryOrder(2);
+    int[] first = order.order();
+    for (int i = 0; i < EntryOrder.REORDER_EVERY - 1; i++) {
+      order.checked(0, 1, true);
+      order.checked(1, 1, false);
+      order.finished();
+    }
+    assertThat(order.order(), sameInstance(first));
+    order.finished();
+    assertThat(order.order(), equalTo(new int[] {1, 0}));
+  }
+
+  @Test
+  void failingFirst() {
+    EntryOrder order = new EntryOrder(3);
+    for (int i = 0; i < EntryOrder.REORDER_EVERY; i++) {
+      order.checked(0, 1, true);
+      order.checked(1, 1, true);
+      order.checked(2, 1, i % 2 == 0);
+      order.finished();
+    }
+    assertThat(order.order(), equalTo(new int[] {2, 0, 1}));
+  }
+
+  @Test
+  void cheapFirst() {
+    EntryOrder order = new EntryOrder(3);
+    for (int i = 0; i < EntryOrder.REORDER_EVERY; i++) {
+      order.checked(0, 100, i % 2 == 0);
+      order.checked(1, 10, i % 2 == 0);
+      order.checked(2, 1, i % 2 == 0);
+      order.finished();
+    }
+    assertThat(order.order(), equalTo(new int[] {2, 1, 0}));
+  }
+
+  /**
+   * Entries we've never checked, because entries before them always
+   * fail, should be tried early so we learn about them.
+   */
+  @Test
+  void uncheckedEarly() {
+    EntryOrder order = new EntryOrder(3);
+    for (int i = 0; i < EntryOrder.REORDER_EVERY; i++) {
+      order.checked(0, 1, true);
+      order.checked(1, 1, i % 10 != 0);
+      order.finished();
+    }
+    assertThat(order.order(), equalTo(new int[] {2, 1, 0}));
+  }
+}
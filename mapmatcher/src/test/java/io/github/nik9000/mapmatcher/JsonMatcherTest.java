@@ -0,0 +1,148 @@
+/*
+ * Copyright 2021 Nikolas Everett
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.github.nik9000.mapmatcher;
+
+import static io.github.nik9000.mapmatcher.JsonMatcher.matchesJson;
+import static io.github.nik9000.mapmatcher.MapMatcher.assertMap;
+import static io.github.nik9000.mapmatcher.MapMatcher.matchesMap;
+import static io.github.nik9000.mapmatcher.MapMatcherTest.assertDescribeTo;
+import static io.github.nik9000.mapmatcher.MapMatcherTest.assertMismatch;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.google.gson.Gson;
+
+class JsonMatcherTest {
+  @Test
+  void emptyObject() {
+    assertMap(Map.of(), matchesJson("{}"));
+  }
+
+  @Test
+  void emptyArray() {
+    assertMap(List.of(), matchesJson(" [ ] "));
+  }
+
+  @Test
+  void mismatch() {
+    assertMismatch(Map.of("foo", 2, "bar", List.of(1, 3)),
+        matchesJson("{\"foo\": 1, \"bar\": [1, 2]}"), equalTo("""
+            a map containing
+            foo: expected <1> but was <2>
+            bar: a list containing
+                0: <1>
+                1: expected <2> but was <3>"""));
+  }
+
+  @Test
+  void missingAndExtra() {
+    assertMismatch(Map.of("foo", "a"), matchesJson("{\"bar\": \"a\"}"), equalTo("""
+        a map containing
+        bar: expected "a" but was <missing>
+        foo: <unexpected> but was "a\""""));
+  }
+
+  @Test
+  void numbersMatchByValue() {
+    assertMap(List.of(1.0, 1L, (short) 1, 1.5, 10000000000L, new BigDecimal("1e30"), 1e30),
+        matchesJson("[1, 1, 1, 1.5, 10000000000, 1000000000000000000000000000000, 1e30]"));
+  }
+
+  @Test
+  void numberMismatch() {
+    assertMismatch(List.of(1.5, "1"), matchesJson("[1, 1]"), equalTo("""
+        a list containing
+        0: expected <1> but was <1.5>
+        1: expected <1> but was a java.lang.String ("1")"""));
+  }
+
+  @Test
+  void literals() {
+    List<Object> list = new ArrayList<>();
+    list.add(true);
+    list.add(false);
+    list.add(null);
+    list.add("a\n\"b\"A");
+    assertMap(list, matchesJson("[true, false, null, \"a\\n\\\"b\\\"\\u0041\"]"));
+  }
+
+  @Test
+  void scalar() {
+    assertMap("foo", matchesJson("\"foo\""));
+    assertMismatch(2, matchesJson("1"), equalTo("was <2>"));
+  }
+
+  @Test
+  void nested() {
+    assertMismatch(Map.of("foo", Map.of("bar", 2)),
+        matchesMap().entry("foo", matchesJson("{\"bar\": 1}")), equalTo("""
+            a map containing
+            foo: a map containing
+              bar: expected <1> but was <2>"""));
+  }
+
+  @Test
+  void nestedMissing() {
+    assertMismatch(Map.of(), matchesMap().entry("foo", matchesJson("{\"bar\": 1}")),
+        equalTo("""
+            a map containing
+            foo: expected a map but was <missing>"""));
+  }
+
+  @Test
+  void describeTo() {
+    assertDescribeTo(matchesJson("{\"foo\": [1, \"a\"]}"), equalTo("""
+        a map containing
+        foo: a list containing
+            0: <1>
+            1: "a\""""));
+  }
+
+  @Test
+  void invalid() {
+    Exception e = assertThrows(IllegalArgumentException.class, () -> matchesJson("{\"a\" 1}"));
+    assertThat(e.getMessage(), equalTo("Invalid JSON at [5]: expected [:]"));
+    e = assertThrows(IllegalArgumentException.class, () -> matchesJson("[1] 2"));
+    assertThat(e.getMessage(), equalTo("Invalid JSON at [4]: expected end of document"));
+  }
+
+  @Test
+  void fromPath(@TempDir Path dir) throws IOException {
+    Path file = dir.resolve("expected.json");
+    Files.writeString(file, "{\"foo\": \"bar\"}", StandardCharsets.UTF_8);
+    assertMap(Map.of("foo", "bar"), matchesJson(file));
+  }
+
+  @Test
+  void big() throws IOException {
+    Map<?, ?> actual;
+    try (InputStream in = resource("es-response.json")) {
+      actual = new Gson().fromJson(new InputStreamReader(in, StandardCharsets.UTF_8), Map.class);
+    }
+    try (InputStream in = resource("es-response.json")) {
+      assertMap(actual, matchesJson(in));
+    }
+  }
+
+  private InputStream resource(String name) {
+    return Thread.currentThread().getContextClassLoader().getResourceAsStream(name);
+  }
+}
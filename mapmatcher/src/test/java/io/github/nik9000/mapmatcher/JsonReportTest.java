@@ -0,0 +1,130 @@
+/*
+ * Copyright 2021 Nikolas Everett
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.github.nik9000.mapmatcher;
+
+import static io.github.nik9000.mapmatcher.ListMatcher.matchesList;
+import static io.github.nik9000.mapmatcher.MapMatcher.matchesMap;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hamcrest.Matcher;
+import org.junit.jupiter.api.Test;
+
+class JsonReportTest {
+  @Test
+  void match() throws IOException {
+    assertReport(Map.of("foo", 1), matchesMap().entry("foo", 1), equalTo(""));
+  }
+
+  @Test
+  void writeAll() throws IOException {
+    StringWriter out = new StringWriter();
+    JsonReport.writeAll(Map.of("foo", 1), matchesMap().entry("foo", 1), out);
+    assertThat(out.toString(), equalTo("""
+        {"path":["foo"],"status":"match","expected":"<1>","actual":1}
+        """));
+  }
+
+  @Test
+  void mismatch() throws IOException {
+    assertReport(Map.of("foo", "baz"), matchesMap().entry("foo", "bar"), equalTo("""
+        {"path":["foo"],"status":"mismatch","expected":"\\"bar\\"","actual":"baz",\
+        "mismatch":"was \\"baz\\""}
+        """));
+  }
+
+  @Test
+  void missingAndUnexpected() throws IOException {
+    assertReport(Map.of("foo", List.of(1)), matchesMap().entry("bar", Map.of("a", 1)),
+        equalTo("""
+            {"path":["bar"],"status":"missing","expected":"a map"}
+            {"path":["foo"],"status":"unexpected","actual":[1]}
+            """));
+  }
+
+  @Test
+  void unexpectedButOk() throws IOException {
+    assertReport(Map.of("foo", 1), matchesMap().extraOk(), equalTo("""
+        {"path":["foo"],"status":"unexpected_but_ok","actual":1}
+        """));
+  }
+
+  @Test
+  void nested() throws IOException {
+    Map<String, Object> actual = new LinkedHashMap<>();
+    actual.put("list", List.of(1, Map.of("a", 2), 3));
+    actual.put("sub", Map.of("b", "x\ny"));
+    assertReport(actual,
+        matchesMap().entry("list", matchesList().item(1).item(Map.of("a", greaterThan(2))))
+            .entry("sub", Map.of("b", "x\ny")),
+        equalTo("""
+            {"path":["list",1,"a"],"status":"mismatch","expected":"a value greater than <2>",\
+            "actual":2,"mismatch":"<2> was equal to <2>"}
+            {"path":["list",2],"status":"unexpected","actual":3}
+            """));
+  }
+
+  @Test
+  void arrays() throws IOException {
+    Map<String, Object> actual = new LinkedHashMap<>();
+    actual.put("ints", new int[] {1, 2});
+    actual.put("objects", new Object[] {"a", List.of(true), Map.of("b", 1.5)});
+    assertReport(actual, matchesMap(), equalTo("""
+        {"path":["ints"],"status":"unexpected","actual":[1,2]}
+        {"path":["objects"],"status":"unexpected","actual":["a",[true],{"b":1.5}]}
+        """));
+  }
+
+  @Test
+  void deep() throws IOException {
+    int depth = 100_000;
+    Object actual = 1;
+    Object expected = 2;
+    for (int i = 0; i < depth; i++) {
+      actual = List.of(actual);
+      expected = List.of(expected);
+    }
+    StringWriter out = new StringWriter();
+    JsonReport.write(Map.of("a", actual), matchesMap().entry("b", expected), out);
+    assertThat(out.toString(), equalTo("""
+        {"path":["b"],"status":"missing","expected":"a list"}
+        {"path":["a"],"status":"unexpected","actual":%s1%s}
+        """.formatted("[".repeat(depth), "]".repeat(depth))));
+
+    out = new StringWriter();
+    JsonReport.write((List<?>) actual, matchesList().item(expected), out);
+    assertThat(out.toString().length(), greaterThan(depth));
+  }
+
+  @Test
+  void wrongType() throws IOException {
+    assertReport(Map.of("foo", 1), matchesMap().entry("foo", List.of(1)), equalTo("""
+        {"path":["foo"],"status":"mismatch","expected":"a list","actual":1,\
+        "mismatch":"was a java.lang.Integer (<1>)"}
+        """));
+  }
+
+  @Test
+  void leafRoot() throws IOException {
+    assertReport(1, equalTo(2), equalTo("""
+        {"path":[],"status":"mismatch","expected":"<2>","actual":1,"mismatch":"was <1>"}
+        """));
+  }
+
+  static <T> void assertReport(T actual, Matcher<? super T> matcher,
+      Matcher<String> reportMatcher) throws IOException {
+    StringWriter out = new StringWriter();
+    JsonReport.write(actual, matcher, out);
+    assertThat(out.toString(), reportMatcher);
+  }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2021 Nikolas Everett
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.github.nik9000.mapmatcher;
+
+import static io.github.nik9000.mapmatcher.ListMatcher.matchesList;
+import static io.github.nik9000.mapmatcher.MapMatcher.assertMap;
+import static io.github.nik9000.mapmatcher.MapMatcher.matchesMap;
+import static io.github.nik9000.mapmatcher.MapMatcherTest.assertDescribeTo;
+import static io.github.nik9000.mapmatcher.MapMatcherTest.assertMismatch;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.in;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class LeafTest {
+  private static final Leaf POSITIVE = Leaf.of("a positive number",
+      v -> v instanceof Number && ((Number) v).doubleValue() > 0);
+
+  @Test
+  void matches() {
+    assertMap(Map.of("a", 1), matchesMap().entry("a", POSITIVE));
+    assertMap(List.of(1, 2.5), matchesList().item(POSITIVE).item(POSITIVE));
+    assertMap(Map.of("a", List.of(3)), matchesMap(Map.of("a", List.of(POSITIVE))));
+  }
+
+  @Test
+  void describeTo() {
+    assertDescribeTo(matchesMap().entry("a", POSITIVE),
+        equalTo("a map containing\na: a positive number"));
+  }
+
+  @Test
+  void mismatch() {
+    assertMismatch(Map.of("a", -1), matchesMap().entry("a", POSITIVE),
+        equalTo("a map containing\na: expected a positive number but was <-1>"));
+  }
+
+  @Test
+  void missing() {
+    assertMismatch(Map.of(), matchesMap().entry("a", POSITIVE),
+        equalTo("a map containing\na: expected a positive number but was <missing>"));
+  }
+
+  /**
+   * Leaves describe mismatches exactly like the equivalent Hamcrest
+   * matcher.
+   */
+  @Test
+  void sameMessageAsMatcher() {
+    Leaf leaf = Leaf.of("one of {<1>, <2>}", List.of(1, 2)::contains);
+    assertThat(MapMatcher.diff(Map.of("a", leaf), Map.of("a", -1)),
+        equalTo(MapMatcher.diff(Map.of("a", in(List.of(1, 2))), Map.of("a", -1))));
+  }
+
+  @Test
+  void diff() {
+    assertThat(MapMatcher.diff(Map.of("a", POSITIVE), Map.of("a", 1)), equalTo(null));
+  }
+
+  @Test
+  void requiresDescription() {
+    assertThrows(NullPointerException.class, () -> Leaf.of(null, v -> true));
+  }
+}
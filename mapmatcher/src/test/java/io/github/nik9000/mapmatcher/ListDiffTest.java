@@ -0,0 +1,150 @@
+/*
+ * Copyright 2021 Nikolas Everett
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.github.nik9000.mapmatcher;
+
+import static io.github.nik9000.mapmatcher.ListMatcher.matchesList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class ListDiffTest {
+  @Test
+  void insertAtFront() {
+    ListDiff diff = align(List.of(1, 2, 3), List.of(0, 1, 2, 3));
+    assertRuns(diff, "UNEXPECTED 0 0 1", "SAME 0 1 3");
+  }
+
+  @Test
+  void deleteFromMiddle() {
+    ListDiff diff = align(List.of(1, 2, 3), List.of(1, 3));
+    assertRuns(diff, "SAME 0 0 1", "MISSING 1 1 1", "SAME 2 1 1");
+  }
+
+  @Test
+  void change() {
+    ListDiff diff = align(List.of(1, 2, 3), List.of(1, 5, 3));
+    assertRuns(diff, "SAME 0 0 1", "CHANGED 1 1 1", "SAME 2 2 1");
+  }
+
+  @Test
+  void changeAndAppend() {
+    ListDiff diff = align(List.of(1, 2), List.of(1, 5, 6));
+    assertRuns(diff, "SAME 0 0 1", "CHANGED 1 1 1", "UNEXPECTED 2 2 1");
+  }
+
+  @Test
+  void empty() {
+    assertRuns(align(List.of(), List.of(1)), "UNEXPECTED 0 0 1");
+    assertRuns(align(List.of(1), List.of()), "MISSING 0 0 1");
+  }
+
+  @Test
+  void matchers() {
+    ListMatcher list = matchesList().item(equalTo(1)).item(matchesList().item(2));
+    ListDiff diff = ListDiff.align(list, List.of(0, 1, List.of(2)));
+    assertRuns(diff, "UNEXPECTED 0 0 1", "SAME 0 1 2");
+  }
+
+  @Test
+  void tooManyEdits() {
+    List<Integer> expected = new ArrayList<>();
+    List<Integer> actual = new ArrayList<>();
+    for (int i = 0; i < ListDiff.MAX_EDITS; i++) {
+      expected.add(i);
+      actual.add(-i - 1);
+    }
+    assertThat(align(expected, actual), nullValue());
+  }
+
+  @Test
+  void random() {
+    Random random = new Random(0);
+    for (int round = 0; round < 200; round++) {
+      List<Integer> expected = new ArrayList<>();
+      for (int i = random.nextInt(100); i > 0; i--) {
+        expected.add(random.nextInt(10));
+      }
+      List<Integer> actual = new ArrayList<>(expected);
+      int edits = random.nextInt(10);
+      for (int e = 0; e < edits; e++) {
+        int at = actual.isEmpty() ? 0 : random.nextInt(actual.size());
+        switch (random.nextInt(3)) {
+          case 0 -> actual.add(at, random.nextInt(10));
+          case 1 -> {
+            if (false == actual.isEmpty()) {
+              actual.remove(at);
+            }
+          }
+          default -> {
+            if (false == actual.isEmpty()) {
+              actual.set(at, random.nextInt(10));
+            }
+          }
+        }
+      }
+      assertConsistent(expected, actual, align(expected, actual), edits);
+    }
+  }
+
+  /**
+   * Check that {@code diff} walks both lists in order, that matching
+   * runs really match, and that it doesn't find more edits than we made.
+   */
+  private static void assertConsistent(List<Integer> expected, List<Integer> actual,
+      ListDiff diff, int madeEdits) {
+    int e = 0;
+    int a = 0;
+    int edits = 0;
+    for (int i = 0; i < diff.size(); i++) {
+      assertThat(diff.expectedIndex(i), equalTo(e));
+      assertThat(diff.actualIndex(i), equalTo(a));
+      switch (diff.kind(i)) {
+        case ListDiff.SAME -> {
+          for (int j = 0; j < diff.length(i); j++) {
+            assertThat(actual.get(a++), equalTo(expected.get(e++)));
+          }
+        }
+        case ListDiff.CHANGED -> {
+          e++;
+          a++;
+          edits += 2;
+        }
+        case ListDiff.MISSING -> {
+          e++;
+          edits++;
+        }
+        default -> {
+          a++;
+          edits++;
+        }
+      }
+    }
+    assertThat(e, equalTo(expected.size()));
+    assertThat(a, equalTo(actual.size()));
+    assertThat(edits, lessThanOrEqualTo(madeEdits * 2));
+  }
+
+  private static ListDiff align(List<?> expected, List<?> actual) {
+    return ListDiff.align(matchesList(expected), actual);
+  }
+
+  private static void assertRuns(ListDiff diff, String... runs) {
+    String[] kinds = {"SAME", "CHANGED", "MISSING", "UNEXPECTED"};
+    List<String> actual = new ArrayList<>();
+    for (int i = 0; i < diff.size(); i++) {
+      actual.add(kinds[diff.kind(i)] + " " + diff.expectedIndex(i) + " "
+          + diff.actualIndex(i) + " " + diff.length(i));
+    }
+    assertThat(actual, equalTo(List.of(runs)));
+  }
+}
@@ -14,13 +14,31 @@ import static io.github.nik9000.mapmatcher.MapMatcherTest.assertDescribeTo;
 import static io.github.nik9000.mapmatcher.MapMatcherTest.assertMismatch;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.equalTo;
-
+import static org.hamcrest.Matchers.greaterThan;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
+import org.hamcrest.Matcher;
+import org.hamcrest.StringDescription;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 class ListMatcherTest {
   @Test
@@ -254,6 +272,493 @@ class ListMatcherTest {
     return matchesList(spec);
   }
 
+  @Test
+  void literalIsCopied() {
+    List<Object> sub = new ArrayList<>();
+    sub.add(1);
+    List<Object> spec = new ArrayList<>();
+    spec.add(sub);
+    ListMatcher matcher = matchesList(spec);
+    sub.add(2);
+    spec.add(3);
+    assertMap(List.of(List.of(1)), matcher);
+  }
+
+  @Test
+  void literalArray() {
+    assertMap(List.of(new int[] {1, 2}), matchesList().item(new int[] {1, 2}));
+  }
+
+  @Test
+  void intBuffer() {
+    assertMap(IntBuffer.wrap(new int[] {1, 2, 3}),
+        matchesList().item(1).item(2).item(3).forObjects());
+  }
+
+  @Test
+  void intBufferMismatch() {
+    assertMismatch(IntBuffer.wrap(new int[] {1, 2, 3}),
+        matchesList().item(1).item(5).forObjects(), equalTo("""
+            a list containing
+            0: <1>
+            1: expected <5> but was <2>
+            2: <unexpected> but was <3>"""));
+  }
+
+  @Test
+  void bufferRemaining() {
+    IntBuffer buffer = IntBuffer.wrap(new int[] {1, 2, 3, 4});
+    buffer.position(1).limit(3);
+    assertMap(buffer, matchesList().item(2).item(3).forObjects());
+    assertThat(buffer.position(), equalTo(1));
+  }
+
+  @Test
+  void longBuffer() {
+    assertMap(LongBuffer.wrap(new long[] {1L, 2L}), matchesList().item(1L).item(2L).forObjects());
+  }
+
+  @Test
+  void doubleBuffer() {
+    assertMap(DoubleBuffer.wrap(new double[] {1.5, 2.5}),
+        matchesList().item(1.5).item(closeTo(2.5, 0.01)).forObjects());
+  }
+
+  @Test
+  void directByteBuffer() {
+    ByteBuffer buffer = ByteBuffer.allocateDirect(2);
+    buffer.put(0, (byte) 7).put(1, (byte) 8);
+    assertMap(buffer, matchesList().item((byte) 7).item((byte) 8).forObjects());
+  }
+
+  @Test
+  void mappedIntBuffer(@TempDir Path tmp) throws IOException {
+    Path file = tmp.resolve("column");
+    ByteBuffer bytes = ByteBuffer.allocate(Integer.BYTES * 3);
+    bytes.asIntBuffer().put(new int[] {10, 20, 30});
+    Files.write(file, bytes.array());
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      assertMap(mapped.asIntBuffer(), matchesList().item(10).item(20).item(30).forObjects());
+    }
+  }
+
+  @Test
+  void nestedBuffer() {
+    assertMap(Map.of("column", IntBuffer.wrap(new int[] {1, 2})),
+        matchesMap().entry("column", List.of(1, 2)));
+  }
+
+  @Test
+  void manyUnexpectedIsBounded() {
+    StringBuilder expected = new StringBuilder("""
+        a list containing
+              0: <0>""");
+    for (int i = 1; i <= ListMatcher.MAX_UNEXPECTED; i++) {
+      expected.append(String.format("\n%7d: <unexpected> but was <%d>", i, i));
+    }
+    expected.append("\n    ...: and " + (1_000_000 - 1 - ListMatcher.MAX_UNEXPECTED)
+        + " more unexpected");
+    int[] column = new int[1_000_000];
+    for (int i = 0; i < column.length; i++) {
+      column[i] = i;
+    }
+    assertMismatch(IntBuffer.wrap(column), matchesList().item(0).forObjects(),
+        equalTo(expected.toString()));
+  }
+
+  /**
+   * We only limit the unexpected items we describe from buffers.
+   */
+  @Test
+  void manyUnexpectedInListIsNotBounded() {
+    StringBuilder expected = new StringBuilder("""
+        a list containing
+         0: <0>""");
+    int count = ListMatcher.MAX_UNEXPECTED * 2;
+    for (int i = 1; i < count; i++) {
+      expected.append(String.format("\n%2d: <unexpected> but was <%d>", i, i));
+    }
+    assertMismatch(range(count), matchesList().item(0), equalTo(expected.toString()));
+  }
+
+  @Test
+  void sampledMatches() {
+    List<Integer> actual = range(1_000_000);
+    assertMap(actual, matchesList(range(1_000_000)).sampled(Sample.count(100)));
+  }
+
+  @Test
+  void sampledSkipsUnsampled() {
+    List<Integer> actual = range(1000);
+    actual.set(500, -1);
+    Sample sample = Sample.count(0).edges(1).seed(1);
+    assertMap(actual, matchesList(range(1000)).sampled(sample));
+  }
+
+  @Test
+  void sampledChecksEdges() {
+    List<Integer> actual = range(1000);
+    actual.set(999, -1);
+    Sample sample = Sample.count(0).edges(2).seed(1);
+    assertMismatch(actual, matchesList(range(1000)).sampled(sample), equalTo("""
+        a list containing 4 of 1000 items sampled with seed 1
+           0: <0>
+           1: <1>
+         998: <998>
+         999: expected <999> but was <-1>"""));
+  }
+
+  @Test
+  void sampledDescribeTo() {
+    Sample sample = Sample.count(0).edges(1).seed(7);
+    assertDescribeTo(matchesList(range(100)).sampled(sample), equalTo("""
+        a list containing 2 of 100 items sampled with seed 7
+          0: <0>
+         99: <99>"""));
+  }
+
+  @Test
+  void sampledWrongSize() {
+    Sample sample = Sample.count(0).edges(1).seed(7);
+    assertMismatch(range(3), matchesList(range(4)).sampled(sample), equalTo("""
+        a list containing 2 of 4 items sampled with seed 7
+        0: <0>
+        3: expected <3> but was <missing>"""));
+  }
+
+  @Test
+  void sampledNotRandomAccess() {
+    List<Integer> actual = new LinkedList<>(range(1000));
+    actual.set(999, -1);
+    Sample sample = Sample.count(10).edges(1).seed(1);
+    assertThat(matchesList(range(1000)).sampled(sample).matches(actual), equalTo(false));
+    actual.set(999, 999);
+    assertMap(actual, matchesList(range(1000)).sampled(sample));
+  }
+
+  @Test
+  void sampledKeepsSampleWhenAdding() {
+    Sample sample = Sample.count(0).edges(1).seed(7);
+    assertDescribeTo(matchesList(range(10)).sampled(sample).item(10), equalTo("""
+        a list containing 2 of 11 items sampled with seed 7
+         0: <0>
+        10: <10>"""));
+  }
+
+  @Test
+  void alignedInsertAtFront() {
+    List<Integer> actual = range(10_000);
+    actual.add(0, -1);
+    assertMismatch(actual, matchesList(range(10_000)).aligned(), equalTo("""
+        a list containing
+               0: <unexpected> but was <-1>
+        1..10000: 10000 matching items"""));
+  }
+
+  @Test
+  void alignedChanges() {
+    assertMismatch(List.of(1, 2, 5, 4, 6), matchesList(List.of(0, 1, 2, 3, 4)).aligned(),
+        equalTo("""
+            a list containing
+               0: expected <0> but was <missing>
+            0..1: 2 matching items
+               2: expected <3> but was <5>
+               3: <4>
+               4: <unexpected> but was <6>"""));
+  }
+
+  @Test
+  void alignedNested() {
+    List<Object> actual = List.of(Map.of("a", 0), Map.of("a", 2), Map.of("a", 3));
+    ListMatcher matcher = matchesList().item(matchesMap().entry("a", 1))
+        .item(matchesMap().entry("a", 2)).item(matchesMap().entry("a", 3)).aligned();
+    assertMismatch(actual, matcher, equalTo("""
+        a list containing
+           0: a map containing
+          a: expected <1> but was <0>
+        1..2: 2 matching items"""));
+  }
+
+  @Test
+  void alignedTooDifferent() {
+    List<Integer> actual = new ArrayList<>();
+    for (int i = 0; i < 2000; i++) {
+      actual.add(-i);
+    }
+    StringDescription description = new StringDescription();
+    matchesList(range(2000)).aligned().describeMismatch(actual, description);
+    assertThat(description.toString(), containsString("1999: expected <1999> but was <-1999>"));
+  }
+
+  @Test
+  void alignedKeepsAlignedWhenAdding() {
+    assertMismatch(List.of(0, 2), matchesList().aligned().item(1).item(2), equalTo("""
+        a list containing
+        0: expected <1> but was <0>
+        1: <2>"""));
+  }
+
+  private static final ListMatcher HITS = matchesList()
+      .item(matchesMap().entry("_id", "a").entry("_score", 1))
+      .item(matchesMap().entry("_id", "b").entry("_score", 2))
+      .item(matchesMap().entry("_id", "c").entry("_score", 3))
+      .keyedBy("_id");
+
+  @Test
+  void keyedAnyOrder() {
+    assertMap(List.of(
+        Map.of("_id", "c", "_score", 3),
+        Map.of("_id", "a", "_score", 1),
+        Map.of("_id", "b", "_score", 2)), HITS);
+  }
+
+  @Test
+  void keyedMismatch() {
+    assertMismatch(List.of(
+        Map.of("_id", "c", "_score", 3),
+        Map.of("_id", "a", "_score", 5),
+        Map.of("_id", "d")), HITS, equalTo("""
+        a list keyed by _id containing
+           a: a map containing
+           _id: "a"
+        _score: expected <1> but was <5>
+           b: expected a map but was <missing>
+           c: a map containing
+           _id: "c"
+        _score: <3>
+           d: <unexpected> but was <{_id=d}>"""));
+  }
+
+  @Test
+  void keyedDuplicate() {
+    assertMismatch(List.of(
+        Map.of("_id", "a", "_score", 1),
+        Map.of("_id", "a"),
+        Map.of("_score", 3)), HITS, equalTo("""
+        a list keyed by _id containing
+               a: a map containing
+               _id: "a"
+            _score: <1>
+               b: expected a map but was <missing>
+               c: expected a map but was <missing>
+               a: <unexpected> but was <{_id=a}>
+        <no key>: <unexpected> but was <{_score=3}>"""));
+  }
+
+  @Test
+  void keyedNestedPath() {
+    ListMatcher matcher = matchesList()
+        .item(matchesMap().entry("meta", Map.of("id", 1)).entry("v", "one"))
+        .item(matchesMap().entry("meta", Map.of("id", 2)).entry("v", "two"))
+        .keyedBy("meta", "id");
+    assertMap(List.of(
+        Map.of("meta", Map.of("id", 2), "v", "two"),
+        Map.of("meta", Map.of("id", 1), "v", "one")), matcher);
+    assertDescribeTo(matcher, equalTo("""
+        a list keyed by meta.id containing
+         1: a map containing
+        meta: a map containing
+            id: <1>
+           v: "one"
+         2: a map containing
+        meta: a map containing
+            id: <2>
+           v: "two\""""));
+  }
+
+  public record Hit(String id, int score) {}
+
+  @Test
+  void keyedBeans() {
+    Matcher<Object> matcher = matchesList()
+        .item(matchesMap().entry("id", "a").entry("score", 1))
+        .item(matchesMap().entry("id", "b").entry("score", 2))
+        .keyedBy("id")
+        .forBeans();
+    assertMap(List.of(new Hit("b", 2), new Hit("a", 1)), matcher);
+    assertThat(matcher.matches(List.of(new Hit("b", 1), new Hit("a", 1))), equalTo(false));
+  }
+
+  @Test
+  void keyedNeedsPlainKeys() {
+    ListMatcher matcher = matchesList().item(matchesMap().entry("_id", equalTo("a")));
+    Exception e = assertThrows(IllegalArgumentException.class, () -> matcher.keyedBy("_id"));
+    assertThat(e.getMessage(), equalTo(
+        "item [0] must have a plain value at [_id] but was a map containing\n_id: \"a\""));
+    ListMatcher keyed = matchesList().item(Map.of("_id", "a")).keyedBy("_id");
+    e = assertThrows(IllegalArgumentException.class, () -> keyed.item(Map.of("id", "b")));
+    assertThat(e.getMessage(), equalTo(
+        "item [1] must have a plain value at [_id] but was a map containing\nid: \"b\""));
+  }
+
+  @Test
+  void keyedNeedsUniqueKeys() {
+    ListMatcher matcher = matchesList().item(Map.of("_id", "a")).item(Map.of("_id", "a"));
+    Exception e = assertThrows(IllegalArgumentException.class, () -> matcher.keyedBy("_id"));
+    assertThat(e.getMessage(), equalTo("items [0] and [1] have the same key [a]"));
+    e = assertThrows(IllegalArgumentException.class,
+        () -> HITS.item(matchesMap().entry("_id", "b")));
+    assertThat(e.getMessage(), equalTo("items [1] and [3] have the same key [b]"));
+  }
+
+  /**
+   * Matchers appended to the same keyed matcher don't see each other's
+   * keys.
+   */
+  @Test
+  void keyedAppendTwice() {
+    ListMatcher d = HITS.item(matchesMap().entry("_id", "d").entry("_score", 4));
+    ListMatcher otherD = HITS.item(matchesMap().entry("_id", "d").entry("_score", 5));
+    ListMatcher e = d.item(Map.of("_id", "e"));
+    List<Map<String, Object>> actual = new ArrayList<>(List.of(
+        Map.of("_id", "c", "_score", 3),
+        Map.of("_id", "a", "_score", 1),
+        Map.of("_id", "b", "_score", 2)));
+    assertMap(actual, HITS);
+    actual.add(Map.of("_id", "d", "_score", 5));
+    assertMap(actual, otherD);
+    assertThat(d.matches(actual), equalTo(false));
+    actual.add(Map.of("_id", "e"));
+    assertThat(HITS.matches(actual), equalTo(false));
+    assertThat(e.matches(actual), equalTo(false));
+    actual.set(3, Map.of("_id", "d", "_score", 4));
+    assertMap(actual, e);
+  }
+
+  @Test
+  void keyedManyItems() {
+    ListMatcher matcher = matchesList().keyedBy("_id");
+    List<Object> actual = new ArrayList<>();
+    for (int i = 0; i < 10_000; i++) {
+      matcher = matcher.item(Map.of("_id", i));
+      actual.add(Map.of("_id", 9_999 - i));
+    }
+    assertMap(actual, matcher);
+  }
+
+  @Test
+  void keyedJsonReport() throws IOException {
+    StringWriter out = new StringWriter();
+    JsonReport.write(List.of(Map.of("_id", "b", "_score", 2)),
+        matchesList().item(Map.of("_id", "a")).item(Map.of("_id", "b")).keyedBy("_id"), out);
+    assertThat(out.toString(), equalTo("""
+        {"path":["a"],"status":"missing","expected":"a map"}
+        {"path":["b","_score"],"status":"unexpected","actual":2}
+        """));
+  }
+
+  @Test
+  void asPrefix() {
+    ListMatcher matcher = matchesList(List.of(1, 2)).asPrefix();
+    assertMap(List.of(1, 2, 3), matcher);
+    assertMap(new LinkedList<>(List.of(1, 2, 3)), matcher);
+    assertThat(matcher.matches(List.of(0, 1, 2)), equalTo(false));
+    assertThat(matcher.matches(List.of(1)), equalTo(false));
+    assertMismatch(List.of(1, 3, 4), matcher, equalTo("""
+        a list starting with
+        0: <1>
+        1: expected <2> but was <3>"""));
+  }
+
+  @Test
+  void asSuffix() {
+    ListMatcher matcher = matchesList(List.of(1, 2)).asSuffix();
+    assertMap(List.of(0, 1, 2), matcher);
+    assertMap(new LinkedList<>(List.of(0, 1, 2)), matcher);
+    assertThat(matcher.matches(List.of(1, 2, 3)), equalTo(false));
+    assertMismatch(List.of(7, 8, 9, 10, 11, 1, 3), matcher, equalTo("""
+        a list ending with
+        5: <1>
+        6: expected <2> but was <3>"""));
+    assertMismatch(List.of(2), matcher, equalTo("""
+        a list ending with
+        0: expected <1> but was <2>
+        1: expected <2> but was <missing>"""));
+  }
+
+  @Test
+  void asSubList() {
+    ListMatcher matcher = matchesList(List.of(1, 2, 3)).asSubList();
+    assertMap(List.of(0, 1, 2, 3, 4), matcher);
+    assertMap(List.of(1, 2, 3), matcher);
+    assertMap(new LinkedList<>(List.of(1, 1, 2, 3)), matcher);
+    assertThat(matcher.matches(List.of(1, 2, 4, 3)), equalTo(false));
+    assertMismatch(List.of(1, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1, 2, 4, 3), matcher, equalTo("""
+        a list containing the sub-list
+        10: <1>
+        11: <2>
+        12: expected <3> but was <4>"""));
+  }
+
+  @Test
+  void asSubListOfMaps() {
+    ListMatcher matcher = matchesList()
+        .item(matchesMap().entry("t", 1).entry("v", greaterThan(0)))
+        .item(matchesMap().entry("t", 2).entry("v", greaterThan(0)))
+        .asSubList();
+    assertMap(List.of(Map.of("t", 0, "v", 0), Map.of("t", 1, "v", 1), Map.of("t", 2, "v", 1)),
+        matcher);
+    assertMismatch(List.of(Map.of("t", 0, "v", 0), Map.of("t", 1, "v", 1)), matcher,
+        equalTo("""
+            a list containing the sub-list
+            1: a map containing
+              t: <1>
+              v: <1>
+            2: expected a map but was <missing>"""));
+  }
+
+  @Test
+  void asSubListOfPlainMaps() {
+    ListMatcher matcher = matchesList(List.of(Map.of("a", List.of(1, 2)), Map.of("a", 3)))
+        .asSubList();
+    assertMap(List.of(Map.of("a", 0), Map.of("a", List.of(1, 2)), Map.of("a", 3)), matcher);
+    // Not equal to the expected maps but matches them
+    assertMap(List.of(Map.of("a", IntBuffer.wrap(new int[] {1, 2})), Map.of("a", 3)), matcher);
+    assertMismatch(List.of(Map.of("a", 0), Map.of("a", List.of(1, 2)), Map.of("a", 4)), matcher,
+        equalTo("""
+            a list containing the sub-list
+            1: a map containing
+              a: a list containing
+                0: <1>
+                1: <2>
+            2: a map containing
+              a: expected <3> but was <4>"""));
+  }
+
+  @Test
+  void asSubListDescribeTo() {
+    assertDescribeTo(matchesList(List.of(1, 2)).asSubList(), equalTo("""
+        a list containing the sub-list
+        0: <1>
+        1: <2>"""));
+  }
+
+  @Test
+  void asSubListJsonReport() throws IOException {
+    StringWriter out = new StringWriter();
+    JsonReport.write(List.of(0, 1, 3), matchesList(List.of(1, 2)).asSubList(), out);
+    assertThat(out.toString(), equalTo("""
+        {"path":[2],"status":"mismatch","expected":"<2>","actual":3,"mismatch":"was <3>"}
+        """));
+  }
+
+  @Test
+  void asSubListNotKeyed() {
+    assertThrows(IllegalArgumentException.class,
+        () -> matchesList(List.of(Map.of("_id", 1))).keyedBy("_id").asSubList());
+    assertThrows(IllegalArgumentException.class,
+        () -> matchesList(List.of(Map.of("_id", 1))).asSubList().keyedBy("_id"));
+  }
+
+  private static List<Integer> range(int size) {
+    List<Integer> list = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      list.add(i);
+    }
+    return list;
+  }
+
   @Test
   public void immutable() {
     ListMatcher matcher = matchesList();
@@ -261,6 +766,18 @@ class ListMatcherTest {
     assertMap(List.of(), matcher);
   }
 
+  @Test
+  void immutableBranches() {
+    ListMatcher base = matchesList().item(0).item(1);
+    ListMatcher a = base.item("a");
+    ListMatcher b = base.item("b");
+    assertMap(List.of(0, 1), base);
+    assertMap(List.of(0, 1, "a"), a);
+    assertMap(List.of(0, 1, "b"), b);
+    assertMap(List.of(0, 1, "a", "c"), a.item("c"));
+    assertMap(List.of(0, 1, "a", "d"), a.item("d"));
+  }
+
   @Test
   void emptyDescribeTo() {
     assertDescribeTo(matchesList(), equalTo("an empty list"));
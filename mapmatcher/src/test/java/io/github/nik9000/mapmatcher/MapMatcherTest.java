@@ -11,22 +11,37 @@ import static io.github.nik9000.mapmatcher.MapMatcher.matchesMap;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.closeTo;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
 import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.ref.Reference;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
 
 import org.hamcrest.Matcher;
 import org.hamcrest.StringDescription;
 import org.junit.jupiter.api.Test;
 
 import com.google.gson.Gson;
+import com.sun.management.ThreadMXBean;
 
 class MapMatcherTest {
   static final Matcher<Double> SUBMATCHER = closeTo(1.0, .5);
@@ -334,6 +349,264 @@ class MapMatcherTest {
     return matchesMap(spec);
   }
 
+  @Test
+  void literalExtraOk() {
+    assertMap(Map.of("foo", 1, "bar", 2), matchesMap(Map.of("foo", 1)).extraOk());
+    assertMismatch(Map.of("foo", 2, "bar", 2), matchesMap(Map.of("foo", 1)).extraOk(),
+        equalTo("""
+            a map containing
+            foo: expected <1> but was <2>
+            bar: <2> unexpected but ok"""));
+  }
+
+  @Test
+  void literalThenMatcher() {
+    MapMatcher matcher = matchesMap().entry("foo", 1).entry("bar", greaterThan(1));
+    assertMap(Map.of("foo", 1, "bar", 2), matcher);
+    assertMismatch(Map.of("foo", 1, "bar", 1), matcher, equalTo("""
+        a map containing
+        foo: <1>
+        bar: expected a value greater than <1> but <1> was equal to <1>"""));
+  }
+
+  @Test
+  void literalIsCopied() {
+    Map<String, Object> sub = new HashMap<>();
+    sub.put("bar", 1);
+    Map<String, Object> spec = new HashMap<>();
+    spec.put("foo", sub);
+    MapMatcher matcher = matchesMap(spec);
+    sub.put("bar", 2);
+    spec.put("baz", 3);
+    assertMap(Map.of("foo", Map.of("bar", 1)), matcher);
+  }
+
+  @Test
+  void literalArray() {
+    assertMap(Map.of("foo", new int[] {1, 2}), matchesMap().entry("foo", new int[] {1, 2}));
+  }
+
+  /**
+   * Subtrees made only of plain values match with one equals call against
+   * a view of the expected values.
+   */
+  @Test
+  void literalView() {
+    Map<String, Object> fixture = Map.of("foo", Map.of("bar", List.of(1, 2)), "baz", "a");
+    MapMatcher matcher = matchesMap(fixture);
+    assertThat(matcher.literalDepth(), equalTo(3));
+    assertThat(matcher.literal(), equalTo(fixture));
+    assertThat(matcher.extraOk().literalDepth(), equalTo(-1));
+    assertThat(matcher.entry("leaf", greaterThan(0)).literalDepth(), equalTo(-1));
+  }
+
+  /**
+   * Subtrees made only of plain values match with one equals call so
+   * they count as one node.
+   */
+  @Test
+  void literalMatchesInOneStep() {
+    Map<String, Object> fixture = Map.of("foo", Map.of("bar", List.of(1, 2)), "baz", "a");
+    assertThat(visited(matchesMap(fixture), fixture), equalTo(1L));
+    // Only the root is extraOk so its children still match in one step
+    assertThat(visited(matchesMap(fixture).extraOk(), fixture), equalTo(3L));
+    MapMatcher withLeaf = matchesMap(fixture).entry("leaf", greaterThan(0));
+    Map<String, Object> actual = new HashMap<>(fixture);
+    actual.put("leaf", 1);
+    assertThat(visited(withLeaf, actual), equalTo(4L));
+  }
+
+  /**
+   * Subtrees made only of plain values that don't match are walked and
+   * described as usual.
+   */
+  @Test
+  void literalMismatch() {
+    Map<String, Object> fixture = Map.of("foo", Map.of("bar", List.of(1, 2)));
+    Map<String, Object> actual = Map.of("foo", Map.of("bar", List.of(1, 3)));
+    assertThat(visited(matchesMap(fixture), actual), equalTo(5L));
+    assertMismatch(actual, matchesMap(fixture), equalTo("""
+        a map containing
+        foo: a map containing
+          bar: a list containing
+              0: <1>
+              1: expected <2> but was <3>"""));
+  }
+
+  @Test
+  void literalDuplicate() {
+    Exception e = assertThrows(IllegalArgumentException.class,
+        () -> matchesMap().entry("foo", 1).entry("foo", 2));
+    assertThat(e.getMessage(), equalTo("Already had an entry for [foo]: <1>"));
+  }
+
+  /**
+   * Building a matcher from a fixture should take less memory than the
+   * fixture itself.
+   */
+  @Test
+  void footprint() {
+    ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+    assumeTrue(threads.isThreadAllocatedMemorySupported());
+    long start = threads.getCurrentThreadAllocatedBytes();
+    Map<String, Object> fixture = new LinkedHashMap<>();
+    for (int i = 0; i < 10000; i++) {
+      Map<String, Object> doc = new LinkedHashMap<>();
+      doc.put("id", i);
+      doc.put("name", "doc" + i);
+      doc.put("tags", List.of("a", "b"));
+      fixture.put("doc" + i, doc);
+    }
+    long fixtureBytes = threads.getCurrentThreadAllocatedBytes() - start;
+
+    start = threads.getCurrentThreadAllocatedBytes();
+    MapMatcher matcher = matchesMap(fixture);
+    long matcherBytes = threads.getCurrentThreadAllocatedBytes() - start;
+
+    assertThat(matcherBytes, lessThan(fixtureBytes));
+    assertMap(fixture, matcher);
+  }
+
+  /**
+   * A matcher should retain much less heap than the per-entry tree we used
+   * to build: a {@link LinkedHashMap} for every map, an {@link ArrayList}
+   * for every list, and an {@code equalTo} for every leaf. Both share the
+   * fixture's keys and values so we only count their own structure.
+   */
+  @Test
+  void retainedSize() {
+    Map<String, Object> fixture = new LinkedHashMap<>();
+    for (int i = 0; i < 20000; i++) {
+      Map<String, Object> doc = new LinkedHashMap<>();
+      doc.put("id", i);
+      doc.put("name", "doc" + i);
+      doc.put("tags", List.of("a", "b"));
+      fixture.put("doc" + i, doc);
+    }
+
+    // GC timing makes any one measurement noisy so take the median of a few
+    long[] perEntryBytes = new long[5];
+    long[] compactBytes = new long[perEntryBytes.length];
+    for (int i = 0; i < perEntryBytes.length; i++) {
+      long start = usedAfterGc();
+      Object perEntry = PerEntry.of(fixture);
+      perEntryBytes[i] = usedAfterGc() - start;
+      Reference.reachabilityFence(perEntry);
+
+      start = usedAfterGc();
+      MapMatcher matcher = matchesMap(fixture);
+      assertMap(fixture, matcher);
+      compactBytes[i] = usedAfterGc() - start;
+      Reference.reachabilityFence(matcher);
+    }
+    Arrays.sort(perEntryBytes);
+    Arrays.sort(compactBytes);
+
+    assertThat(compactBytes[2], lessThan(perEntryBytes[2] / 2));
+  }
+
+  /**
+   * Heap in use once collecting garbage stops freeing any more of it.
+   */
+  private static long usedAfterGc() {
+    MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    long used = Long.MAX_VALUE;
+    for (int i = 0; i < 10; i++) {
+      System.gc();
+      System.runFinalization();
+      long now = memory.getHeapMemoryUsage().getUsed();
+      if (now == used) {
+        break;
+      }
+      used = now;
+    }
+    return used;
+  }
+
+  /**
+   * The per-entry tree {@link MapMatcher} and {@link ListMatcher} used to
+   * build.
+   */
+  private static final class PerEntry {
+    static Object of(Object value) {
+      if (value instanceof Map) {
+        Map<Object, Object> entries = new LinkedHashMap<>();
+        for (Map.Entry<?, ?> e : ((Map<?, ?>) value).entrySet()) {
+          entries.put(e.getKey(), of(e.getValue()));
+        }
+        return new PerEntry(entries);
+      }
+      if (value instanceof List) {
+        List<Object> items = new ArrayList<>();
+        for (Object item : (List<?>) value) {
+          items.add(of(item));
+        }
+        return new PerEntry(items);
+      }
+      return equalTo(value);
+    }
+
+    /**
+     * Stands in for {@code TypeSafeMatcher}'s field.
+     */
+    private final Class<?> expectedType = Object.class;
+    private final Object matchers;
+
+    private PerEntry(Object matchers) {
+      this.matchers = matchers;
+    }
+  }
+
+  /**
+   * Once the matcher's caches are warm matching plain values shouldn't
+   * allocate.
+   */
+  @Test
+  void matchingDoesNotAllocate() {
+    ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+    assumeTrue(threads.isThreadAllocatedMemorySupported());
+    Map<String, Object> doc = new LinkedHashMap<>();
+    doc.put("id", 1);
+    doc.put("name", "doc");
+    doc.put("tags", List.of("a", "b"));
+    doc.put("nested", Map.of("n", 2.0));
+    List<Object> items = new ArrayList<>();
+    ListMatcher itemsMatcher = matchesList();
+    for (int i = 0; i < 100; i++) {
+      items.add(Map.of("i", i));
+      itemsMatcher = itemsMatcher.item(matchesMap().entry("i", i));
+    }
+    doc.put("items", items);
+    MapMatcher matcher = matchesMap().entry("id", Leaf.of("positive", v -> (int) v > 0))
+        .entry("name", startsWith("d"))
+        .entry("tags", List.of("a", "b"))
+        .entry("nested", Map.of("n", 2.0))
+        .entry("items", itemsMatcher);
+    for (int i = 0; i < 1000; i++) {
+      matcher.matches(doc);
+    }
+    long start = threads.getCurrentThreadAllocatedBytes();
+    for (int i = 0; i < 10000; i++) {
+      matcher.matches(doc);
+    }
+    long bytes = threads.getCurrentThreadAllocatedBytes() - start;
+    assertThat(bytes, lessThan(1024L));
+  }
+
+  /**
+   * Leaf matchers that match with their own {@linkplain MapMatcher}s
+   * nest inside the match that called them.
+   */
+  @Test
+  void nestedMatches() {
+    MapMatcher inner = matchesMap().entry("b", 1);
+    Leaf viaInner = Leaf.of("matches inner", inner::matches);
+    MapMatcher outer = matchesMap().entry("a", viaInner).entry("c", 2);
+    assertMap(Map.of("a", Map.of("b", 1), "c", 2), outer);
+    assertThat(outer.matches(Map.of("a", Map.of("b", 2), "c", 2)), equalTo(false));
+    assertThat(outer.matches(Map.of("a", Map.of("b", 1), "c", 3)), equalTo(false));
+  }
+
   @Test
   void big() throws IOException {
     assertMap(read("es-response.json"),
@@ -376,6 +649,178 @@ class MapMatcherTest {
                                             .item(closeTo(40.76345, 0.000005))))))));
   }
 
+  @Test
+  void diffSame() {
+    Map<String, Object> a = Map.of("a", 1, "b", List.of(1, Map.of("c", "d")), "e", new int[] {1});
+    Map<String, Object> b = Map.of("a", 1, "b", List.of(1, Map.of("c", "d")), "e", new int[] {1});
+    assertThat(MapMatcher.diff(a, b), equalTo(null));
+    assertThat(MapMatcher.diff(List.of(a), List.of(b)), equalTo(null));
+    assertThat(MapMatcher.diff(1, 1), equalTo(null));
+  }
+
+  @Test
+  void diffDifferent() {
+    Map<String, Object> a = Map.of("a", 1, "b", List.of(1, 2));
+    Map<String, Object> b = Map.of("a", 2, "b", List.of(1, 2, 3));
+    StringDescription expected = new StringDescription();
+    matchesMap(a).describeMismatch(b, expected);
+    assertThat(MapMatcher.diff(a, b), equalTo(expected.toString()));
+    assertThat(MapMatcher.diff(Map.of("a", 1), Map.of("b", 1)), equalTo("""
+        a map containing
+        a: expected <1> but was <missing>
+        b: <unexpected> but was <1>"""));
+    assertThat(MapMatcher.diff(List.of(1), List.of()), equalTo("""
+        a list containing
+        0: expected <1> but was <missing>"""));
+    assertThat(MapMatcher.diff(Map.of("a", List.of()), Map.of("a", 1)), equalTo("""
+        a map containing
+        a: expected an empty list but was a java.lang.Integer (<1>)"""));
+  }
+
+  @Test
+  void diffSkipsSameReferences() {
+    Map<String, Object> shared = new LinkedHashMap<>() {
+      @Override
+      public Set<Map.Entry<String, Object>> entrySet() {
+        throw new AssertionError("shouldn't read");
+      }
+    };
+    assertThat(MapMatcher.diff(Map.of("a", shared), Map.of("a", shared)), equalTo(null));
+  }
+
+  /**
+   * {@link MapMatcher#diff} doesn't read beans, same as a matcher that
+   * isn't {@link MapMatcher#forBeans for beans}.
+   */
+  @Test
+  void diffBean() {
+    record Point(int x, int y) {}
+    Map<String, Object> expected = new TreeMap<>(Map.of("x", 1, "y", 2));
+    assertThat(MapMatcher.diff(Map.of("p", expected), Map.of("p", new Point(1, 2))), equalTo("""
+            a map containing
+            p: expected a map containing
+            x: <1>
+            y: <2> but was a io.github.nik9000.mapmatcher.MapMatcherTest$1Point \
+            (<Point[x=1, y=2]>)"""));
+  }
+
+  /**
+   * {@link MapMatcher#diff} should agree with the matchers about what
+   * matches.
+   */
+  @Test
+  void diffAgreesWithMatchers() {
+    Random random = new Random(0);
+    for (int i = 0; i < 1000; i++) {
+      Object a = randomDoc(random, 3);
+      Object b = random.nextBoolean() ? randomDoc(random, 3) : copy(a);
+      boolean matches = matchesMap().entry("doc", a).matches(Collections.singletonMap("doc", b));
+      assertThat(a + " vs " + b, MapMatcher.diff(a, b) == null, equalTo(matches));
+    }
+  }
+
+  private static Object randomDoc(Random random, int depth) {
+    switch (depth == 0 ? 3 : random.nextInt(4)) {
+      case 0:
+        Map<String, Object> map = new LinkedHashMap<>();
+        for (int i = random.nextInt(3); i > 0; i--) {
+          map.put(Integer.toString(random.nextInt(3)), randomDoc(random, depth - 1));
+        }
+        return map;
+      case 1:
+        List<Object> list = new ArrayList<>();
+        for (int i = random.nextInt(3); i > 0; i--) {
+          list.add(randomDoc(random, depth - 1));
+        }
+        return list;
+      case 2:
+        return random.nextBoolean() ? null : "s";
+      default:
+        return random.nextInt(2);
+    }
+  }
+
+  private static Object copy(Object doc) {
+    if (doc instanceof Map<?, ?> map) {
+      Map<Object, Object> copy = new LinkedHashMap<>();
+      map.forEach((k, v) -> copy.put(k, copy(v)));
+      return copy;
+    }
+    if (doc instanceof List<?> list) {
+      List<Object> copy = new ArrayList<>();
+      list.forEach(v -> copy.add(copy(v)));
+      return copy;
+    }
+    return doc;
+  }
+
+  /**
+   * An {@linkplain MapMatcher#adaptive adaptive} matcher should learn to
+   * check a cheap entry that usually fails before an expensive one.
+   */
+  @Test
+  void adaptiveChecksCheapFailuresFirst() {
+    List<Integer> big = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      big.add(i);
+    }
+    Map<String, Object> actual = new LinkedHashMap<>();
+    actual.put("big", big);
+    actual.put("status", "failed");
+    // A matcher in the list so it's walked item by item rather than compared in one step
+    ListMatcher bigMatcher = matchesList(big).item(greaterThan(0)).item(greaterThan(0));
+    big.add(1);
+    big.add(1);
+    MapMatcher declared = matchesMap().entry("big", bigMatcher).entry("status", "ok");
+    MapMatcher adaptive = declared.adaptive();
+    for (int i = 0; i < EntryOrder.REORDER_EVERY; i++) {
+      assertThat(adaptive.matches(actual), equalTo(false));
+    }
+    assertThat(visited(declared, actual), equalTo(1005L));
+    assertThat(visited(adaptive, actual), equalTo(2L));
+
+    // Still described in the order the entries were declared
+    StringDescription description = new StringDescription();
+    adaptive.describeMismatch(actual, description);
+    StringDescription expected = new StringDescription();
+    declared.describeMismatch(actual, expected);
+    assertThat(description.toString(), equalTo(expected.toString()));
+  }
+
+  @Test
+  void adaptiveNested() {
+    MapMatcher adaptive = matchesMap()
+        .entry("a", matchesMap().entry("b", 1).entry("c", 2).adaptive())
+        .entry("d", 3)
+        .adaptive();
+    for (int i = 0; i < EntryOrder.REORDER_EVERY; i++) {
+      assertThat(adaptive.matches(Map.of("a", Map.of("b", 1, "c", 1), "d", 3)), equalTo(false));
+    }
+    assertThat(adaptive.matches(Map.of("a", Map.of("b", 1, "c", 2), "d", 3)), equalTo(true));
+    assertThat(adaptive.matches(Map.of("a", Map.of("b", 2, "c", 2), "d", 3)), equalTo(false));
+    assertThat(adaptive.matches(Map.of("a", Map.of("b", 1, "c", 2), "d", 4)), equalTo(false));
+    assertThat(adaptive.matches(Map.of("a", Map.of("b", 1, "c", 2), "e", 3)), equalTo(false));
+  }
+
+  public record Point(int x, int y) {}
+
+  @Test
+  void adaptiveBean() {
+    MapMatcher adaptive = matchesMap().entry("x", 1).entry("y", 2).entry("z", 3).adaptive();
+    for (int i = 0; i < EntryOrder.REORDER_EVERY * 2; i++) {
+      assertThat(adaptive.forBeans().matches(new Point(1, 2)), equalTo(false));
+    }
+    assertThat(adaptive.entry("w", 0).forBeans().matches(new Point(1, 2)), equalTo(false));
+    assertThat(matchesMap().entry("x", 1).entry("y", 2).adaptive().forBeans()
+        .matches(new Point(1, 2)), equalTo(true));
+  }
+
+  private static long visited(MapMatcher matcher, Object actual) {
+    MatchStats.start();
+    matcher.matches(actual);
+    return MatchStats.stop().nodes();
+  }
+
   @Test
   public void immutable() {
     MapMatcher matcher = matchesMap();
@@ -383,6 +828,35 @@ class MapMatcherTest {
     assertMap(Map.of(), matcher);
   }
 
+  @Test
+  void immutableBranches() {
+    MapMatcher base = matchesMap();
+    Map<String, Object> expected = new LinkedHashMap<>();
+    for (int i = 0; i < 20; i++) {
+      base = base.entry(Integer.toString(i), i);
+      expected.put(Integer.toString(i), i);
+    }
+    MapMatcher a = base.entry("a", 1);
+    MapMatcher b = base.entry("b", 2);
+    MapMatcher c = base.extraOk().entry("a", 3);
+    assertMap(expected, base);
+    Map<String, Object> expectedA = new LinkedHashMap<>(expected);
+    expectedA.put("a", 1);
+    assertMap(expectedA, a);
+    Map<String, Object> expectedB = new LinkedHashMap<>(expected);
+    expectedB.put("b", 2);
+    assertMap(expectedB, b);
+    assertMap(expectedB, not(a));
+    assertThat(a.indexOf("b"), equalTo(-1));
+    assertThat(b.indexOf("a"), equalTo(-1));
+    assertThat(base.indexOf("a"), equalTo(-1));
+    assertThat(c.indexOf("a"), equalTo(20));
+    assertThat(c.expected(20), equalTo(3));
+    expectedA.put("after", 1);
+    expectedA.put("extra", 1);
+    assertMap(expectedA, a.entry("after", 1).extraOk());
+  }
+
   private Map<?, ?> read(String file) throws IOException {
     try (InputStream data = Thread.currentThread()
         .getContextClassLoader()
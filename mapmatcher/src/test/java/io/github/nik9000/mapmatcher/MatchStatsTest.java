@@ -0,0 +1,91 @@
+/*
+ * Copyright 2021 Nikolas Everett
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.github.nik9000.mapmatcher;
+
+import static io.github.nik9000.mapmatcher.ListMatcher.matchesList;
+import static io.github.nik9000.mapmatcher.MapMatcher.assertMap;
+import static io.github.nik9000.mapmatcher.MapMatcher.matchesMap;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class MatchStatsTest {
+  @AfterEach
+  void stop() {
+    MatchStats.stop();
+  }
+
+  @Test
+  void notRecording() {
+    assertThat(MatchStats.current(), nullValue());
+    assertThat(MatchStats.stop(), nullValue());
+  }
+
+  @Test
+  void match() {
+    MatchStats.start();
+    assertMap(Map.of("a", 1, "b", List.of(1, 2)),
+        matchesMap().entry("a", 1).entry("b", matchesList().item(1).item(greaterThan(1))));
+    MatchStats stats = MatchStats.stop();
+    assertThat(stats.matches(), equalTo(1L));
+    assertThat(stats.nodes(), equalTo(5L));
+    assertThat(stats.matchNanos(), greaterThan(0L));
+    assertThat(stats.renderNanos(), equalTo(0L));
+    assertThat(stats.failures(), equalTo(0L));
+    assertThat(stats.messageChars(), equalTo(0L));
+  }
+
+  @Test
+  void failure() {
+    MatchStats.start();
+    AssertionError e = assertThrows(AssertionError.class,
+        () -> assertMap(Map.of("a", 1), matchesMap().entry("a", 2)));
+    String message = e.getMessage();
+    MatchStats stats = MatchStats.stop();
+    assertThat(stats.matches(), equalTo(1L));
+    assertThat(stats.renderNanos(), greaterThan(0L));
+    assertThat(stats.failures(), equalTo(1L));
+    assertThat(stats.messageChars(), equalTo((long) message.length()));
+  }
+
+  @Test
+  void nestedCountsOnce() {
+    MatchStats.start();
+    assertMap(Map.of("l", List.of(Map.of("a", 1), Map.of("a", 2))),
+        matchesMap().entry("l", containsInAnyOrder(
+            matchesMap().entry("a", 2), matchesMap().entry("a", 1))));
+    MatchStats stats = MatchStats.stop();
+    assertThat(stats.matches(), equalTo(1L));
+    assertThat(stats.nodes(), greaterThan(1L));
+  }
+
+  @Test
+  void startResets() {
+    MatchStats.start();
+    assertMap(Map.of("a", 1), matchesMap().entry("a", 1));
+    MatchStats.start();
+    assertThat(MatchStats.stop().matches(), equalTo(0L));
+    assertThat(MatchStats.current(), nullValue());
+  }
+
+  @Test
+  void otherThreadsDontRecord() throws InterruptedException {
+    MatchStats.start();
+    Thread thread = new Thread(() -> matchesMap().entry("a", 1).matches(Map.of("a", 1)));
+    thread.start();
+    thread.join();
+    assertThat(MatchStats.stop().matches(), equalTo(0L));
+  }
+}
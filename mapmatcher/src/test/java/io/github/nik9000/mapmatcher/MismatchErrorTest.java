@@ -0,0 +1,105 @@
+/*
+ * Copyright 2021 Nikolas Everett
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.github.nik9000.mapmatcher;
+
+import static io.github.nik9000.mapmatcher.MapMatcher.assertMap;
+import static io.github.nik9000.mapmatcher.MapMatcher.matchesMap;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.StringWriter;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hamcrest.BaseMatcher;
+import org.hamcrest.Description;
+import org.junit.jupiter.api.Test;
+
+class MismatchErrorTest {
+  @Test
+  void message() {
+    MismatchError e = assertThrows(MismatchError.class,
+        () -> assertMap("reason ", Map.of("a", 1), matchesMap().entry("a", 2)));
+    assertThat(e.getMessage(), equalTo("""
+        reason Expected a map containing
+        a: expected <2> but was <1>"""));
+    assertThat(e.toString(), equalTo(MismatchError.class.getName() + ": " + e.getMessage()));
+    assertThat(e.getMessage(), sameInstance(e.getMessage()));
+  }
+
+  @Test
+  void lazy() {
+    CountingMatcher matcher = new CountingMatcher();
+    MismatchError e = assertThrows(MismatchError.class, () -> assertMap(1, matcher));
+    assertThat(matcher.described.get(), equalTo(0));
+    e.getMessage();
+    e.toString();
+    e.getLocalizedMessage();
+    assertThat(matcher.described.get(), equalTo(1));
+  }
+
+  @Test
+  void structured() throws IOException {
+    Map<String, Integer> actual = Map.of("a", 1);
+    MapMatcher matcher = matchesMap().entry("a", 2);
+    MismatchError e = assertThrows(MismatchError.class, () -> assertMap(actual, matcher));
+    assertThat(e.actual(), sameInstance(actual));
+    assertThat(e.matcher(), sameInstance(matcher));
+    assertThat(e.reason(), equalTo(""));
+    StringWriter report = new StringWriter();
+    e.writeReport(report);
+    StringWriter expected = new StringWriter();
+    JsonReport.write(actual, matcher, expected);
+    assertThat(report.toString(), equalTo(expected.toString()));
+  }
+
+  @Test
+  void serialize() throws IOException, ClassNotFoundException {
+    MismatchError e = assertThrows(MismatchError.class,
+        () -> assertMap(Map.of("a", 1), matchesMap().entry("a", 2)));
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(e);
+    }
+    MismatchError read;
+    try (ObjectInputStream in =
+        new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+      read = (MismatchError) in.readObject();
+    }
+    assertThat(read.getMessage(), equalTo(e.getMessage()));
+    assertThat(read.getMessage(), startsWith("Expected a map containing"));
+    assertThat(read.actual(), nullValue());
+  }
+
+  private static class CountingMatcher extends BaseMatcher<Object> {
+    private final AtomicInteger described = new AtomicInteger();
+
+    @Override
+    public boolean matches(Object actual) {
+      return false;
+    }
+
+    @Override
+    public void describeTo(Description description) {
+      description.appendText("never");
+    }
+
+    @Override
+    public void describeMismatch(Object item, Description description) {
+      described.incrementAndGet();
+      super.describeMismatch(item, description);
+    }
+  }
+}
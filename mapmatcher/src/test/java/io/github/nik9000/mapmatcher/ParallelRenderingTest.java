@@ -0,0 +1,151 @@
+/*
+ * Copyright 2021 Nikolas Everett
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.github.nik9000.mapmatcher;
+
+import static io.github.nik9000.mapmatcher.ListMatcher.matchesList;
+import static io.github.nik9000.mapmatcher.MapMatcher.matchesMap;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import org.hamcrest.Matcher;
+import org.hamcrest.StringDescription;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class ParallelRenderingTest {
+  private static final int SIZE = ParallelRendering.MIN_CHILDREN * 10 + 7;
+  private static final ForkJoinPool POOL = new ForkJoinPool(4);
+
+  @AfterAll
+  static void shutdown() {
+    POOL.shutdown();
+  }
+
+  @AfterEach
+  void disable() {
+    ParallelRendering.disable();
+  }
+
+  @Test
+  void enable() {
+    assertThat(ParallelRendering.isEnabled(), equalTo(false));
+    ParallelRendering.enable();
+    assertThat(ParallelRendering.isEnabled(), equalTo(true));
+    ParallelRendering.disable();
+    assertThat(ParallelRendering.isEnabled(), equalTo(false));
+  }
+
+  @Test
+  void map() {
+    Map<String, Object> expected = new LinkedHashMap<>();
+    Map<String, Object> actual = new LinkedHashMap<>();
+    for (int i = 0; i < SIZE; i++) {
+      expected.put("k" + i, Map.of("v", i));
+      actual.put("k" + i, Map.of("v", i % 97 == 0 ? -i : i));
+    }
+    actual.remove("k5");
+    actual.put("extra", 1);
+    assertSameAsSerial(matchesMap(expected), actual);
+  }
+
+  @Test
+  void list() {
+    assertSameAsSerial(matchesList(list(SIZE)), changed(list(SIZE + 3)));
+  }
+
+  @Test
+  void shortList() {
+    assertSameAsSerial(matchesList(list(SIZE)), changed(list(SIZE - 3)));
+  }
+
+  @Test
+  void nested() {
+    assertSameAsSerial(matchesMap().entry("a", matchesList(list(SIZE))),
+        Map.of("a", changed(list(SIZE))));
+  }
+
+  @Test
+  void aligned() {
+    List<Object> actual = changed(list(SIZE));
+    for (int i = 0; i < 100; i++) {
+      actual.add(i * 50, "inserted");
+    }
+    assertSameAsSerial(matchesList(list(SIZE)).aligned(), actual);
+  }
+
+  @Test
+  void sampled() {
+    assertSameAsSerial(matchesList(list(SIZE * 4)).sampled(Sample.count(SIZE).seed(1)),
+        changed(list(SIZE * 4)));
+  }
+
+  @Test
+  void notRandomAccess() {
+    assertSameAsSerial(matchesList(list(SIZE)), new LinkedList<>(changed(list(SIZE))));
+  }
+
+  @Test
+  void nestedInLeaves() {
+    List<Object> expected = new ArrayList<>(SIZE);
+    List<Object> actual = new ArrayList<>(SIZE);
+    for (int i = 0; i < SIZE; i++) {
+      expected.add(containsInAnyOrder(matchesMap().entry("v", i)));
+      actual.add(List.of(Map.of("v", i % 101 == 0 ? -i : i)));
+    }
+    assertSameAsSerial(matchesList(expected), actual);
+  }
+
+  @Test
+  void small() {
+    assertSameAsSerial(matchesList(list(10)), changed(list(10)));
+  }
+
+  /**
+   * Describing in parallel should produce exactly the same description
+   * and visit the same number of values as describing serially.
+   */
+  private static void assertSameAsSerial(Matcher<?> matcher, Object actual) {
+    MatchStats.start();
+    StringDescription serial = new StringDescription();
+    matcher.describeMismatch(actual, serial);
+    long serialNodes = MatchStats.stop().nodes();
+
+    ParallelRendering.enable(POOL);
+    MatchStats.start();
+    StringDescription parallel = new StringDescription();
+    matcher.describeMismatch(actual, parallel);
+    long parallelNodes = MatchStats.stop().nodes();
+
+    assertThat(serial.toString().length(), greaterThan(0));
+    assertThat(parallel.toString(), equalTo(serial.toString()));
+    assertThat(parallelNodes, equalTo(serialNodes));
+  }
+
+  private static List<Object> list(int size) {
+    List<Object> list = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      list.add(i);
+    }
+    return list;
+  }
+
+  private static List<Object> changed(List<Object> list) {
+    for (int i = 0; i < list.size(); i += 101) {
+      list.set(i, -i);
+    }
+    return list;
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2021 Nikolas Everett
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.github.nik9000.mapmatcher;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.not;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+class SampleTest {
+  @Test
+  void count() {
+    int[] indices = Sample.count(100).seed(1).indices(1_000_000);
+    assertThat(indices.length, equalTo(100 + 2 * Sample.DEFAULT_EDGES));
+    assertSortedAndDistinct(indices, 1_000_000);
+  }
+
+  @Test
+  void rate() {
+    int[] indices = Sample.rate(0.01).edges(0).seed(1).indices(100_000);
+    assertThat(indices.length, equalTo(1000));
+    assertSortedAndDistinct(indices, 100_000);
+  }
+
+  @Test
+  void edges() {
+    int[] indices = Sample.count(0).edges(3).indices(100);
+    assertThat(indices, equalTo(new int[] {0, 1, 2, 97, 98, 99}));
+  }
+
+  @Test
+  void small() {
+    assertThat(Sample.count(100).indices(5), equalTo(new int[] {0, 1, 2, 3, 4}));
+    assertThat(Sample.count(100).edges(0).indices(5), equalTo(new int[] {0, 1, 2, 3, 4}));
+    assertThat(Sample.rate(1).indices(30).length, equalTo(30));
+    assertThat(Sample.count(100).indices(0).length, equalTo(0));
+  }
+
+  @Test
+  void spread() {
+    int[] indices = Sample.count(10).edges(0).seed(1).indices(1000);
+    for (int i = 0; i < indices.length; i++) {
+      assertThat(indices[i] / 100, equalTo(i));
+    }
+  }
+
+  @Test
+  void reproducible() {
+    Sample sample = Sample.count(50).seed(1234);
+    assertThat(sample.indices(1_000_000), equalTo(sample.indices(1_000_000)));
+    assertThat(Sample.count(50).seed(1234).indices(1_000_000),
+        equalTo(sample.indices(1_000_000)));
+    assertThat(Sample.count(50).seed(4321).indices(1_000_000),
+        not(equalTo(sample.indices(1_000_000))));
+  }
+
+  @Test
+  void invalid() {
+    assertThrows(IllegalArgumentException.class, () -> Sample.count(-1));
+    assertThrows(IllegalArgumentException.class, () -> Sample.rate(1.5));
+    assertThrows(IllegalArgumentException.class, () -> Sample.rate(Double.NaN));
+    assertThrows(IllegalArgumentException.class, () -> Sample.count(1).edges(-1));
+  }
+
+  private static void assertSortedAndDistinct(int[] indices, int size) {
+    assertThat(indices[0], greaterThanOrEqualTo(0));
+    assertThat(indices[indices.length - 1], lessThan(size));
+    for (int i = 1; i < indices.length; i++) {
+      assertThat(Arrays.toString(Arrays.copyOfRange(indices, i - 1, i + 1)),
+          indices[i], greaterThan(indices[i - 1]));
+    }
+  }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2021 Nikolas Everett
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.github.nik9000.mapmatcher;
+
+import static io.github.nik9000.mapmatcher.ListMatcher.matchesList;
+import static io.github.nik9000.mapmatcher.MapMatcher.matchesMap;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class StreamingMatchTest {
+  @Test
+  void matches() {
+    StreamingMatch match = StreamingMatch.matching(matchesList(List.of(1, 2, 3)));
+    assertThat(match.offer(1), equalTo(false));
+    assertThat(match.offer(2), equalTo(false));
+    assertThat(match.offer(3), equalTo(false));
+    assertThat(match.isDecided(), equalTo(false));
+    assertThat(match.finish(), equalTo(true));
+    assertThat(match.matched(), equalTo(true));
+    assertThat(match.items(), equalTo(3L));
+    assertThat(match.report(), nullValue());
+  }
+
+  @Test
+  void mismatch() {
+    StreamingMatch match = StreamingMatch.matching(matchesList(List.of(1, 2, 3)));
+    assertThat(match.offer(1), equalTo(false));
+    assertThat(match.offer(5), equalTo(true));
+    assertThat(match.matched(), equalTo(false));
+    assertThat(match.finish(), equalTo(false));
+    assertThat(match.report(), equalTo("""
+        a list containing
+        1: expected <2> but was <5>"""));
+    Exception e = assertThrows(IllegalStateException.class, () -> match.offer(3));
+    assertThat(e.getMessage(), equalTo("already decided"));
+  }
+
+  @Test
+  void mismatchNested() {
+    StreamingMatch match = StreamingMatch.matching(matchesList()
+        .item(matchesMap().entry("type", "start").entry("timestamp", greaterThan(0))));
+    assertThat(match.offer(Map.of("type", "start", "timestamp", -1)), equalTo(true));
+    assertThat(match.report(), equalTo("""
+        a list containing
+              0: a map containing
+             type: "start"
+        timestamp: expected a value greater than <0> but <-1> was less than <0>"""));
+  }
+
+  @Test
+  void tooMany() {
+    StreamingMatch match = StreamingMatch.matching(matchesList(List.of(1)));
+    assertThat(match.offer(1), equalTo(false));
+    assertThat(match.offer("extra"), equalTo(true));
+    assertThat(match.report(), equalTo("""
+        a list containing
+        1: <unexpected> but was "extra\""""));
+  }
+
+  @Test
+  void tooFew() {
+    StreamingMatch match = StreamingMatch.matching(matchesList(List.of(1, 2)));
+    assertThat(match.offer(1), equalTo(false));
+    assertThat(match.finish(), equalTo(false));
+    assertThat(match.report(), equalTo("""
+        a list containing
+        1: expected <2> but was <missing>"""));
+  }
+
+  @Test
+  void prefixDecidesEarly() {
+    StreamingMatch match = StreamingMatch.matching(matchesList(List.of(1, 2)).asPrefix());
+    assertThat(match.offer(1), equalTo(false));
+    assertThat(match.offer(2), equalTo(true));
+    assertThat(match.matched(), equalTo(true));
+  }
+
+  @Test
+  void emptyPrefix() {
+    StreamingMatch match = StreamingMatch.matching(matchesList().asPrefix());
+    assertThat(match.isDecided(), equalTo(true));
+    assertThat(match.matched(), equalTo(true));
+  }
+
+  @Test
+  void eachItem() {
+    StreamingMatch match = StreamingMatch.eachItem(Map.of("ok", true));
+    for (int i = 0; i < 100; i++) {
+      assertThat(match.offer(Map.of("ok", true)), equalTo(false));
+    }
+    assertThat(match.offer(Map.of("ok", false)), equalTo(true));
+    assertThat(match.items(), equalTo(101L));
+    assertThat(match.report(), equalTo("""
+        every item is
+        100: a map containing
+           ok: expected <true> but was <false>"""));
+  }
+
+  @Test
+  void eachItemMatches() {
+    StreamingMatch match = StreamingMatch.eachItem(greaterThan(0));
+    match.offer(1);
+    match.offer(2);
+    assertThat(match.finish(), equalTo(true));
+    assertThat(match.toString(), equalTo("every item is a value greater than <0>"));
+  }
+
+  @Test
+  void needsWholeList() {
+    for (ListMatcher list : List.of(matchesList(List.of(1)).asSuffix(),
+        matchesList(List.of(1)).asSubList(),
+        matchesList().item(Map.of("id", 1)).keyedBy("id"),
+        matchesList(Collections.nCopies(1000, 1)).sampled(Sample.count(10).seed(1)))) {
+      Exception e = assertThrows(IllegalArgumentException.class,
+          () -> StreamingMatch.matching(list));
+      assertThat(e.getMessage(), equalTo("can't match a stream one item at a time with "
+          + list));
+    }
+  }
+}
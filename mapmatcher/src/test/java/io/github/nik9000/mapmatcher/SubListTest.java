@@ -0,0 +1,102 @@
+/*
+ * Copyright 2021 Nikolas Everett
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.github.nik9000.mapmatcher;
+
+import static io.github.nik9000.mapmatcher.ListMatcher.matchesList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class SubListTest {
+  @Test
+  void find() {
+    assertThat(find(List.of(1, 2), List.of(0, 1, 2, 3)), equalTo(1));
+    assertThat(find(List.of(1, 2), List.of(1, 2)), equalTo(0));
+    assertThat(find(List.of(1, 2), List.of(2, 1)), equalTo(-1));
+    assertThat(find(List.of(), List.of(2, 1)), equalTo(0));
+    assertThat(find(List.of(1), List.of()), equalTo(-1));
+  }
+
+  /**
+   * Patterns that overlap themselves are where Knuth-Morris-Pratt
+   * goes wrong if the failure function is wrong.
+   */
+  @Test
+  void findSelfOverlapping() {
+    assertThat(find(List.of("a", "a", "b"), List.of("a", "a", "a", "b")), equalTo(1));
+    assertThat(find(List.of("a", "b", "a", "c"), List.of("a", "b", "a", "b", "a", "c")),
+        equalTo(2));
+    assertThat(find(List.of("a", "a", "a"), List.of("a", "a", "b", "a", "a", "a")),
+        equalTo(3));
+  }
+
+  @Test
+  void findWithMatchers() {
+    ListMatcher matcher = matchesList().item(1).item(greaterThanOrEqualTo(5)).asSubList();
+    assertThat(SubList.find(matcher, List.of(1, 2, 1, 7)), equalTo(2));
+    assertThat(SubList.find(matcher, List.of(1, 2, 1, 3)), equalTo(-1));
+  }
+
+  @Test
+  void alignBest() {
+    ListMatcher matcher = matchesList(List.of(1, 2, 3, 4)).asSubList();
+    assertThat(SubList.align(matcher, List.of(1, 2, 0, 1, 2, 3, 0)).offset(), equalTo(3));
+    assertThat(SubList.align(matcher, List.of(0, 0, 0)).offset(), equalTo(0));
+    assertThat(SubList.align(matcher, List.of(0, 0, 1)).offset(), equalTo(2));
+  }
+
+  @Test
+  void alignPrefixAndSuffix() {
+    assertThat(SubList.align(matchesList(List.of(1, 2)).asPrefix(), List.of(0, 1, 2)).offset(),
+        equalTo(0));
+    assertThat(SubList.align(matchesList(List.of(1, 2)).asSuffix(), List.of(0, 1, 2)).offset(),
+        equalTo(1));
+    assertThat(SubList.align(matchesList(List.of(1, 2)).asSuffix(), List.of(2)).offset(),
+        equalTo(0));
+  }
+
+  /**
+   * Knuth-Morris-Pratt should find the same position as trying every
+   * position.
+   */
+  @Test
+  void agreesWithNaive() {
+    Random random = new Random(1);
+    for (int round = 0; round < 1000; round++) {
+      List<Object> expected = new ArrayList<>();
+      int m = random.nextInt(5);
+      for (int i = 0; i < m; i++) {
+        expected.add(random.nextInt(3));
+      }
+      Object[] actual = new Object[random.nextInt(20)];
+      for (int i = 0; i < actual.length; i++) {
+        actual[i] = random.nextInt(3);
+      }
+      assertThat(expected + " in " + List.of(actual),
+          SubList.find(matchesList(expected).asSubList(), List.of(actual)),
+          equalTo(naive(expected, actual)));
+    }
+  }
+
+  private static int naive(List<Object> expected, Object[] actual) {
+    for (int offset = 0; offset + expected.size() <= actual.length; offset++) {
+      if (expected.equals(List.of(actual).subList(offset, offset + expected.size()))) {
+        return offset;
+      }
+    }
+    return -1;
+  }
+
+  private static int find(List<?> expected, List<?> actual) {
+    return SubList.find(matchesList(expected).asSubList(), actual);
+  }
+}
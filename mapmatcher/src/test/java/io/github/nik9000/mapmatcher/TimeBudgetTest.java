@@ -0,0 +1,236 @@
+/*
+ * Copyright 2021 Nikolas Everett
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.github.nik9000.mapmatcher;
+
+import static io.github.nik9000.mapmatcher.ListMatcher.matchesList;
+import static io.github.nik9000.mapmatcher.MapMatcher.assertMap;
+import static io.github.nik9000.mapmatcher.MapMatcher.matchesMap;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.matchesPattern;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.IntBuffer;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class TimeBudgetTest {
+  private static final long SLOW_MILLIS = 200;
+
+  @AfterEach
+  void disable() {
+    TimeBudget.disable();
+  }
+
+  @Test
+  void enable() {
+    assertThat(TimeBudget.isEnabled(), equalTo(false));
+    TimeBudget.enable(10, 100);
+    assertThat(TimeBudget.isEnabled(), equalTo(true));
+    TimeBudget.disable();
+    assertThat(TimeBudget.isEnabled(), equalTo(false));
+  }
+
+  @Test
+  void badBudgets() {
+    Exception e = assertThrows(IllegalArgumentException.class, () -> TimeBudget.enable(0, 100));
+    assertThat(e.getMessage(), equalTo("leafMillis must be at least 1 but was [0]"));
+    e = assertThrows(IllegalArgumentException.class, () -> TimeBudget.enable(10, -1));
+    assertThat(e.getMessage(), equalTo("assertionMillis must be at least 1 but was [-1]"));
+  }
+
+  /**
+   * A leaf that takes too long doesn't match and the rest of the tree is
+   * described as usual. Describing doesn't call the slow leaf again.
+   */
+  @Test
+  void slowLeaf() {
+    TimeBudget.enable(20, 10_000);
+    AtomicInteger calls = new AtomicInteger();
+    Leaf slow = Leaf.of("a slow check", v -> {
+      calls.incrementAndGet();
+      sleep(SLOW_MILLIS);
+      return true;
+    });
+    Map<String, Object> actual = new LinkedHashMap<>();
+    actual.put("a", 1);
+    actual.put("slow", "x");
+    actual.put("b", 2);
+    MapMatcher matcher = matchesMap().entry("a", 1).entry("slow", slow).entry("b", 3);
+    MismatchError e = assertThrows(MismatchError.class, () -> assertMap(actual, matcher));
+    assertThat(e.getMessage(), matchesPattern("""
+        Expected a map containing
+           a: <1>
+        slow: expected a slow check but timed out after \\d+ ms
+           b: expected <3> but was <2>"""));
+    assertThat(calls.get(), equalTo(1));
+  }
+
+  /**
+   * Once the assertion is out of time we stop calling leaves.
+   */
+  @Test
+  void assertionBudget() {
+    TimeBudget.enable(SLOW_MILLIS * 2, SLOW_MILLIS / 2);
+    AtomicInteger calls = new AtomicInteger();
+    Leaf slowish = Leaf.of("a slowish check", v -> {
+      calls.incrementAndGet();
+      sleep(SLOW_MILLIS);
+      return true;
+    });
+    ListMatcher matcher = matchesList(Collections.nCopies(3, slowish));
+    assertThat(matcher.matches(List.of(1, 2, 3)), equalTo(false));
+    assertThat(calls.get(), equalTo(1));
+  }
+
+  /**
+   * Leaves we skip because the assertion is out of time are described as
+   * not checked rather than timed out.
+   */
+  @Test
+  void skippedLeaves() {
+    TimeBudget.enable(SLOW_MILLIS * 2, SLOW_MILLIS / 2);
+    Leaf slowish = Leaf.of("a slowish check", v -> {
+      sleep(SLOW_MILLIS);
+      return true;
+    });
+    ListMatcher matcher = matchesList(Collections.nCopies(3, slowish));
+    MismatchError e = assertThrows(MismatchError.class,
+        () -> assertMap(List.of(1, 2, 3), matcher));
+    assertThat(e.getMessage(), equalTo("""
+        Expected a list containing
+        0: <1>
+        1: expected a slowish check but not checked: assertion budget exhausted
+        2: expected a slowish check but not checked: assertion budget exhausted"""));
+  }
+
+  /**
+   * A leaf that timed out in one assertion is called again in the next.
+   */
+  @Test
+  void timeoutsDontOutliveTheAssertion() {
+    TimeBudget.enable(SLOW_MILLIS / 2, 10_000);
+    AtomicInteger calls = new AtomicInteger();
+    Leaf slowOnce = Leaf.of("a check", v -> {
+      if (calls.getAndIncrement() == 0) {
+        sleep(SLOW_MILLIS);
+      }
+      return true;
+    });
+    MapMatcher matcher = matchesMap().entry("a", slowOnce);
+    Map<String, Object> actual = Map.of("a", 1);
+    assertThat(matcher.matches(actual), equalTo(false));
+    assertMap(actual, matcher);
+    assertThat(calls.get(), equalTo(2));
+  }
+
+  /**
+   * Reading a buffer makes a new value each time. We remember the leaf
+   * timed out by its path so describing still doesn't call it again.
+   */
+  @Test
+  void slowLeafInBuffer() {
+    TimeBudget.enable(20, 10_000);
+    AtomicInteger calls = new AtomicInteger();
+    Leaf slow = Leaf.of("a slow check", v -> {
+      calls.incrementAndGet();
+      sleep(SLOW_MILLIS);
+      return true;
+    });
+    Map<String, Object> actual = Map.of("a", IntBuffer.wrap(new int[] {1000, 2000}));
+    MapMatcher matcher = matchesMap().entry("a", matchesList().item(1000).item(slow));
+    MismatchError e = assertThrows(MismatchError.class, () -> assertMap(actual, matcher));
+    assertThat(e.getMessage(), matchesPattern("""
+        Expected a map containing
+        a: a list containing
+          0: <1000>
+          1: expected a slow check but timed out after \\d+ ms"""));
+    assertThat(calls.get(), equalTo(1));
+  }
+
+  /**
+   * The error describes the mismatch with the budget of the assertion
+   * that threw it, even once the thread has turned budgets off.
+   */
+  @Test
+  void errorKeepsTheBudget() {
+    TimeBudget.enable(20, 10_000);
+    AtomicInteger calls = new AtomicInteger();
+    Leaf slow = Leaf.of("a slow check", v -> {
+      calls.incrementAndGet();
+      sleep(SLOW_MILLIS);
+      return true;
+    });
+    MapMatcher matcher = matchesMap().entry("a", slow);
+    MismatchError e = assertThrows(MismatchError.class, () -> assertMap(Map.of("a", 1), matcher));
+    TimeBudget.disable();
+    assertThat(e.getMessage(), matchesPattern("""
+        Expected a map containing
+        a: expected a slow check but timed out after \\d+ ms"""));
+    assertThat(calls.get(), equalTo(1));
+  }
+
+  /**
+   * Budgets belong to the thread that enabled them so tests running in
+   * parallel don't share them.
+   */
+  @Test
+  void budgetsArePerThread() throws Exception {
+    TimeBudget.enable(1, 10_000);
+    Leaf slow = Leaf.of("a slow check", v -> {
+      sleep(SLOW_MILLIS / 10);
+      return true;
+    });
+    AtomicReference<Boolean> otherEnabled = new AtomicReference<>();
+    AtomicReference<Throwable> otherFailure = new AtomicReference<>();
+    Thread other = new Thread(() -> {
+      try {
+        otherEnabled.set(TimeBudget.isEnabled());
+        assertMap(Map.of("a", 1), matchesMap().entry("a", slow));
+      } catch (Throwable t) {
+        otherFailure.set(t);
+      }
+    });
+    other.start();
+    other.join();
+    assertThat(otherEnabled.get(), equalTo(false));
+    assertThat(otherFailure.get(), nullValue());
+    assertThat(TimeBudget.isEnabled(), equalTo(true));
+    assertThat(matchesMap().entry("a", slow).matches(Map.of("a", 1)), equalTo(false));
+  }
+
+  @Test
+  void fastLeaves() {
+    TimeBudget.enable(1000, 10_000);
+    assertMap(Map.of("a", 1), matchesMap().entry("a", Leaf.of("one", v -> v.equals(1))));
+  }
+
+  @Test
+  void disabled() {
+    Leaf slow = Leaf.of("a slow check", v -> {
+      sleep(SLOW_MILLIS);
+      return true;
+    });
+    assertMap(Map.of("a", 1), matchesMap().entry("a", slow));
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new AssertionError(e);
+    }
+  }
+}
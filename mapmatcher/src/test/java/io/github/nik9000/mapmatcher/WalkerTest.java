@@ -0,0 +1,195 @@
+/*
+ * Copyright 2021 Nikolas Everett
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.github.nik9000.mapmatcher;
+
+import static io.github.nik9000.mapmatcher.JsonMatcher.matchesJson;
+import static io.github.nik9000.mapmatcher.ListMatcher.matchesList;
+import static io.github.nik9000.mapmatcher.MapMatcher.matchesMap;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.endsWith;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.startsWith;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.hamcrest.StringDescription;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that nesting depth is limited by the heap and not the stack.
+ * Everything runs on a thread with a stack that's much too small to
+ * recurse once per level.
+ */
+class WalkerTest {
+  private static final int DEEP = 100_000;
+  /**
+   * Descriptions indent each level so they are quadratic in the depth.
+   */
+  private static final int DEEP_DESCRIBE = 2_000;
+  private static final long SMALL_STACK = 512 * 1024;
+
+  @Test
+  void deepMapMatches() throws Exception {
+    Map<String, Object> expected = deepMap(DEEP, 1);
+    Map<String, Object> actual = deepMap(DEEP, 1);
+    assertThat(onSmallStack(() -> matchesMap(expected).matches(actual)), equalTo(true));
+  }
+
+  @Test
+  void deepMapMismatch() throws Exception {
+    Map<String, Object> expected = deepMap(DEEP, 1);
+    Map<String, Object> actual = deepMap(DEEP, 2);
+    assertThat(onSmallStack(() -> matchesMap(expected).matches(actual)), equalTo(false));
+  }
+
+  @Test
+  void deepListMatches() throws Exception {
+    List<Object> expected = deepList(DEEP, 1);
+    List<Object> actual = deepList(DEEP, 1);
+    assertThat(onSmallStack(() -> matchesList(expected).matches(actual)), equalTo(true));
+  }
+
+  @Test
+  void deepDiff() throws Exception {
+    Map<String, Object> expected = deepMap(DEEP, List.of(1));
+    assertThat(onSmallStack(() -> MapMatcher.diff(expected, deepMap(DEEP, List.of(1)))),
+        equalTo(null));
+    assertThat(onSmallStack(() -> Walker.matchesUnconverted(expected, deepMap(DEEP, List.of(2)))),
+        equalTo(false));
+  }
+
+  @Test
+  void deepListMismatch() throws Exception {
+    List<Object> expected = deepList(DEEP, 1);
+    List<Object> actual = deepList(DEEP, 2);
+    assertThat(onSmallStack(() -> matchesList(expected).matches(actual)), equalTo(false));
+  }
+
+  @Test
+  void deepBuiltMatcher() throws Exception {
+    Map<String, Object> actual = deepMap(DEEP, 1);
+    MapMatcher matcher = onSmallStack(() -> {
+      MapMatcher m = matchesMap().entry("a", 1);
+      for (int i = 1; i < DEEP; i++) {
+        m = matchesMap().entry("a", m);
+      }
+      return m;
+    });
+    assertThat(onSmallStack(() -> matcher.matches(actual)), equalTo(true));
+  }
+
+  @Test
+  void deepDescribeMismatch() throws Exception {
+    Map<String, Object> expected = deepMap(DEEP_DESCRIBE, 1);
+    Map<String, Object> actual = deepMap(DEEP_DESCRIBE, 2);
+    String mismatch = onSmallStack(() -> {
+      StringDescription description = new StringDescription();
+      matchesMap(expected).describeMismatch(actual, description);
+      return description.toString();
+    });
+    assertThat(mismatch, startsWith("a map containing\na: a map containing\n  a: a map"));
+    assertThat(mismatch, endsWith("a: expected <1> but was <2>"));
+    assertThat(mismatch.split("\n").length, equalTo(DEEP_DESCRIBE + 1));
+  }
+
+  @Test
+  void deepDescribeTo() throws Exception {
+    List<Object> expected = deepList(DEEP_DESCRIBE, 1);
+    String description = onSmallStack(() -> StringDescription.toString(matchesList(expected)));
+    assertThat(description, startsWith("a list containing\n0: a list containing\n  0: a list"));
+    assertThat(description, endsWith("0: <1>"));
+    assertThat(description.split("\n").length, equalTo(DEEP_DESCRIBE + 1));
+  }
+
+  @Test
+  void deepKeyWidth() throws Exception {
+    Map<String, Object> deep = deepMap(DEEP, 1);
+    int width = onSmallStack(() -> matchesMap().entry("abcdefg", deep).keyWidthFor(Map.of()));
+    assertThat(width, equalTo(7));
+  }
+
+  @Test
+  void deepJsonMatches() throws Exception {
+    String json = deepJson(DEEP, 1);
+    Object actual = deepMap(DEEP, List.of(1));
+    assertThat(onSmallStack(() -> matchesJson(json).matches(actual)), equalTo(true));
+    Object wrong = deepMap(DEEP, List.of(2));
+    assertThat(onSmallStack(() -> matchesJson(json).matches(wrong)), equalTo(false));
+  }
+
+  @Test
+  void deepJsonDescribeMismatch() throws Exception {
+    String json = deepJson(DEEP_DESCRIBE, 1);
+    Object actual = deepMap(DEEP_DESCRIBE, List.of(2));
+    String mismatch = onSmallStack(() -> {
+      StringDescription description = new StringDescription();
+      matchesJson(json).describeMismatch(actual, description);
+      return description.toString();
+    });
+    assertThat(mismatch, startsWith("a map containing\na: a map containing\n  a: a map"));
+    assertThat(mismatch, endsWith("0: expected <1> but was <2>"));
+  }
+
+  /**
+   * {@code {"a": {"a": ... [leaf]}}} nested {@code depth} objects deep.
+   */
+  private static String deepJson(int depth, int leaf) {
+    return "{\"a\": ".repeat(depth) + "[" + leaf + "]" + "}".repeat(depth);
+  }
+
+  /**
+   * {@code {"a": {"a": ... {"a": leaf}}}} nested {@code depth} maps deep.
+   */
+  private static Map<String, Object> deepMap(int depth, Object leaf) {
+    Object value = leaf;
+    for (int i = 0; i < depth; i++) {
+      Map<String, Object> map = new LinkedHashMap<>();
+      map.put("a", value);
+      value = map;
+    }
+    @SuppressWarnings("unchecked")
+    Map<String, Object> map = (Map<String, Object>) value;
+    return map;
+  }
+
+  /**
+   * {@code [[... [leaf]]]} nested {@code depth} lists deep.
+   */
+  private static List<Object> deepList(int depth, Object leaf) {
+    Object value = leaf;
+    for (int i = 0; i < depth; i++) {
+      List<Object> list = new ArrayList<>(1);
+      list.add(value);
+      value = list;
+    }
+    @SuppressWarnings("unchecked")
+    List<Object> list = (List<Object>) value;
+    return list;
+  }
+
+  private static <T> T onSmallStack(Callable<T> callable) throws Exception {
+    AtomicReference<T> result = new AtomicReference<>();
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    Thread thread = new Thread(null, () -> {
+      try {
+        result.set(callable.call());
+      } catch (Throwable t) {
+        failure.set(t);
+      }
+    }, "small-stack", SMALL_STACK);
+    thread.start();
+    thread.join();
+    if (failure.get() != null) {
+      throw new AssertionError("failed on a small stack", failure.get());
+    }
+    return result.get();
+  }
+}
@@ -1,2 +1,5 @@
 rootProject.name = "mapmatcher"
 include("mapmatcher")
+include("mapmatcher-gson")
+include("mapmatcher-junit5")
+include("mapmatcher-flow")